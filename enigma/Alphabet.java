@@ -1,16 +1,50 @@
 package enigma;
 
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  Characters are Unicode code
+ *  points, so an alphabet may include supplementary characters, and the
+ *  mapping from a code point to its index takes constant time however
+ *  large the alphabet is.
  *  @author Avik Samanta
  */
 class Alphabet {
     /** The Letters of the Alphabet. */
     private String _letters;
+    /** The code points of _letters, in order. */
+    private int[] _codePoints;
+    /** Maps code point C to its index, if any, at _pages[C >>> PAGE_BITS]
+     *  [C & PAGE_MASK].  Pages that contain no letters are null; other
+     *  entries for non-letters are -1. */
+    private int[][] _pages;
+
+    /** Number of low-order code point bits used to index a page. */
+    private static final int PAGE_BITS = 8;
+    /** Mask selecting the low-order PAGE_BITS of a code point. */
+    private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+
     /** A new alphabet containing CHARS. The K-th character has index
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
         _letters = chars;
+        _codePoints = chars.codePoints().toArray();
+        _pages = new int[(Character.MAX_CODE_POINT >>> PAGE_BITS) + 1][];
+        for (int i = 0; i < _codePoints.length; i += 1) {
+            int c = _codePoints[i];
+            int[] page = _pages[c >>> PAGE_BITS];
+            if (page == null) {
+                page = _pages[c >>> PAGE_BITS] = new int[PAGE_MASK + 1];
+                Arrays.fill(page, -1);
+            }
+            if (page[c & PAGE_MASK] >= 0) {
+                throw error("duplicate character in alphabet: %s",
+                            new String(Character.toChars(c)));
+            }
+            page[c & PAGE_MASK] = i;
+        }
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -20,7 +54,7 @@ class Alphabet {
 
     /** Returns the size of the alphabet. */
     int size() {
-        return _letters.length();
+        return _codePoints.length;
     }
     String getLetters() {
         return _letters;
@@ -28,23 +62,39 @@ class Alphabet {
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        int found = _letters.indexOf(ch);
-        if (found < 0) {
-            return false;
-        }
-        return true;
+        return toIndex(ch) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
-     *  0 <= INDEX < size(). */
+     *  0 <= INDEX < size().  Character number INDEX must not be a
+     *  supplementary character; see toCodePoint. */
     char toChar(int index) {
-        return _letters.charAt(index);
+        return (char) _codePoints[index];
     }
 
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        return _letters.indexOf(ch);
+        return toIndex(ch);
+    }
+
+    /** Returns the code point of character number INDEX in the
+     *  alphabet, where 0 <= INDEX < size(). */
+    int toCodePoint(int index) {
+        return _codePoints[index];
+    }
+
+    /** Returns the index of code point CP, or -1 if CP is not in the
+     *  alphabet.  This is the inverse of toCodePoint(). */
+    int toIndex(int cp) {
+        if (cp < 0 || cp > Character.MAX_CODE_POINT) {
+            return -1;
+        }
+        int[] page = _pages[cp >>> PAGE_BITS];
+        if (page == null) {
+            return -1;
+        }
+        return page[cp & PAGE_MASK];
     }
 
 }
@@ -0,0 +1,186 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/** An OutputStream that hands its bytes to a background thread for
+ *  writing to a channel, so that the thread producing output does not
+ *  wait for each write to complete.  Output is collected in a fixed set
+ *  of direct buffers that rotate between the producer, which fills one
+ *  buffer at a time, and the writer thread, which drains full buffers in
+ *  order.  When every buffer is waiting to be written, the producer
+ *  blocks until one is free.
+ *  @author Avik Samanta
+ */
+class AsyncChannelOutput extends OutputStream {
+
+    /** Default number of buffers. */
+    static final int DEFAULT_BUFFERS = 2;
+    /** Default size of each buffer. */
+    static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /** An output stream writing to CHANNEL through NUMBUFFERS >= 2
+     *  buffers of BUFFERSIZE bytes each. */
+    AsyncChannelOutput(WritableByteChannel channel, int numBuffers,
+                       int bufferSize) {
+        assert numBuffers >= 2;
+        _channel = channel;
+        _free = new ArrayBlockingQueue<>(numBuffers);
+        _full = new ArrayBlockingQueue<>(numBuffers + 1);
+        for (int i = 1; i < numBuffers; i += 1) {
+            _free.add(ByteBuffer.allocateDirect(bufferSize));
+        }
+        _current = ByteBuffer.allocateDirect(bufferSize);
+        _writer = new Thread(this::run, "output writer");
+        _writer.setDaemon(true);
+        _writer.start();
+    }
+
+    /** An output stream writing to CHANNEL with the default number and
+     *  size of buffers. */
+    AsyncChannelOutput(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFERS, DEFAULT_BUFFER_SIZE);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!_current.hasRemaining()) {
+            handOff();
+        }
+        _current.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!_current.hasRemaining()) {
+                handOff();
+            }
+            int n = Math.min(len, _current.remaining());
+            _current.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** Write out everything written to me so far, returning only when
+     *  it has all reached the channel. */
+    @Override
+    public void flush() throws IOException {
+        if (_current.position() > 0) {
+            handOff();
+        }
+        synchronized (this) {
+            while (_pending > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException excp) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while flushing");
+                }
+            }
+        }
+        checkError();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (_closed) {
+            return;
+        }
+        flush();
+        _closed = true;
+        put(_full, STOP);
+        try {
+            _writer.join();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        _channel.close();
+    }
+
+    /** Queue _current for writing and replace it with a free buffer,
+     *  waiting for one if necessary. */
+    private void handOff() throws IOException {
+        checkError();
+        _current.flip();
+        synchronized (this) {
+            _pending += 1;
+        }
+        put(_full, _current);
+        try {
+            _current = _free.take();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while writing");
+        }
+        _current.clear();
+    }
+
+    /** Add BUFFER to QUEUE, which has room for it. */
+    private static void put(BlockingQueue<ByteBuffer> queue,
+                            ByteBuffer buffer) {
+        queue.add(buffer);
+    }
+
+    /** Throw the exception encountered by the writer thread, if any. */
+    private synchronized void checkError() throws IOException {
+        if (_error != null) {
+            throw _error;
+        }
+    }
+
+    /** Body of the writer thread: write full buffers in order until
+     *  told to stop.  After an error, buffers are recycled without being
+     *  written, so that the producer never waits forever. */
+    private void run() {
+        try {
+            while (true) {
+                ByteBuffer buf = _full.take();
+                if (buf == STOP) {
+                    return;
+                }
+                try {
+                    while (buf.hasRemaining() && _error == null) {
+                        _channel.write(buf);
+                    }
+                } catch (IOException excp) {
+                    synchronized (this) {
+                        _error = excp;
+                    }
+                }
+                _free.add(buf);
+                synchronized (this) {
+                    _pending -= 1;
+                    notifyAll();
+                }
+            }
+        } catch (InterruptedException excp) {
+            return;
+        }
+    }
+
+    /** Marker telling the writer thread to stop. */
+    private static final ByteBuffer STOP = ByteBuffer.allocate(0);
+
+    /** Destination of my output. */
+    private final WritableByteChannel _channel;
+    /** Buffers available for filling. */
+    private final BlockingQueue<ByteBuffer> _free;
+    /** Filled buffers waiting to be written, in order. */
+    private final BlockingQueue<ByteBuffer> _full;
+    /** The buffer now being filled. */
+    private ByteBuffer _current;
+    /** Number of buffers handed off and not yet written. */
+    private int _pending;
+    /** Writes _full to _channel. */
+    private final Thread _writer;
+    /** Error encountered by _writer, if any. */
+    private volatile IOException _error;
+    /** True once I have been closed. */
+    private boolean _closed;
+}
@@ -0,0 +1,179 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the AsyncChannelOutput class.
+ *  @author Avik Samanta
+ */
+public class AsyncChannelOutputTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A channel that accepts at most a few bytes per write and
+     *  sometimes pauses, so that its writer falls behind. */
+    private static class SlowChannel implements WritableByteChannel {
+
+        @Override
+        public int write(ByteBuffer src) {
+            _writes += 1;
+            if (_writes % PAUSE_WRITES == 0) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException excp) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            int n = Math.min(src.remaining(), CHUNK);
+            byte[] bytes = new byte[n];
+            src.get(bytes);
+            synchronized (this) {
+                _bytes.write(bytes, 0, n);
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return _open;
+        }
+
+        @Override
+        public void close() {
+            _open = false;
+        }
+
+        /** Return the bytes written to me so far. */
+        synchronized byte[] bytes() {
+            return _bytes.toByteArray();
+        }
+
+        /** Return the number of bytes written to me so far. */
+        synchronized int size() {
+            return _bytes.size();
+        }
+
+        /** Largest number of bytes accepted by one write. */
+        private static final int CHUNK = 7;
+        /** Number of writes between pauses. */
+        private static final int PAUSE_WRITES = 50;
+
+        /** The bytes written to me. */
+        private final ByteArrayOutputStream _bytes =
+            new ByteArrayOutputStream();
+        /** Number of calls to write. */
+        private int _writes;
+        /** False once I am closed. */
+        private volatile boolean _open = true;
+    }
+
+    /** Settings lines of the input messages. */
+    private static final String[] SETTINGS = {
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        "* C Gamma IV V VI ZZZZ (AB)",
+        "* B Beta I II III AAAA",
+    };
+
+    /** Lines of plaintext for the input messages. */
+    private static final String[] TEXT = {
+        "FROM HIS SHOULDER HIAWATHA",
+        "TOOK THE CAMERA OF ROSEWOOD",
+        "",
+        "MADE OF SLIDING FOLDING ROSEWOOD",
+        "NEATLY PUT IT ALL TOGETHER",
+    };
+
+    /** Return an input for Main of about LINES lines, chosen with
+     *  RANDOM. */
+    private static String input(Random random, int lines) {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < lines; k += 1) {
+            if (k % 40 == 0) {
+                result.append(SETTINGS[random.nextInt(SETTINGS.length)])
+                    .append('\n');
+            }
+            result.append(TEXT[random.nextInt(TEXT.length)]).append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Convert INPUT with the machine for CONFIG, printing the result
+     *  to OUT, which Main flushes but does not close. */
+    private static void convert(String config, String input,
+                                OutputStream out) {
+        new Main(Main.loadConfig(config),
+                 new LineReader(new ByteArrayInputStream(
+                     input.getBytes(StandardCharsets.UTF_8))),
+                 new PrintStream(out, false, StandardCharsets.UTF_8))
+            .process();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSameAsPrintStream() throws Exception {
+        String config = navalConfig(5, 3).getPath();
+        String text = input(new Random(29), 1000);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        convert(config, text, new BufferedOutputStream(expected));
+
+        for (int size : new int[] { 1, 64, 1000 }) {
+            SlowChannel channel = new SlowChannel();
+            AsyncChannelOutput out =
+                new AsyncChannelOutput(channel, 3, size);
+            convert(config, text, out);
+            assertArrayEquals(msg("buffer", "%d bytes", size),
+                              expected.toByteArray(), channel.bytes());
+            out.close();
+            assertFalse(channel.isOpen());
+        }
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        int buffers = 3, size = 16;
+        Random random = new Random(37);
+        byte[] data = new byte[5000];
+        random.nextBytes(data);
+        SlowChannel channel = new SlowChannel();
+        AsyncChannelOutput out =
+            new AsyncChannelOutput(channel, buffers, size);
+        int written = 0;
+        while (written < data.length) {
+            if (random.nextBoolean()) {
+                out.write(data[written]);
+                written += 1;
+            } else {
+                int n = Math.min(data.length - written,
+                                 random.nextInt(3 * size));
+                out.write(data, written, n);
+                written += n;
+            }
+            assertTrue(written - channel.size() <= buffers * size);
+            if (random.nextInt(100) == 0) {
+                out.flush();
+                assertEquals(written, channel.size());
+            }
+        }
+        out.close();
+        assertArrayEquals(data, channel.bytes());
+    }
+}
@@ -0,0 +1,184 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static enigma.EnigmaException.*;
+
+/** Applies one configuration to many independent input files at once.
+ *  The configuration is read once; each file then gets its own copy of
+ *  the resulting machine, sharing the rotors' permutations, and the
+ *  files are spread over a work-stealing pool, largest first, so that
+ *  the big files do not all end up at the back of the queue.
+ *  @author Avik Samanta
+ */
+class Batch {
+
+    /** A batch job described by ARGS: ARGS[0] is a configuration file,
+     *  ARGS[1] is either a directory, all of whose .in files are
+     *  inputs, or a manifest file listing one input file per line, and
+     *  ARGS[2] is a directory to receive the outputs.  The output for
+     *  input F.in is named F.out.  Runs on THREADS threads. */
+    Batch(List<String> args, int threads) {
+        if (args.size() != 3) {
+            throw error("Usage: java enigma.Main --batch CONFIG "
+                        + "(DIR | MANIFEST) OUTDIR");
+        }
+        _template = Main.loadConfig(args.get(0));
+        _inputs = inputs(new File(args.get(1)));
+        _outputDir = new File(args.get(2));
+        if (!_outputDir.isDirectory()) {
+            throw error("%s is not a directory", _outputDir);
+        }
+        _threads = threads;
+    }
+
+    /** Return the input files named by SOURCE, largest first. */
+    private static File[] inputs(File source) {
+        File[] result;
+        if (source.isDirectory()) {
+            result = source.listFiles((dir, name) -> name.endsWith(".in"));
+        } else {
+            try {
+                ArrayList<File> files = new ArrayList<>();
+                for (String line : Files.readAllLines(source.toPath())) {
+                    if (!line.isBlank()) {
+                        File file = new File(line.trim());
+                        if (!file.isAbsolute()) {
+                            file = new File(source.getParentFile(),
+                                            line.trim());
+                        }
+                        files.add(file);
+                    }
+                }
+                result = files.toArray(new File[0]);
+            } catch (IOException excp) {
+                throw error("could not read %s", source);
+            }
+        }
+        if (result == null) {
+            throw error("could not list %s", source);
+        }
+        Arrays.sort(result,
+                    Comparator.comparingLong(File::length).reversed());
+        return result;
+    }
+
+    /** Process all my inputs, reporting throughput and per-file latency
+     *  on the standard error. */
+    void run() {
+        ForkJoinPool pool = new ForkJoinPool(_threads);
+        long[] latencies = new long[_inputs.length];
+        String[] errors = new String[_inputs.length];
+        long start = System.nanoTime();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < _inputs.length; i += 1) {
+            final int k = i;
+            tasks.add(pool.submit(() -> {
+                long t0 = System.nanoTime();
+                errors[k] = process(_inputs[k]);
+                latencies[k] = System.nanoTime() - t0;
+            }));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        pool.shutdown();
+        double secs = (System.nanoTime() - start) * 1e-9;
+
+        int failures = 0;
+        long bytes = 0;
+        for (int i = 0; i < _inputs.length; i += 1) {
+            bytes += _inputs[i].length();
+            if (errors[i] != null) {
+                failures += 1;
+                System.err.printf("Error: %s: %s%n", _inputs[i], errors[i]);
+            }
+        }
+        report(latencies, bytes, secs);
+        if (failures > 0) {
+            throw error("%d of %d files failed", failures, _inputs.length);
+        }
+    }
+
+    /** Convert INPUT into the corresponding file in _outputDir,
+     *  returning null on success and an error message otherwise. */
+    private String process(File input) {
+        String name = input.getName();
+        if (name.endsWith(".in")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        File output = new File(_outputDir, name + ".out");
+        try (FileInputStream in = new FileInputStream(input);
+             PrintStream out =
+                 new PrintStream(new BufferedOutputStream(
+                     new FileOutputStream(output), Main.OUTPUT_BUFFER),
+                                 false, StandardCharsets.UTF_8)) {
+            new Main(_template.copy(), new LineReader(in), out).process();
+            if (out.checkError()) {
+                return "error writing " + output;
+            }
+            return null;
+        } catch (IOException excp) {
+            return excp.getMessage();
+        } catch (EnigmaException excp) {
+            return excp.getMessage();
+        }
+    }
+
+    /** Print a summary of a run that converted BYTES bytes of input in
+     *  SECS seconds, in which the files took LATENCIES nanoseconds
+     *  each. */
+    private void report(long[] latencies, long bytes, double secs) {
+        System.err.printf("batch: %d files, %.1f MB in %.2f s "
+                          + "(%.2f MB/s) on %d threads%n",
+                          _inputs.length, bytes / 1e6, secs,
+                          bytes / 1e6 / secs, _threads);
+        if (latencies.length == 0) {
+            return;
+        }
+        int slowest = 0;
+        for (int i = 1; i < latencies.length; i += 1) {
+            if (latencies[i] > latencies[slowest]) {
+                slowest = i;
+            }
+        }
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        System.err.printf("batch: per-file latency p50 %.1f ms, "
+                          + "p99 %.1f ms, max %.1f ms (%s)%n",
+                          percentile(sorted, 50) / 1e6,
+                          percentile(sorted, 99) / 1e6,
+                          sorted[sorted.length - 1] / 1e6,
+                          _inputs[slowest].getName());
+    }
+
+    /** Return the P-th percentile of the nonempty sorted array DATA. */
+    static long percentile(long[] data, int p) {
+        int k = (int) Math.ceil(p / 100.0 * data.length) - 1;
+        return data[Math.max(0, Math.min(data.length - 1, k))];
+    }
+
+    /** Machine configured from the configuration file, copied for each
+     *  input. */
+    private final Machine _template;
+    /** Input files, largest first. */
+    private final File[] _inputs;
+    /** Where outputs go. */
+    private final File _outputDir;
+    /** Number of worker threads. */
+    private final int _threads;
+}
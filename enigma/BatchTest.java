@@ -0,0 +1,120 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Batch class.
+ *  @author Avik Samanta
+ */
+public class BatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Inputs that convert without error. */
+    private static final String[] GOOD = {
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+        + "FROM HIS SHOULDER HIAWATHA\n\nTOOK THE CAMERA OF ROSEWOOD\n",
+        "* B Beta I II III AAAA\nHELLO WORLD\n",
+        "* C Gamma IV V VI ZZZZ (AB)\nNEATLY PUT IT ALL TOGETHER\n",
+    };
+
+    /** Inputs that fail: with a malformed settings line, and with a
+     *  reflector in the fast slot. */
+    private static final String[] BAD = {
+        "* B Beta III IV AXLE\nFROM HIS SHOULDER\n",
+        "* B Beta I II C AAAA\nHELLO WORLD\n",
+    };
+
+    /** Return the output of Main for INPUT with the machine for
+     *  CONFIG. */
+    private static String convert(String config, String input) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new Main(Main.loadConfig(config),
+                 new LineReader(new ByteArrayInputStream(
+                     input.getBytes(StandardCharsets.UTF_8))),
+                 new PrintStream(bytes, true)).process();
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Write TEXT to FILE. */
+    private static void write(File file, String text) throws Exception {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testFailuresAreReportedPerFile() throws Exception {
+        String config = navalConfig(5, 3).getPath();
+        File in = Files.createTempDirectory("batchin").toFile();
+        File out = Files.createTempDirectory("batchout").toFile();
+        try {
+            for (int i = 0; i < GOOD.length; i += 1) {
+                write(new File(in, "good" + i + ".in"), GOOD[i]);
+            }
+            for (int i = 0; i < BAD.length; i += 1) {
+                write(new File(in, "bad" + i + ".in"), BAD[i]);
+            }
+            write(new File(in, "ignored.txt"), BAD[0]);
+            try {
+                new Batch(Arrays.asList(config, in.getPath(),
+                                        out.getPath()), 2).run();
+                fail("bad inputs were not reported");
+            } catch (EnigmaException excp) {
+                assertEquals("2 of 5 files failed", excp.getMessage());
+            }
+            for (int i = 0; i < GOOD.length; i += 1) {
+                File result = new File(out, "good" + i + ".out");
+                assertEquals(convert(config, GOOD[i]),
+                             new String(Files.readAllBytes(result.toPath()),
+                                        StandardCharsets.UTF_8));
+            }
+            assertFalse(new File(out, "ignored.out").exists());
+        } finally {
+            deleteAll(in);
+            deleteAll(out);
+        }
+    }
+
+    @Test
+    public void testAllGood() throws Exception {
+        String config = navalConfig(5, 3).getPath();
+        File in = Files.createTempDirectory("batchin").toFile();
+        File out = Files.createTempDirectory("batchout").toFile();
+        try {
+            StringBuilder manifest = new StringBuilder();
+            for (int i = 0; i < GOOD.length; i += 1) {
+                write(new File(in, "good" + i + ".in"), GOOD[i]);
+                manifest.append("good").append(i).append(".in\n");
+            }
+            File list = new File(in, "manifest");
+            write(list, manifest.toString());
+            new Batch(Arrays.asList(config, list.getPath(), out.getPath()),
+                      3).run();
+            for (int i = 0; i < GOOD.length; i += 1) {
+                File result = new File(out, "good" + i + ".out");
+                assertEquals(convert(config, GOOD[i]),
+                             new String(Files.readAllBytes(result.toPath()),
+                                        StandardCharsets.UTF_8));
+            }
+        } finally {
+            deleteAll(in);
+            deleteAll(out);
+        }
+    }
+}
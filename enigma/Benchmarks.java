@@ -0,0 +1,415 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Rough throughput measurements for parts of the enigma package.  These
+ *  are not unit tests; run them by hand with
+ *      java enigma.Benchmarks NAME CONFIG [ARGS...]
+ *  where NAME selects the benchmark and CONFIG is a configuration file.
+ *  Each benchmark prints one line per variant that it measures.
+ *  @author Avik Samanta
+ */
+class Benchmarks {
+
+    /** Run the benchmark named ARGS[0] with configuration file ARGS[1]
+     *  and further arguments ARGS[2..]. */
+    public static void main(String... args) throws IOException {
+        if (args.length < 2) {
+            throw error("Usage: java enigma.Benchmarks NAME CONFIG ...");
+        }
+        Machine mach = readConfig(args[1]);
+        switch (args[0]) {
+        case "output":
+            output(mach, args);
+            break;
+        case "score":
+            score(mach, args);
+            break;
+        case "cipher":
+            cipher(mach, args);
+            break;
+        case "crib":
+            crib(mach, args);
+            break;
+        case "specialize":
+            specialize(args);
+            break;
+        default:
+            throw error("unknown benchmark: %s", args[0]);
+        }
+    }
+
+    /** Return the machine described by the configuration file NAME,
+     *  with its first rotors set up: the first reflector, then the
+     *  first non-moving rotors, then the first moving rotors, all at
+     *  their first positions. */
+    static Machine readConfig(String name) {
+        Machine mach = Main.loadConfig(name);
+        ArrayList<String> reflectors = new ArrayList<>(),
+            fixed = new ArrayList<>(), moving = new ArrayList<>();
+        for (Rotor r : mach.inventory()) {
+            if (r.reflecting()) {
+                reflectors.add(r.name());
+            } else if (r.rotates()) {
+                moving.add(r.name());
+            } else {
+                fixed.add(r.name());
+            }
+        }
+        String[] slots = new String[mach.numRotors()];
+        slots[0] = reflectors.get(0);
+        int numFixed = mach.numRotors() - 1 - mach.numPawls();
+        for (int i = 1; i < slots.length; i += 1) {
+            if (i <= numFixed) {
+                slots[i] = fixed.get(i - 1);
+            } else {
+                slots[i] = moving.get(i - 1 - numFixed);
+            }
+        }
+        mach.insertRotors(slots);
+        StringBuilder setting = new StringBuilder();
+        for (int i = 1; i < slots.length; i += 1) {
+            setting.append(mach.alphabet().toChar(0));
+        }
+        mach.setRotors(setting.toString());
+        return mach;
+    }
+
+    /** Return NUMLINES random message lines of LENGTH letters from ALPHA,
+     *  with a blank after every fifth letter. */
+    static String[] messages(Alphabet alpha, int numLines, int length) {
+        Random random = new Random(61);
+        String[] result = new String[numLines];
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < numLines; i += 1) {
+            line.setLength(0);
+            for (int k = 0; k < length; k += 1) {
+                if (k > 0 && k % 5 == 0) {
+                    line.append(' ');
+                }
+                line.append(alpha.toChar(random.nextInt(alpha.size())));
+            }
+            result[i] = line.toString();
+        }
+        return result;
+    }
+
+    /** Print the rate at which the machine MACH converts messages with
+     *  output going to a file synchronously and through an
+     *  AsyncChannelOutput, first on unthrottled storage and then on
+     *  storage throttled to ARGS[3] MB/s (default 2).  ARGS[2], if
+     *  present, is the number of MB of input (default 8). */
+    static void output(Machine mach, String[] args) throws IOException {
+        int megabytes = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        double slow = args.length > 3 ? Double.parseDouble(args[3]) : 2.0;
+        String[] lines = messages(mach.alphabet(), 1 << 14, 60);
+        long letters = (long) megabytes << 20;
+        File file = File.createTempFile("enigma", ".out");
+        file.deleteOnExit();
+        for (double rate : new double[] { 0, slow }) {
+            for (boolean async : new boolean[] { false, true }) {
+                FileOutputStream str = new FileOutputStream(file);
+                WritableByteChannel channel = str.getChannel();
+                if (rate > 0) {
+                    channel = new ThrottledChannel(str.getChannel(),
+                                                   rate * (1 << 20));
+                }
+                OutputStream sink;
+                if (async) {
+                    sink = new AsyncChannelOutput(channel);
+                } else {
+                    sink = new BufferedOutputStream(
+                        Channels.newOutputStream(channel),
+                        Main.OUTPUT_BUFFER);
+                }
+                PrintStream out = new PrintStream(sink);
+                MessageLexer lexer = new MessageLexer(mach.alphabet());
+                long start = System.nanoTime();
+                long done = 0;
+                for (int i = 0; done < letters; i += 1) {
+                    String line = lines[i % lines.length];
+                    out.append(lexer.convert(line, mach));
+                    out.println();
+                    done += line.length();
+                }
+                out.close();
+                double secs = (System.nanoTime() - start) * 1e-9;
+                System.out.printf("output %-5s %-9s %8.2f MB/s%n",
+                                  async ? "async" : "sync",
+                                  rate > 0 ? rate + "MB/s" : "unlimited",
+                                  done / secs / (1 << 20));
+            }
+        }
+    }
+
+    /** Print the rate at which the n-gram file ARGS[2] scores decryptions
+     *  of ARGS[3] letters (default 200) produced by MACH's bulk path, in
+     *  one thread and then in one thread per processor sharing the same
+     *  mapped table. */
+    static void score(Machine mach, String[] args) {
+        if (args.length < 3) {
+            throw error("Usage: java enigma.Benchmarks score CONFIG NGRAMS "
+                        + "[LENGTH]");
+        }
+        NgramScorer scorer = NgramScorer.map(new File(args[2]));
+        if (!scorer.fits(mach.alphabet())) {
+            throw error("n-gram file does not match alphabet");
+        }
+        int length = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+        Random random = new Random(61);
+        int[] cipher = new int[length], plain = new int[length];
+        for (int i = 0; i < length; i += 1) {
+            cipher[i] = random.nextInt(mach.alphabet().size());
+        }
+        mach.convert(cipher, plain, length);
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int t : new int[] { 1, threads }) {
+            long[] counts = new long[t];
+            Thread[] workers = new Thread[t];
+            long stop = System.nanoTime() + SCORE_NANOS;
+            for (int k = 0; k < t; k += 1) {
+                final int which = k;
+                workers[k] = new Thread(() -> {
+                    double sink = 0;
+                    long count = 0;
+                    while (System.nanoTime() < stop) {
+                        for (int i = 0; i < SCORE_BATCH; i += 1) {
+                            sink += scorer.score(plain, length);
+                        }
+                        count += SCORE_BATCH;
+                    }
+                    counts[which] = count;
+                    _sink = sink;
+                });
+                workers[k].start();
+            }
+            long total = 0;
+            for (int k = 0; k < t; k += 1) {
+                try {
+                    workers[k].join();
+                } catch (InterruptedException excp) {
+                    throw error("interrupted");
+                }
+                total += counts[k];
+            }
+            System.out.printf("score %d-gram %2d threads %12.0f scores/s"
+                              + " %8.1f Mletters/s%n",
+                              scorer.length(), t,
+                              total / (SCORE_NANOS * 1e-9),
+                              total * length / (SCORE_NANOS * 1e-3));
+        }
+    }
+
+    /** Print the rate at which MACH's current setup converts ARGS[2] MB
+     *  (default 64) of message text through the path Main uses (a
+     *  MessageLexer per line into a PrintStream), through
+     *  EnigmaCipher.update on heap and direct buffers, and through an
+     *  EnigmaCipher channel, all discarding their output. */
+    static void cipher(Machine mach, String[] args) throws IOException {
+        int megabytes = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        StringBuilder settings = new StringBuilder("*");
+        for (int i = 0; i < mach.numRotors(); i += 1) {
+            settings.append(' ').append(mach.getRotor(i).name());
+        }
+        settings.append(' ').append(mach.returnSettings().substring(1));
+        EnigmaKey key = EnigmaKey.load(new File(args[1]).toPath(),
+                                       settings.toString());
+        String[] lines = messages(mach.alphabet(), 1 << 14, 60);
+        StringBuilder all = new StringBuilder();
+        for (String line : lines) {
+            all.append(line).append('\n');
+        }
+        byte[] text = all.toString().getBytes(StandardCharsets.UTF_8);
+        long total = (long) megabytes << 20;
+
+        MessageLexer lexer = new MessageLexer(mach.alphabet());
+        PrintStream sink = new PrintStream(OutputStream.nullOutputStream(),
+                                           false, StandardCharsets.UTF_8);
+        long start = System.nanoTime();
+        long done = 0;
+        for (int i = 0; done < total; i += 1) {
+            String line = lines[i % lines.length];
+            sink.append(lexer.convert(line, mach));
+            sink.println();
+            done += line.length() + 1;
+        }
+        report("Main path", done, start);
+
+        EnigmaCipher cipher = key.newCipher();
+        for (boolean direct : new boolean[] { false, true }) {
+            ByteBuffer in = direct ? ByteBuffer.allocateDirect(text.length)
+                : ByteBuffer.allocate(text.length);
+            ByteBuffer out = direct ? ByteBuffer.allocateDirect(text.length)
+                : ByteBuffer.allocate(text.length);
+            in.put(text);
+            start = System.nanoTime();
+            for (done = 0; done < total; done += text.length) {
+                in.clear();
+                out.clear();
+                cipher.update(in, out);
+            }
+            report(direct ? "update direct" : "update heap", done, start);
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(text);
+        WritableByteChannel channel =
+            key.newCipher().writable(Channels.newChannel(
+                                         OutputStream.nullOutputStream()));
+        start = System.nanoTime();
+        for (done = 0; done < total; done += text.length) {
+            in.clear();
+            channel.write(in);
+        }
+        channel.close();
+        report("channel", done, start);
+    }
+
+    /** Print the rate at which CribScanner finds the admissible offsets
+     *  of a random crib of ARGS[3] letters (default 16) in a file of
+     *  ARGS[2] MB (default 100) of random ciphertext in groups of five,
+     *  letter by letter and with bitmaps, on one thread and on one
+     *  thread per processor. */
+    static void crib(Machine mach, String[] args) throws IOException {
+        int megabytes = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int length = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+        Alphabet alpha = mach.alphabet();
+        String[] lines = messages(alpha, 1 << 14, 60);
+        File file = File.createTempFile("enigma", ".txt");
+        file.deleteOnExit();
+        long size = (long) megabytes << 20;
+        MessageLexer lexer = new MessageLexer(alpha);
+        try (PrintStream out =
+             new PrintStream(new BufferedOutputStream(
+                                 new FileOutputStream(file),
+                                 Main.OUTPUT_BUFFER))) {
+            long done = 0;
+            for (int i = 0; done < size; i += 1) {
+                CharSequence line = lexer.convert(lines[i % lines.length],
+                                                  mach);
+                out.append(line);
+                out.println();
+                done += line.length() + 1;
+            }
+        }
+        Random random = new Random(61);
+        int[] crib = new int[length];
+        for (int k = 0; k < length; k += 1) {
+            crib[k] = random.nextInt(alpha.size());
+        }
+        CribScanner scanner = new CribScanner(alpha, crib);
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (boolean naive : new boolean[] { true, false }) {
+            for (int t : new int[] { 1, threads }) {
+                long start = System.nanoTime();
+                long count = scanner.scanFile(file, t, naive, null);
+                double secs = (System.nanoTime() - start) * 1e-9;
+                System.out.printf("crib %-6s %2d threads %8.2f MB/s "
+                                  + "%d admissible%n",
+                                  naive ? "naive" : "bitmap", t,
+                                  file.length() / secs / (1 << 20), count);
+            }
+        }
+    }
+
+    /** Print the rate at which Machine.convert converts ARGS[2] million
+     *  letters (default 64) of random text in bulk, with the rotor passes
+     *  specialized by Specializer and through the generic path, for the
+     *  machine set up from configuration ARGS[1] as readConfig does. */
+    static void specialize(String[] args) {
+        int millions = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        Random random = new Random(61);
+        for (int round = 0; round < 2; round += 1) {
+            for (boolean on : new boolean[] { true, false }) {
+                Specializer.setEnabled(on);
+                Machine mach = readConfig(args[1]);
+                int[] text = new int[1 << 16];
+                for (int i = 0; i < text.length; i += 1) {
+                    text[i] = random.nextInt(mach.alphabet().size());
+                }
+                long total = (long) millions * 1_000_000;
+                long start = System.nanoTime();
+                for (long done = 0; done < total; done += text.length) {
+                    mach.convert(text, text, text.length);
+                }
+                double secs = (System.nanoTime() - start) * 1e-9;
+                System.out.printf("specialize %-11s %8.2f Mletters/s%n",
+                                  on ? "specialized" : "generic",
+                                  total / secs * 1e-6);
+            }
+        }
+        Specializer.setEnabled(false);
+    }
+
+    /** Print the rate of a cipher benchmark variant NAME that converted
+     *  BYTES bytes starting at time START. */
+    private static void report(String name, long bytes, long start) {
+        double secs = (System.nanoTime() - start) * 1e-9;
+        System.out.printf("cipher %-14s %8.2f MB/s%n", name,
+                          bytes / secs / (1 << 20));
+    }
+
+    /** Nanoseconds to spend on each variant of the score benchmark. */
+    private static final long SCORE_NANOS = 3_000_000_000L;
+    /** Scores computed between clock reads in the score benchmark. */
+    private static final int SCORE_BATCH = 1000;
+    /** Where benchmarks leave results so that computing them is not
+     *  optimized away. */
+    private static volatile double _sink;
+
+    /** A channel that passes writes on to another channel, taking as
+     *  long over each write as a device of a given speed would, to
+     *  imitate slow storage. */
+    static class ThrottledChannel implements WritableByteChannel {
+
+        /** A channel writing to CHANNEL at RATE bytes per second. */
+        ThrottledChannel(FileChannel channel, double rate) {
+            _channel = channel;
+            _rate = rate;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            long start = System.nanoTime();
+            int n = _channel.write(src);
+            long wait = start + (long) (n / _rate * 1e9) - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                } catch (InterruptedException excp) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return _channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            _channel.close();
+        }
+
+        /** Destination. */
+        private final FileChannel _channel;
+        /** Bytes per second. */
+        private final double _rate;
+    }
+}
@@ -0,0 +1,114 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** The state of a run of Main at a line boundary: enough to pick up
+ *  the run where it left off after a crash.  A checkpoint is stored as a
+ *  small text file, one field per line.
+ *  @author Avik Samanta
+ */
+class Checkpoint {
+
+    /** A checkpoint taken just before reading input line LINE, which
+     *  starts at byte INPUTOFFSET of the input, when OUTPUTOFFSET bytes
+     *  of output have been written.  The machine was last set up by the
+     *  settings line SETTINGS, and its rotors are now at POSITIONS (as
+     *  from Machine.returnSettings). */
+    Checkpoint(int line, long inputOffset, long outputOffset,
+               String settings, String positions) {
+        _line = line;
+        _inputOffset = inputOffset;
+        _outputOffset = outputOffset;
+        _settings = settings;
+        _positions = positions;
+    }
+
+    /** Return the number of the next input line. */
+    int line() {
+        return _line;
+    }
+
+    /** Return the input offset of the next input line. */
+    long inputOffset() {
+        return _inputOffset;
+    }
+
+    /** Return the number of output bytes written. */
+    long outputOffset() {
+        return _outputOffset;
+    }
+
+    /** Return the last settings line. */
+    String settings() {
+        return _settings;
+    }
+
+    /** Return the rotor positions, reflector first. */
+    String positions() {
+        return _positions;
+    }
+
+    /** Write me to FILE, replacing its previous contents atomically and
+     *  forcing the new contents to disk. */
+    void write(File file) {
+        File temp = new File(file.getPath() + ".tmp");
+        String text = String.format("%s%n%d%n%d%n%d%n%s%n%s%n", MAGIC,
+                                    _line, _inputOffset, _outputOffset,
+                                    _settings, _positions);
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        } catch (IOException excp) {
+            throw error("could not write checkpoint %s", temp);
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not write checkpoint %s", file);
+        }
+    }
+
+    /** Return the checkpoint stored in FILE. */
+    static Checkpoint read(File file) {
+        try {
+            List<String> text =
+                Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            if (text.size() != 6 || !text.get(0).equals(MAGIC)) {
+                throw error("malformed checkpoint %s", file);
+            }
+            return new Checkpoint(Integer.parseInt(text.get(1)),
+                                  Long.parseLong(text.get(2)),
+                                  Long.parseLong(text.get(3)),
+                                  text.get(4), text.get(5));
+        } catch (IOException excp) {
+            throw error("could not read checkpoint %s", file);
+        } catch (NumberFormatException excp) {
+            throw error("malformed checkpoint %s", file);
+        }
+    }
+
+    /** First line of a checkpoint file. */
+    static final String MAGIC = "enigma-checkpoint 1";
+
+    /** Number of the next input line. */
+    private final int _line;
+    /** Offset of the next input line. */
+    private final long _inputOffset;
+    /** Bytes of output written. */
+    private final long _outputOffset;
+    /** Last settings line. */
+    private final String _settings;
+    /** Rotor positions. */
+    private final String _positions;
+}
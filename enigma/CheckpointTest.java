@@ -0,0 +1,69 @@
+package enigma;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Checkpoint class.
+ *  @author Avik Samanta
+ */
+public class CheckpointTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        File file = File.createTempFile("run", ".ckpt");
+        try {
+            String settings = "* B Beta III IV I AXLE (HQ) (EX)";
+            new Checkpoint(1, 0, 0, "* B Beta I II III AAAA", "AAAAA")
+                .write(file);
+            Checkpoint ckpt =
+                new Checkpoint(1234567, 5000000000L, 4000000000L, settings,
+                               "AAXLQ");
+            ckpt.write(file);
+            assertFalse(new File(file.getPath() + ".tmp").exists());
+            Checkpoint back = Checkpoint.read(file);
+            assertEquals(1234567, back.line());
+            assertEquals(5000000000L, back.inputOffset());
+            assertEquals(4000000000L, back.outputOffset());
+            assertEquals(settings, back.settings());
+            assertEquals("AAXLQ", back.positions());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testMalformed() throws Exception {
+        File file = File.createTempFile("run", ".ckpt");
+        try {
+            String[] bad = {
+                "",
+                "enigma-checkpoint 0\n1\n0\n0\n* B\nAA\n",
+                "enigma-checkpoint 1\n1\n0\n0\n* B\n",
+                "enigma-checkpoint 1\nX\n0\n0\n* B\nAA\n",
+            };
+            for (String text : bad) {
+                Files.write(file.toPath(),
+                            text.getBytes(StandardCharsets.UTF_8));
+                try {
+                    Checkpoint.read(file);
+                    fail("accepted " + text);
+                } catch (EnigmaException excp) {
+                    assertTrue(excp.getMessage().startsWith("malformed"));
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
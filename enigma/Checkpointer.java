@@ -0,0 +1,116 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import static enigma.EnigmaException.*;
+
+/** Writes checkpoints on a background thread so that taking one costs
+ *  the encrypting thread only a flush.  Only the most recent checkpoint
+ *  matters, so checkpoints submitted while an earlier one is being
+ *  written are coalesced, and each write forces the output and the
+ *  checkpoint file to disk once for the whole batch.
+ *  @author Avik Samanta
+ */
+class Checkpointer {
+
+    /** A checkpointer recording checkpoints in FILE for a run whose
+     *  output goes to OUTPUT.  OUTPUT is forced to disk before each
+     *  checkpoint is written, so that a checkpoint never claims output
+     *  that could be lost. */
+    Checkpointer(File file, FileChannel output) {
+        _file = file;
+        _output = output;
+        _writer = new Thread(this::run, "checkpointer");
+        _writer.setDaemon(true);
+        _writer.start();
+    }
+
+    /** Arrange for CHECKPOINT to be written, replacing any checkpoint
+     *  submitted earlier and not yet written. */
+    synchronized void submit(Checkpoint checkpoint) {
+        checkError();
+        _pending = checkpoint;
+        notifyAll();
+    }
+
+    /** Write any pending checkpoint and stop my thread. */
+    void close() {
+        synchronized (this) {
+            _closed = true;
+            notifyAll();
+        }
+        try {
+            _writer.join();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        checkError();
+    }
+
+    /** Return the number of checkpoints actually written. */
+    synchronized int written() {
+        return _written;
+    }
+
+    /** Report an error from my thread, if there was one. */
+    private synchronized void checkError() {
+        if (_error != null) {
+            throw _error;
+        }
+    }
+
+    /** Body of my thread: write pending checkpoints until closed. */
+    private void run() {
+        while (true) {
+            Checkpoint next;
+            synchronized (this) {
+                while (_pending == null && !_closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException excp) {
+                        return;
+                    }
+                }
+                if (_pending == null) {
+                    return;
+                }
+                next = _pending;
+                _pending = null;
+            }
+            try {
+                _output.force(false);
+                next.write(_file);
+                synchronized (this) {
+                    _written += 1;
+                }
+            } catch (IOException excp) {
+                synchronized (this) {
+                    _error = error("could not sync output");
+                }
+                return;
+            } catch (EnigmaException excp) {
+                synchronized (this) {
+                    _error = excp;
+                }
+                return;
+            }
+        }
+    }
+
+    /** Where checkpoints go. */
+    private final File _file;
+    /** The output whose offsets checkpoints record. */
+    private final FileChannel _output;
+    /** Thread doing the writing. */
+    private final Thread _writer;
+    /** Most recently submitted checkpoint not yet being written. */
+    private Checkpoint _pending;
+    /** True once close has been called. */
+    private boolean _closed;
+    /** Number of checkpoints written. */
+    private int _written;
+    /** Error encountered by _writer, if any. */
+    private EnigmaException _error;
+}
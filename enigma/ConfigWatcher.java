@@ -0,0 +1,167 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+import static enigma.EnigmaException.*;
+
+/** Keeps the machine described by a configuration file up to date as
+ *  the file changes.  A daemon thread waits for changes to the file,
+ *  reads it again, and publishes the result as a new Generation through
+ *  a single volatile field.  Readers call current, typically once per
+ *  message, and copy the generation's template, so a message already
+ *  being converted finishes with the machine it started with.  If the
+ *  changed file is not a valid configuration, the error is reported and
+ *  the current generation is kept.
+ *  @author Avik Samanta
+ */
+class ConfigWatcher implements AutoCloseable {
+
+    /** Time to wait after a change for further changes to the same file,
+     *  in milliseconds, so that an editor's several writes cause only one
+     *  reload. */
+    static final long SETTLE_MILLIS = 50;
+
+    /** One version of the configuration.  Its template is an unset
+     *  machine that is only ever copied, never used to convert, and so
+     *  may be shared among threads. */
+    static final class Generation {
+
+        /** Generation NUMBER, whose template is TEMPLATE, which took
+         *  LOADNANOS to read. */
+        Generation(int number, Machine template, long loadNanos) {
+            _number = number;
+            _template = template;
+            _loadNanos = loadNanos;
+            _published = System.nanoTime();
+        }
+
+        /** Return my number: 0 for the configuration first read, and
+         *  one more for each reload. */
+        int number() {
+            return _number;
+        }
+
+        /** Return a new unset machine of my configuration. */
+        Machine newMachine() {
+            return _template.copy();
+        }
+
+        /** Return the time taken to read my configuration, in
+         *  nanoseconds. */
+        long loadNanos() {
+            return _loadNanos;
+        }
+
+        /** Return the value of System.nanoTime when I was published. */
+        long published() {
+            return _published;
+        }
+
+        /** My number. */
+        private final int _number;
+        /** The machine that users of this generation copy. */
+        private final Machine _template;
+        /** Time taken to read my configuration. */
+        private final long _loadNanos;
+        /** When I was published. */
+        private final long _published;
+    }
+
+    /** A watcher of the configuration file named NAME, which is read
+     *  once now. */
+    ConfigWatcher(String name) {
+        _name = name;
+        _file = Paths.get(name).toAbsolutePath();
+        long start = System.nanoTime();
+        Machine first = Main.loadConfig(name);
+        _current = new Generation(0, first, System.nanoTime() - start);
+        try {
+            _service = FileSystems.getDefault().newWatchService();
+            _file.getParent().register(_service, ENTRY_CREATE,
+                                       ENTRY_MODIFY);
+        } catch (IOException excp) {
+            throw error("could not watch %s", name);
+        }
+        Thread thread = new Thread(this::watch, "config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Return the current generation. */
+    Generation current() {
+        return _current;
+    }
+
+    /** Stop watching. */
+    @Override
+    public void close() {
+        try {
+            _service.close();
+        } catch (IOException excp) {
+            /* Ignore: nothing more can be done. */
+        }
+    }
+
+    /** Reload the configuration each time it changes, until closed. */
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = _service.take();
+                boolean changed = changes(key);
+                while ((key = _service.poll(SETTLE_MILLIS,
+                                            TimeUnit.MILLISECONDS)) != null) {
+                    changed |= changes(key);
+                }
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException excp) {
+            return;
+        }
+    }
+
+    /** Return true iff the events of KEY may concern my file, and reset
+     *  KEY. */
+    private boolean changes(WatchKey key) {
+        boolean result = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            result |= event.kind() == OVERFLOW
+                || _file.getFileName().equals(event.context());
+        }
+        key.reset();
+        return result;
+    }
+
+    /** Read my file and publish it as the next generation. */
+    private void reload() {
+        long start = System.nanoTime();
+        try {
+            Machine next = Main.loadConfig(_name);
+            _current = new Generation(_current.number() + 1, next,
+                                      System.nanoTime() - start);
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s not reloaded: %s%n", _name,
+                              excp.getMessage());
+        }
+    }
+
+    /** The name of the configuration file, as given. */
+    private final String _name;
+    /** Its absolute path. */
+    private final Path _file;
+    /** Watches its directory. */
+    private final WatchService _service;
+    /** The current generation.  Written only by the thread running
+     *  watch. */
+    private volatile Generation _current;
+}
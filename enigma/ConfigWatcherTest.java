@@ -0,0 +1,66 @@
+package enigma;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigWatcher class.
+ *  @author Avik Samanta
+ */
+public class ConfigWatcherTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Wait until the current generation of WATCHER is no longer
+     *  PREVIOUS, and return the new one. */
+    private static ConfigWatcher.Generation next(
+        ConfigWatcher watcher, ConfigWatcher.Generation previous)
+        throws InterruptedException {
+        while (watcher.current() == previous) {
+            Thread.sleep(5);
+        }
+        return watcher.current();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testReload() throws Exception {
+        File dir = Files.createTempDirectory("watch").toFile();
+        File config = writeNaval(new File(dir, "naval.conf"), 5, 3);
+        try (ConfigWatcher watcher = new ConfigWatcher(config.getPath())) {
+            ConfigWatcher.Generation first = watcher.current();
+            assertEquals(0, first.number());
+            assertEquals(5, first.newMachine().numRotors());
+
+            writeNaval(config, 4, 3);
+            ConfigWatcher.Generation second = next(watcher, first);
+            assertEquals(1, second.number());
+            assertEquals(4, second.newMachine().numRotors());
+            assertEquals(5, first.newMachine().numRotors());
+
+            Files.write(config.toPath(), "ABC\n X 2\n"
+                        .getBytes(StandardCharsets.UTF_8));
+            Thread.sleep(20 * ConfigWatcher.SETTLE_MILLIS);
+            assertSame(second, watcher.current());
+
+            writeNaval(config, 3, 2);
+            ConfigWatcher.Generation third = next(watcher, second);
+            assertEquals(2, third.number());
+            assertEquals(3, third.newMachine().numRotors());
+            assertEquals(2, third.newMachine().numPawls());
+        } finally {
+            deleteAll(dir);
+        }
+    }
+}
@@ -0,0 +1,566 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** Letter statistics over archives of messages in the format of Main's
+ *  input.  Each settings line starts a new message, made of the letters
+ *  on the lines up to the next settings line.  Usage:
+ *
+ *      java enigma.CorpusStats [--threads=N] [--csv] CONFIG FILE...
+ *
+ *  prints, for the alphabet of CONFIG, a report of the letter counts,
+ *  the counts of adjacent letter pairs within messages (for alphabets of
+ *  at most MAX_BIGRAM_ALPHABET letters), the index of coincidence of all
+ *  the letters, and the distribution of the indices of coincidence of
+ *  the individual messages, as JSON or, with --csv, as rows of
+ *  "SECTION,KEY,VALUE".  Characters that are neither letters nor
+ *  whitespace are counted, but otherwise ignored, as is each byte that
+ *  is not part of a well-formed UTF-8 character.
+ *
+ *  The files are cut into pieces of about PIECE_SIZE bytes, each piece
+ *  taking the messages that start in it.  N threads (default: one per
+ *  processor) claim pieces in turn, each counting into its own tables,
+ *  which are added together at the end.  A thread maps only its piece,
+ *  plus an eighth of a piece beyond it for the end of its last message,
+ *  and maps further windows of a piece each only if that message runs
+ *  on past them.
+ *  @author Avik Samanta
+ */
+class CorpusStats {
+
+    /** Nominal size of the pieces that threads claim. */
+    static final long PIECE_SIZE = 1L << 25;
+    /** Largest alphabet for which letter pairs are counted. */
+    static final int MAX_BIGRAM_ALPHABET = 256;
+    /** Number of bins in the histogram of message indices of
+     *  coincidence, and the width of each; the last bin also counts all
+     *  larger values. */
+    static final int IOC_BINS = 100;
+    /** Width of each bin of the index of coincidence histogram. */
+    static final double IOC_BIN_WIDTH = 0.002;
+
+    /** Compute and print statistics as directed by ARGS. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--threads=(\\d+) --csv --=(.+){2,}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.CorpusStats [--threads=N] "
+                            + "[--csv] CONFIG FILE...");
+            }
+            List<String> files = options.get("--");
+            int threads = Runtime.getRuntime().availableProcessors();
+            if (options.contains("--threads")) {
+                threads = Integer.parseInt(options.getFirst("--threads"));
+                if (threads < 1) {
+                    throw error("need at least one thread");
+                }
+            }
+            Alphabet alpha = Main.loadConfig(files.get(0)).alphabet();
+            CorpusStats stats =
+                new CorpusStats(alpha, files.subList(1, files.size()));
+            long start = System.nanoTime();
+            stats.run(threads);
+            stats.report(System.out, options.contains("--csv"),
+                         (System.nanoTime() - start) * 1e-9);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Statistics in ALPHA over the files named FILES. */
+    CorpusStats(Alphabet alpha, List<String> files) {
+        this(alpha, files, PIECE_SIZE);
+    }
+
+    /** Statistics in ALPHA over the files named FILES, cut into pieces
+     *  of PIECESIZE bytes. */
+    CorpusStats(Alphabet alpha, List<String> files, long pieceSize) {
+        _alphabet = alpha;
+        _files = new ArrayList<>();
+        for (String name : files) {
+            File file = new File(name);
+            if (!file.isFile()) {
+                throw error("could not open %s", name);
+            }
+            _files.add(file);
+            _bytes += file.length();
+            for (long s = 0; s < file.length(); s += pieceSize) {
+                _pieces.add(new long[] { _files.size() - 1, s,
+                                         Math.min(file.length(),
+                                                  s + pieceSize) });
+            }
+        }
+        _total = new Counts(alpha, pieceSize);
+    }
+
+    /** Gather my statistics on THREADS threads. */
+    void run(int threads) {
+        AtomicInteger next = new AtomicInteger();
+        Counts[] counts = new Counts[threads];
+        RuntimeException[] failures = new RuntimeException[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t += 1) {
+            final int which = t;
+            counts[t] = new Counts(_alphabet, _total._window);
+            workers[t] = new Thread(() -> {
+                try {
+                    for (int k = next.getAndIncrement(); k < _pieces.size();
+                         k = next.getAndIncrement()) {
+                        long[] piece = _pieces.get(k);
+                        counts[which].scan(_files.get((int) piece[0]),
+                                           piece[1], piece[2]);
+                    }
+                } catch (RuntimeException excp) {
+                    failures[which] = excp;
+                }
+            });
+            workers[t].start();
+        }
+        for (int t = 0; t < threads; t += 1) {
+            try {
+                workers[t].join();
+            } catch (InterruptedException excp) {
+                throw error("interrupted");
+            }
+            if (failures[t] != null) {
+                throw failures[t];
+            }
+            _total.add(counts[t]);
+        }
+    }
+
+    /** Print my statistics to OUT, as CSV if CSV and otherwise as JSON,
+     *  noting that they took SECONDS to gather. */
+    void report(PrintStream out, boolean csv, double seconds) {
+        Counts c = _total;
+        int n = _alphabet.size();
+        long sum = 0;
+        for (long k : c._letters) {
+            sum += k * (k - 1);
+        }
+        double ioc = c._letterCount < 2 ? 0
+            : (double) sum / c._letterCount / (c._letterCount - 1);
+        Report r = new Report(out, csv);
+        r.value("summary", "files", _files.size());
+        r.value("summary", "bytes", _bytes);
+        r.value("summary", "seconds", seconds);
+        r.value("summary", "mbPerSecond", _bytes / seconds / (1 << 20));
+        r.value("summary", "messages", c._messages);
+        r.value("summary", "lines", c._lines);
+        r.value("summary", "letterCount", c._letterCount);
+        r.value("summary", "other", c._other);
+        r.value("summary", "ioc", ioc);
+        r.value("summary", "meanMessageIoc",
+                c._scoredMessages == 0 ? 0
+                : c._messageIocSum / c._scoredMessages);
+        r.value("summary", "shortMessages",
+                c._messages - c._scoredMessages);
+        r.begin("letters");
+        for (int i = 0; i < n; i += 1) {
+            r.value("letters", letter(i), c._letters[i]);
+        }
+        r.end();
+        if (c._bigrams != null) {
+            r.begin("bigrams");
+            for (int i = 0; i < n * n; i += 1) {
+                if (c._bigrams[i] != 0) {
+                    r.value("bigrams", letter(i / n) + letter(i % n),
+                            c._bigrams[i]);
+                }
+            }
+            r.end();
+        }
+        r.begin("messageIoc");
+        for (int i = 0; i < IOC_BINS; i += 1) {
+            r.value("messageIoc", String.format("%.3f", i * IOC_BIN_WIDTH),
+                    c._iocHistogram[i]);
+        }
+        r.end();
+        r.finish();
+    }
+
+    /** Return letter #I of my alphabet as a String. */
+    private String letter(int i) {
+        return new String(Character.toChars(_alphabet.toCodePoint(i)));
+    }
+
+    /** Counts gathered by one thread. */
+    private static class Counts {
+
+        /** Empty counts for ALPHA, reading files in windows of WINDOW
+         *  bytes. */
+        Counts(Alphabet alpha, long window) {
+            _alphabet = alpha;
+            _window = window;
+            int n = alpha.size();
+            _letters = new long[n];
+            _message = new int[n];
+            _touched = new int[n];
+            _bigrams = n <= MAX_BIGRAM_ALPHABET ? new long[n * n] : null;
+            _iocHistogram = new long[IOC_BINS];
+            _ascii = new int[128];
+            for (int c = 0; c < 128; c += 1) {
+                _ascii[c] = Character.isWhitespace(c) ? WHITESPACE
+                    : alpha.toIndex(c);
+            }
+        }
+
+        /** Count the messages of FILE that start in bytes [START, END). */
+        void scan(File file, long start, long end) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                 FileChannel channel = raf.getChannel()) {
+                _fileSize = channel.size();
+                long base = Math.max(0, start - 1);
+                map(channel, base, end - base + _window / 8);
+                int state = start > 0 ? SKIP : LINE_START;
+                int p = 0;
+                _inMessage = false;
+                while (true) {
+                    if (p >= _data.limit() || _split) {
+                        if (!_split && _base + p >= _fileSize) {
+                            break;
+                        }
+                        _split = false;
+                        map(channel, _base + p, _window);
+                        p = 0;
+                    }
+                    if ((state == SKIP || state == SEEK)
+                        && _base + p >= end) {
+                        break;
+                    }
+                    if (state == SKIP || state == SETTINGS) {
+                        int limit = _data.limit();
+                        if (state == SKIP) {
+                            limit = (int) Math.min(limit, end - _base);
+                        }
+                        while (p < limit && _data.get(p) != '\n') {
+                            p += 1;
+                        }
+                        if (p < limit) {
+                            p += 1;
+                            state = state == SKIP ? SEEK : LINE_START;
+                        }
+                    } else if (state == SEEK) {
+                        state = _data.get(p) == '*' ? LINE_START : SKIP;
+                    } else if (state == LINE_START) {
+                        if (_base + p == 0 || _data.get(p) == '*') {
+                            if (_base + p >= end) {
+                                break;
+                            }
+                            endMessage();
+                            _inMessage = true;
+                            _messages += 1;
+                            state = SETTINGS;
+                        } else {
+                            _lines += 1;
+                            state = TEXT;
+                        }
+                    } else {
+                        p = line(p);
+                        if (_lineDone) {
+                            state = LINE_START;
+                        }
+                    }
+                }
+            } catch (IOException excp) {
+                throw error("could not map %s", file);
+            }
+            endMessage();
+        }
+
+        /** Map LENGTH bytes of CHANNEL (but at least MIN_WINDOW, and no
+         *  more than are left or can be mapped at once) from offset
+         *  FROM into _data. */
+        private void map(FileChannel channel, long from, long length)
+            throws IOException {
+            long size = Math.min(Math.max(length, MIN_WINDOW),
+                                 Integer.MAX_VALUE);
+            size = Math.min(size, _fileSize - from);
+            _data = channel.map(FileChannel.MapMode.READ_ONLY, from, size);
+            _base = from;
+        }
+
+        /** Count the rest of the message line in _data starting at P and
+         *  ending before '\n' or the end of _data, returning the position
+         *  after it.  Sets _lineDone iff the line ended, and sets _split
+         *  if a character is cut off by the end of _data before the end
+         *  of the file, leaving it to be counted from a new window. */
+        private int line(int p) {
+            MappedByteBuffer data = _data;
+            int limit = data.limit();
+            boolean atEof = _base + limit >= _fileSize;
+            int prev = _prev;
+            _lineDone = false;
+            while (p < limit) {
+                int c = data.get(p);
+                p += 1;
+                int index;
+                if (c >= 0) {
+                    if (c == '\n') {
+                        _lineDone = true;
+                        break;
+                    }
+                    index = _ascii[c];
+                    if (index == WHITESPACE) {
+                        continue;
+                    }
+                } else {
+                    int cp = Utf8.decode(data, p - 1, limit);
+                    if (cp == Utf8.TRUNCATED && !atEof) {
+                        p -= 1;
+                        _split = true;
+                        break;
+                    } else if (cp < 0) {
+                        _other += 1;
+                        continue;
+                    }
+                    p += Utf8.width(cp) - 1;
+                    if (Character.isWhitespace(cp)) {
+                        continue;
+                    }
+                    index = _alphabet.toIndex(cp);
+                }
+                if (index < 0) {
+                    _other += 1;
+                    continue;
+                }
+                _letters[index] += 1;
+                _letterCount += 1;
+                if (_message[index] == 0) {
+                    _touched[_numTouched] = index;
+                    _numTouched += 1;
+                }
+                _message[index] += 1;
+                _messageLetters += 1;
+                if (prev >= 0 && _bigrams != null) {
+                    _bigrams[prev * _letters.length + index] += 1;
+                }
+                prev = index;
+            }
+            _prev = prev;
+            return p;
+        }
+
+        /** Finish counting the current message, if any. */
+        private void endMessage() {
+            if (_inMessage && _messageLetters >= 2) {
+                long sum = 0;
+                for (int i = 0; i < _numTouched; i += 1) {
+                    long k = _message[_touched[i]];
+                    sum += k * (k - 1);
+                }
+                double ioc = (double) sum / _messageLetters
+                    / (_messageLetters - 1);
+                _messageIocSum += ioc;
+                _scoredMessages += 1;
+                _iocHistogram[Math.min(IOC_BINS - 1,
+                                       (int) (ioc / IOC_BIN_WIDTH))] += 1;
+            }
+            for (int i = 0; i < _numTouched; i += 1) {
+                _message[_touched[i]] = 0;
+            }
+            _numTouched = 0;
+            _messageLetters = 0;
+            _prev = -1;
+            _inMessage = false;
+        }
+
+        /** Add the counts in OTHER to mine. */
+        void add(Counts other) {
+            for (int i = 0; i < _letters.length; i += 1) {
+                _letters[i] += other._letters[i];
+            }
+            if (_bigrams != null) {
+                for (int i = 0; i < _bigrams.length; i += 1) {
+                    _bigrams[i] += other._bigrams[i];
+                }
+            }
+            for (int i = 0; i < IOC_BINS; i += 1) {
+                _iocHistogram[i] += other._iocHistogram[i];
+            }
+            _letterCount += other._letterCount;
+            _other += other._other;
+            _lines += other._lines;
+            _messages += other._messages;
+            _scoredMessages += other._scoredMessages;
+            _messageIocSum += other._messageIocSum;
+        }
+
+        /** Value in _ascii for whitespace. */
+        private static final int WHITESPACE = -2;
+        /** States of scan: skipping the rest of a line before the first
+         *  message, at the start of such a line, at the start of a line
+         *  within the messages, in a settings line, and in a message
+         *  line.  The first two end the piece once they reach its end,
+         *  since no message of the piece can start after that. */
+        private static final int SKIP = 0, SEEK = 1, LINE_START = 2,
+            SETTINGS = 3, TEXT = 4;
+        /** Fewest bytes mapped at once, enough for any UTF-8
+         *  character. */
+        private static final long MIN_WINDOW = 4;
+
+        /** Bytes mapped at once when a message runs past the end of the
+         *  current window. */
+        private final long _window;
+        /** The bytes of the file being scanned now mapped. */
+        private MappedByteBuffer _data;
+        /** Offset in the file of _data[0]. */
+        private long _base;
+        /** Size of the file being scanned. */
+        private long _fileSize;
+        /** True iff line stopped before a character cut off by the end
+         *  of _data. */
+        private boolean _split;
+        /** True iff line reached the end of its line. */
+        private boolean _lineDone;
+
+        /** The alphabet. */
+        private final Alphabet _alphabet;
+        /** Index of each ASCII character in _alphabet, -1 if absent, or
+         *  WHITESPACE. */
+        private final int[] _ascii;
+        /** Count of each letter. */
+        private final long[] _letters;
+        /** Count of each pair of adjacent letters, indexed by first * size
+         *  + second, or null if the alphabet is too large. */
+        private final long[] _bigrams;
+        /** Histogram of message indices of coincidence. */
+        private final long[] _iocHistogram;
+        /** Totals of letters, other characters, message lines, messages,
+         *  and messages with at least two letters. */
+        private long _letterCount, _other, _lines, _messages,
+            _scoredMessages;
+        /** Sum of the indices of coincidence of scored messages. */
+        private double _messageIocSum;
+
+        /** Letter counts for the current message. */
+        private final int[] _message;
+        /** The letters with nonzero counts in _message, in
+         *  _touched[0 .. _numTouched-1]. */
+        private final int[] _touched;
+        /** Number of entries in _touched. */
+        private int _numTouched;
+        /** Number of letters in the current message. */
+        private long _messageLetters;
+        /** The last letter of the current message, or -1. */
+        private int _prev = -1;
+        /** True iff a message is in progress. */
+        private boolean _inMessage;
+    }
+
+    /** Writes a report as JSON or CSV. */
+    private static class Report {
+
+        /** A report to OUT, as CSV iff CSV. */
+        Report(PrintStream out, boolean csv) {
+            _out = out;
+            _csv = csv;
+            if (csv) {
+                _out.println("section,key,value");
+            } else {
+                _out.print("{");
+            }
+        }
+
+        /** Start the group of values named NAME. */
+        void begin(String name) {
+            if (!_csv) {
+                _out.printf(",%n  %s: {", quote(name));
+                _first = true;
+            }
+        }
+
+        /** End the current group of values. */
+        void end() {
+            if (!_csv) {
+                _out.print("}");
+            }
+        }
+
+        /** Report VALUE under KEY in the section SECTION, which is either
+         *  "summary" or the current group. */
+        void value(String section, String key, Object value) {
+            String text = value instanceof Double
+                ? String.format("%.6g", (Double) value) : value.toString();
+            if (_csv) {
+                _out.printf("%s,%s,%s%n", section, csvQuote(key), text);
+            } else if (section.equals("summary")) {
+                _out.printf("%s%n  %s: %s", _started ? "," : "", quote(key),
+                            text);
+                _started = true;
+            } else {
+                _out.printf("%s%s: %s", _first ? "" : ", ", quote(key),
+                            text);
+                _first = false;
+            }
+        }
+
+        /** Finish the report. */
+        void finish() {
+            if (!_csv) {
+                _out.printf("%n}%n");
+            }
+            _out.flush();
+        }
+
+        /** Return S as a JSON string. */
+        private static String quote(String s) {
+            StringBuilder result = new StringBuilder("\"");
+            for (int i = 0; i < s.length(); i += 1) {
+                char c = s.charAt(i);
+                if (c == '"' || c == '\\') {
+                    result.append('\\').append(c);
+                } else if (c < ' ') {
+                    result.append(String.format("\\u%04x", (int) c));
+                } else {
+                    result.append(c);
+                }
+            }
+            return result.append('"').toString();
+        }
+
+        /** Return S as a CSV field. */
+        private static String csvQuote(String s) {
+            if (s.contains(",") || s.contains("\"")) {
+                return "\"" + s.replace("\"", "\"\"") + "\"";
+            }
+            return s;
+        }
+
+        /** Destination. */
+        private final PrintStream _out;
+        /** True for CSV, false for JSON. */
+        private final boolean _csv;
+        /** True once a summary value has been written. */
+        private boolean _started;
+        /** True iff no value has been written in the current group. */
+        private boolean _first;
+    }
+
+    /** The alphabet. */
+    private final Alphabet _alphabet;
+    /** The files to analyze. */
+    private final ArrayList<File> _files;
+    /** Pieces of the files: file number, start, and end. */
+    private final ArrayList<long[]> _pieces = new ArrayList<>();
+    /** Total size of the files. */
+    private long _bytes;
+    /** The combined counts. */
+    private final Counts _total;
+}
@@ -0,0 +1,167 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CorpusStats class.
+ *  @author Avik Samanta
+ */
+public class CorpusStatsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the CSV report of statistics over the files FILES, cut
+     *  into pieces of PIECESIZE bytes and gathered on THREADS threads, as
+     *  a map from "SECTION,KEY" to value, leaving out the timings. */
+    private static HashMap<String, String> stats(long pieceSize,
+                                                 int threads,
+                                                 String... files) {
+        CorpusStats stats =
+            new CorpusStats(UPPER, Arrays.asList(files), pieceSize);
+        stats.run(threads);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        stats.report(new PrintStream(bytes, true), true, 1.0);
+        HashMap<String, String> result = new HashMap<>();
+        for (String row : bytes.toString(StandardCharsets.UTF_8)
+                 .split("\n")) {
+            int comma = row.lastIndexOf(',');
+            String key = row.substring(0, comma);
+            if (!key.equals("summary,seconds")
+                && !key.equals("summary,mbPerSecond")) {
+                result.put(key, row.substring(comma + 1).trim());
+            }
+        }
+        return result;
+    }
+
+    /** Return a temporary file, deleted on exit, holding TEXT. */
+    private static String file(String text) throws Exception {
+        File file = File.createTempFile("corpus", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return file.getPath();
+    }
+
+    /** Return the number in REPORT under KEY. */
+    private static double number(HashMap<String, String> report,
+                                 String key) {
+        assertTrue(key, report.containsKey(key));
+        return Double.parseDouble(report.get(key));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSmall() throws Exception {
+        String name = file("* B Beta I II III AAAA\nAB A\nBA\n"
+                           + "* B Beta I II III AAAA\nCC1C\n\n"
+                           + "* X\nZ\n");
+        for (long pieceSize : new long[] { 1, 5, 30, 1 << 20 }) {
+            HashMap<String, String> r = stats(pieceSize, 2, name);
+            assertEquals(3, number(r, "summary,messages"), 0);
+            assertEquals(5, number(r, "summary,lines"), 0);
+            assertEquals(9, number(r, "summary,letterCount"), 0);
+            assertEquals(1, number(r, "summary,other"), 0);
+            assertEquals(1, number(r, "summary,shortMessages"), 0);
+            assertEquals(14.0 / 72, number(r, "summary,ioc"), 1e-6);
+            assertEquals(0.7, number(r, "summary,meanMessageIoc"), 1e-6);
+            assertEquals(3, number(r, "letters,A"), 0);
+            assertEquals(2, number(r, "letters,B"), 0);
+            assertEquals(3, number(r, "letters,C"), 0);
+            assertEquals(0, number(r, "letters,D"), 0);
+            assertEquals(1, number(r, "letters,Z"), 0);
+            assertEquals(2, number(r, "bigrams,AB"), 0);
+            assertEquals(2, number(r, "bigrams,BA"), 0);
+            assertEquals(2, number(r, "bigrams,CC"), 0);
+            assertFalse(r.containsKey("bigrams,AA"));
+            assertFalse(r.containsKey("bigrams,BC"));
+            assertEquals(2, number(r, "messageIoc,0.198"), 0);
+        }
+    }
+
+    @Test
+    public void testMalformed() throws Exception {
+        File file = File.createTempFile("corpus", ".txt");
+        file.deleteOnExit();
+        byte[] text = {
+            '*', ' ', 'X', '\n', 'A', (byte) 0xf7, (byte) 0xbf, (byte) 0xbf,
+            (byte) 0xbf, 'B', (byte) 0xed, (byte) 0xa0, (byte) 0x80, 'C',
+            (byte) 0xe2, '\n', 'D', (byte) 0xc3,
+        };
+        Files.write(file.toPath(), text);
+        for (long pieceSize : new long[] { 1, 7, 1 << 20 }) {
+            HashMap<String, String> r = stats(pieceSize, 1, file.getPath());
+            assertEquals(1, number(r, "summary,messages"), 0);
+            assertEquals(2, number(r, "summary,lines"), 0);
+            assertEquals(4, number(r, "summary,letterCount"), 0);
+            assertEquals(9, number(r, "summary,other"), 0);
+            assertEquals(1, number(r, "bigrams,AB"), 0);
+            assertEquals(1, number(r, "bigrams,BC"), 0);
+        }
+    }
+
+    @Test
+    public void testLongLine() throws Exception {
+        StringBuilder text = new StringBuilder("* B Beta I II III AAAA\n");
+        for (int k = 0; k < 300000; k += 1) {
+            text.append((char) ('A' + k % 26));
+        }
+        text.append("\n* B Beta I II III AAAA\nAB\n");
+        String name = file(text.toString());
+        HashMap<String, String> expected = stats(1 << 20, 1, name);
+        assertEquals(2, number(expected, "summary,messages"), 0);
+        assertEquals(300002, number(expected, "summary,letterCount"), 0);
+        assertEquals(expected, stats(64, 4, name));
+    }
+
+    @Test
+    public void testPiecesAgree() throws Exception {
+        Random random = new Random(61);
+        String[] others = { "\u00e9", "\u4e2d", "\ud83d\ude00", "1", "\t" };
+        StringBuilder text = new StringBuilder();
+        for (int m = 0; m < 60; m += 1) {
+            text.append("* B Beta I II III AAAA\n");
+            for (int n = random.nextInt(4); n > 0; n -= 1) {
+                for (int k = random.nextInt(30); k > 0; k -= 1) {
+                    int c = random.nextInt(40);
+                    if (c < 26) {
+                        text.append((char) ('A' + c));
+                    } else if (c < 35) {
+                        text.append(' ');
+                    } else {
+                        text.append(others[c - 35]);
+                    }
+                }
+                text.append(random.nextBoolean() ? "\n" : "\r\n");
+            }
+        }
+        String first = file(text.toString());
+        String second = file(text.substring(0, text.length() - 5));
+        HashMap<String, String> expected = stats(1 << 20, 1, first, second);
+        assertEquals(120, number(expected, "summary,messages"), 0);
+        for (long pieceSize : new long[] { 16, 61, 1000 }) {
+            for (int threads = 1; threads <= 3; threads += 1) {
+                assertEquals(msg("pieces", "size %d, %d threads",
+                                 pieceSize, threads),
+                             expected, stats(pieceSize, threads, first,
+                                             second));
+            }
+        }
+    }
+}
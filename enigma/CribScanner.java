@@ -0,0 +1,445 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** Finds where a crib (a guess at some plaintext) can lie in a
+ *  ciphertext.  Since the reflector maps no letter to itself, neither
+ *  does the machine, so the crib cannot lie at any offset where one of
+ *  its letters lines up with the same letter of the ciphertext; every
+ *  other offset is admissible.  Usage:
+ *
+ *      java enigma.CribScanner [--threads=N] [--count] [--naive]
+ *                              CONFIG CRIB CIPHERTEXT [OUTPUT]
+ *
+ *  prints the admissible offsets of CRIB in the file CIPHERTEXT, one per
+ *  line, counting only letters (whitespace is ignored), to OUTPUT or the
+ *  standard output.  With --count, prints only their number.  With
+ *  --naive, checks each offset letter by letter instead, for comparison.
+ *
+ *  For each letter of the crib, the scanner makes a bitmap of the
+ *  positions of that letter in the ciphertext.  An offset is excluded
+ *  iff bit offset + k of the bitmap for crib letter k is set for some k,
+ *  so shifting each bitmap right by k and or-ing them excludes 64
+ *  offsets per operation.  The file is mapped into memory and cut into
+ *  pieces of about PIECE_SIZE bytes that are scanned on N threads
+ *  (default: one per processor).
+ *  @author Avik Samanta
+ */
+class CribScanner {
+
+    /** Nominal size in bytes of the pieces of files scanned at once. */
+    static final int PIECE_SIZE = 1 << 22;
+
+    /** Scan a file as directed by ARGS. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--threads=(\\d+) --count --naive "
+                                + "--=(.*){3,4}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.CribScanner [--threads=N] "
+                            + "[--count] [--naive] CONFIG CRIB CIPHERTEXT "
+                            + "[OUTPUT]");
+            }
+            List<String> files = options.get("--");
+            int threads = Runtime.getRuntime().availableProcessors();
+            if (options.contains("--threads")) {
+                threads = Integer.parseInt(options.getFirst("--threads"));
+                if (threads < 1) {
+                    throw error("need at least one thread");
+                }
+            }
+            Alphabet alpha = Main.loadConfig(files.get(0)).alphabet();
+            CribScanner scanner =
+                new CribScanner(alpha, letters(alpha, files.get(1)));
+            File input = new File(files.get(2));
+            if (options.contains("--count")) {
+                System.out.println(scanner.scanFile(input, threads,
+                                                    options.contains(
+                                                        "--naive"), null));
+            } else if (files.size() > 3) {
+                try (PrintStream out =
+                     new PrintStream(new BufferedOutputStream(
+                                         new FileOutputStream(files.get(3)),
+                                         1 << 16))) {
+                    scanner.scanFile(input, threads,
+                                     options.contains("--naive"), out);
+                } catch (IOException excp) {
+                    throw error("could not open %s", files.get(3));
+                }
+            } else {
+                PrintStream out =
+                    new PrintStream(new BufferedOutputStream(System.out,
+                                                             1 << 16));
+                scanner.scanFile(input, threads, options.contains("--naive"),
+                                 out);
+                out.flush();
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the indices in ALPHA of the letters of TEXT, ignoring
+     *  whitespace. */
+    static int[] letters(Alphabet alpha, String text) {
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); ) {
+            int c = text.codePointAt(i);
+            i += Character.charCount(c);
+            if (!Character.isWhitespace(c)) {
+                result[n] = alpha.toIndex(c);
+                if (result[n] < 0) {
+                    throw error("character %s not in alphabet",
+                                new String(Character.toChars(c)));
+                }
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** A scanner for CRIB, a non-empty sequence of indices of letters in
+     *  ALPHA.  A scanner keeps working storage, and so may be used by one
+     *  thread at a time. */
+    CribScanner(Alphabet alpha, int[] crib) {
+        if (crib.length == 0) {
+            throw error("empty crib");
+        }
+        _alphabet = alpha;
+        _crib = crib.clone();
+        _slot = new int[alpha.size()];
+        _base = new int[alpha.size()];
+        Arrays.fill(_slot, -1);
+        _cribSlots = new int[crib.length];
+        for (int k = 0; k < crib.length; k += 1) {
+            if (_slot[crib[k]] < 0) {
+                _slot[crib[k]] = _numSlots;
+                _numSlots += 1;
+            }
+            _cribSlots[k] = _slot[crib[k]];
+        }
+    }
+
+    /** Return the length of my crib. */
+    int length() {
+        return _crib.length;
+    }
+
+    /** Set bit OFFSET of RESULT for each admissible offset of my crib in
+     *  the ciphertext CIPHER[0 .. N-1] that is less than OWNED, and clear
+     *  all other bits of its first (OWNED + 63) / 64 words.  Return the
+     *  number of admissible offsets. */
+    int scan(int[] cipher, int n, int owned, long[] result) {
+        int m = _crib.length;
+        int valid = Math.min(owned, n - m + 1);
+        Arrays.fill(result, 0, (owned + 63) >>> 6, 0L);
+        if (valid <= 0) {
+            return 0;
+        }
+        int stride = ((n + 63) >>> 6) + 1;
+        int size = (_numSlots + 1) * stride;
+        if (_bits == null || _bits.length < size) {
+            _bits = new long[size];
+        } else {
+            Arrays.fill(_bits, 0, size, 0L);
+        }
+        long[] bits = _bits;
+        int[] base = _base;
+        for (int i = 0; i < base.length; i += 1) {
+            base[i] = (_slot[i] < 0 ? _numSlots : _slot[i]) * stride;
+        }
+        for (int j = 0; j < n; j += 1) {
+            bits[base[cipher[j]] + (j >>> 6)] |= 1L << j;
+        }
+        int words = (valid + 63) >>> 6;
+        for (int k = 0; k < m; k += 1) {
+            int from = _cribSlots[k] * stride + (k >>> 6);
+            int shift = k & 63;
+            if (shift == 0) {
+                for (int w = 0; w < words; w += 1) {
+                    result[w] |= bits[from + w];
+                }
+            } else {
+                for (int w = 0; w < words; w += 1) {
+                    result[w] |= bits[from + w] >>> shift
+                        | bits[from + w + 1] << (64 - shift);
+                }
+            }
+        }
+        int count = 0;
+        for (int w = 0; w < words; w += 1) {
+            result[w] = ~result[w];
+            if (w == words - 1 && (valid & 63) != 0) {
+                result[w] &= (1L << valid) - 1;
+            }
+            count += Long.bitCount(result[w]);
+        }
+        return count;
+    }
+
+    /** As for scan, but checking each offset letter by letter. */
+    int scanNaive(int[] cipher, int n, int owned, long[] result) {
+        int m = _crib.length;
+        int valid = Math.min(owned, n - m + 1);
+        Arrays.fill(result, 0, (owned + 63) >>> 6, 0L);
+        int count = 0;
+        for (int o = 0; o < valid; o += 1) {
+            int k;
+            for (k = 0; k < m && cipher[o + k] != _crib[k]; k += 1) {
+                continue;
+            }
+            if (k == m) {
+                result[o >>> 6] |= 1L << o;
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** Scan FILE on THREADS threads, letter by letter iff NAIVE, and
+     *  print the admissible offsets to OUT, if it is not null.  Return
+     *  the number of admissible offsets. */
+    long scanFile(File file, int threads, boolean naive, PrintStream out) {
+        MappedByteBuffer data;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw error("%s is too large", file);
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+        ThreadLocal<Worker> workers =
+            ThreadLocal.withInitial(() -> new Worker(naive));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<Piece>> pending = new ArrayDeque<>();
+        long base = 0, count = 0;
+        try {
+            long next = 0;
+            while (next < data.limit() || !pending.isEmpty()) {
+                while (next < data.limit()
+                       && pending.size() < MAX_PENDING_PER_THREAD * threads) {
+                    final int start = (int) next;
+                    pending.add(pool.submit(() -> workers.get().scan(data,
+                                                                      start)));
+                    next += PIECE_SIZE;
+                }
+                Piece piece = pending.remove().get();
+                count += piece._count;
+                if (out != null) {
+                    piece.print(base, out);
+                }
+                base += piece._letters;
+            }
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("scan failed: %s", excp.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return count;
+    }
+
+    /** The admissible offsets among the letters of one piece of a
+     *  file. */
+    private static class Piece {
+
+        /** The result of scanning LETTERS letters, of which COUNT are
+         *  admissible offsets, as given by the bits of ADMISSIBLE. */
+        Piece(int letters, int count, long[] admissible) {
+            _letters = letters;
+            _count = count;
+            _admissible = admissible;
+        }
+
+        /** Print my admissible offsets to OUT, numbering my first letter
+         *  BASE. */
+        void print(long base, PrintStream out) {
+            for (int w = 0; w < _admissible.length; w += 1) {
+                long bits = _admissible[w];
+                while (bits != 0) {
+                    out.println(base + (w << 6)
+                                + Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+        }
+
+        /** Number of letters in the piece. */
+        private final int _letters;
+        /** Number of admissible offsets. */
+        private final int _count;
+        /** Bit I is set iff letter I of the piece is an admissible
+         *  offset. */
+        private final long[] _admissible;
+    }
+
+    /** A scanner and decoding buffer used by one thread. */
+    private class Worker {
+
+        /** A worker that scans letter by letter iff NAIVE. */
+        Worker(boolean naive) {
+            _naive = naive;
+            _scanner = new CribScanner(_alphabet, _crib);
+            _ascii = new int[128];
+            for (int c = 0; c < 128; c += 1) {
+                _ascii[c] = Character.isWhitespace(c) ? WHITESPACE
+                    : _alphabet.toIndex(c);
+            }
+        }
+
+        /** Scan the letters of DATA whose encodings start in
+         *  [START, START + PIECE_SIZE). */
+        Piece scan(MappedByteBuffer data, int start) {
+            int limit = data.limit();
+            int end = (int) Math.min(limit, (long) start + PIECE_SIZE);
+            int p = start;
+            if (p > 0 && (data.get(p) & 0xc0) == 0x80) {
+                p = afterSplit(data, start);
+            }
+            _n = 0;
+            p = decode(data, p, end, Integer.MAX_VALUE);
+            int owned = _n;
+            int want = owned + _crib.length - 1;
+            while (p < limit && _n < want) {
+                int next = (int) Math.min(limit, (long) p + PIECE_SIZE);
+                p = decode(data, p, next, want);
+            }
+            int n = _n;
+            long[] admissible = new long[(owned + 63) >>> 6];
+            int count = _naive
+                ? _scanner.scanNaive(_letters, n, owned, admissible)
+                : _scanner.scan(_letters, n, owned, admissible);
+            return new Piece(owned, count, admissible);
+        }
+
+        /** Return the position in DATA just after the character that
+         *  begins before START, which holds a continuation byte, and
+         *  ends after it.  That character belongs to the previous
+         *  piece. */
+        private int afterSplit(MappedByteBuffer data, int start) {
+            int lead = start - 1;
+            while (lead > 0 && lead > start - Utf8.MAX_WIDTH
+                   && (data.get(lead) & 0xc0) == 0x80) {
+                lead -= 1;
+            }
+            int c = Utf8.decode(data, lead, data.limit());
+            if (c < 0 || lead + Utf8.width(c) <= start) {
+                throw error("malformed UTF-8 in ciphertext");
+            }
+            return lead + Utf8.width(c);
+        }
+
+        /** Append to _letters the letters of DATA whose encodings start
+         *  in [P, END), stopping once _letters holds MAX letters.  Return
+         *  the position after the last character decoded. */
+        private int decode(MappedByteBuffer data, int p, int end, int max) {
+            int len = Math.min(data.limit() - p, end - p + 3);
+            data.get(p, _bytes, 0, len);
+            if (_n + end - p > _letters.length) {
+                _letters = Arrays.copyOf(_letters, _n + end - p);
+            }
+            byte[] bytes = _bytes;
+            int[] letters = _letters, ascii = _ascii;
+            int i = 0, stop = end - p, n = _n;
+            while (i < stop && n < max) {
+                int c = bytes[i];
+                i += 1;
+                int index;
+                if (c >= 0) {
+                    index = ascii[c];
+                    if (index == WHITESPACE) {
+                        continue;
+                    }
+                } else {
+                    c = Utf8.decode(bytes, i - 1, len);
+                    if (c < 0) {
+                        throw error("malformed UTF-8 in ciphertext");
+                    }
+                    i += Utf8.width(c) - 1;
+                    if (Character.isWhitespace(c)) {
+                        continue;
+                    }
+                    index = _alphabet.toIndex(c);
+                }
+                if (index < 0) {
+                    throw error("character %s not in alphabet",
+                                new String(Character.toChars(c)));
+                }
+                letters[n] = index;
+                n += 1;
+            }
+            _n = n;
+            return p + i;
+        }
+
+        /** True iff I scan letter by letter. */
+        private final boolean _naive;
+        /** My scanner. */
+        private final CribScanner _scanner;
+        /** Index of each ASCII character in the alphabet, -1 if absent, or
+         *  WHITESPACE. */
+        private final int[] _ascii;
+        /** The bytes being decoded. */
+        private final byte[] _bytes = new byte[PIECE_SIZE + 3];
+        /** The decoded letters of the current piece, in
+         *  _letters[0 .. _n-1]. */
+        private int[] _letters = new int[PIECE_SIZE + 64];
+        /** Number of decoded letters. */
+        private int _n;
+    }
+
+    /** Value in Worker._ascii for whitespace. */
+    private static final int WHITESPACE = -2;
+
+    /** Most pieces per thread scanned or waiting to be printed at once,
+     *  which bounds the memory a scan uses. */
+    private static final int MAX_PENDING_PER_THREAD = 4;
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+    /** The crib, as indices of letters. */
+    private final int[] _crib;
+    /** For each letter, the index of its bitmap, or -1 if it is not in
+     *  the crib. */
+    private final int[] _slot;
+    /** For each letter, the start of its bitmap in _bits during a scan.
+     *  Letters not in the crib share a bitmap that is never read. */
+    private final int[] _base;
+    /** The index of the bitmap of each letter of the crib. */
+    private final int[] _cribSlots;
+    /** Number of distinct letters in the crib. */
+    private int _numSlots;
+    /** The bitmaps, each of the same number of words, laid end to
+     *  end. */
+    private long[] _bits;
+}
@@ -0,0 +1,94 @@
+package enigma;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CribScanner class.
+ *  @author Avik Samanta
+ */
+public class CribScannerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSmall() {
+        CribScanner scanner =
+            new CribScanner(UPPER, CribScanner.letters(UPPER, "B C"));
+        int[] cipher = CribScanner.letters(UPPER, "ABCDE");
+        long[] result = new long[1];
+        assertEquals(3, scanner.scan(cipher, cipher.length, cipher.length,
+                                     result));
+        assertEquals(0b1101L, result[0]);
+        assertEquals(1, scanner.scan(cipher, cipher.length, 2, result));
+        assertEquals(0b1L, result[0]);
+        assertEquals(0, scanner.scan(cipher, 1, 1, result));
+        assertEquals(0L, result[0]);
+    }
+
+    @Test
+    public void testAgreesWithNaive() {
+        Random random = new Random(42);
+        int[] cipher = new int[1000];
+        for (int m : new int[] { 1, 2, 5, 63, 64, 65, 130 }) {
+            for (int trial = 0; trial < 20; trial += 1) {
+                for (int i = 0; i < cipher.length; i += 1) {
+                    cipher[i] = random.nextInt(4);
+                }
+                int[] crib = new int[m];
+                for (int k = 0; k < m; k += 1) {
+                    crib[k] = random.nextInt(UPPER.size());
+                }
+                CribScanner scanner = new CribScanner(UPPER, crib);
+                int n = random.nextInt(cipher.length + 1);
+                int owned = random.nextInt(n + 1);
+                long[] fast = new long[17], slow = new long[17];
+                assertEquals(scanner.scanNaive(cipher, n, owned, slow),
+                             scanner.scan(cipher, n, owned, fast));
+                assertArrayEquals(slow, fast);
+            }
+        }
+    }
+
+    @Test
+    public void testFileEncoding() throws Exception {
+        CribScanner scanner =
+            new CribScanner(UPPER, CribScanner.letters(UPPER, "B C"));
+        File file = File.createTempFile("cipher", ".txt");
+        try {
+            Files.write(file.toPath(), "AB\u3000C\u2003DE\n"
+                        .getBytes(StandardCharsets.UTF_8));
+            assertEquals(3, scanner.scanFile(file, 2, false, null));
+            byte[][] bad = {
+                { 'A', 'B', (byte) 0xf7, (byte) 0xbf, (byte) 0xbf,
+                  (byte) 0xbf, 'C' },
+                { 'A', (byte) 0xed, (byte) 0xa0, (byte) 0x80, 'C' },
+                { 'A', 'B', (byte) 0xe3, (byte) 0x80 },
+                { (byte) 0x80, 'A', 'B', 'C' },
+            };
+            for (byte[] text : bad) {
+                Files.write(file.toPath(), text);
+                try {
+                    scanner.scanFile(file, 2, false, null);
+                    fail("accepted malformed UTF-8");
+                } catch (EnigmaException excp) {
+                    assertEquals("malformed UTF-8 in ciphertext",
+                                 excp.getMessage());
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
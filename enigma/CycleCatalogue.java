@@ -0,0 +1,501 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** A catalogue of the cycle structures of an Enigma's doubled-indicator
+ *  permutations, from which the rotor order and starting position of a
+ *  day's messages can be found by looking up their indicators.
+ *
+ *  When every message of a day begins with its K-letter message key
+ *  (K being the number of moving rotors) typed twice at the same
+ *  starting position, letters i and i+K of each indicator are the images
+ *  of one key letter under the machine's permutations A(i) and A(i+K) at
+ *  steps i and i+K.  Since those are involutions, A(i+K) A(i) takes
+ *  letter i of every indicator to letter i+K, and enough indicators
+ *  determine it.  The plugboard only conjugates the product, so the
+ *  lengths of its cycles depend on the rotors alone.  The catalogue
+ *  holds, for every rotor order and every starting position of the
+ *  moving rotors, a 64-bit hash of the cycle lengths of the K products.
+ *
+ *  A catalogue file is made of big-endian values: a header of ints
+ *  (MAGIC, the alphabet size N, the number of slots, the number of
+ *  moving rotors K, the number of rotor orders, and the number of bits B
+ *  of an entry that identify its setting), the N code points of the
+ *  alphabet, the settings of the non-moving rotors, and each order's
+ *  rotor names as a length followed by UTF-8 bytes padded to a multiple
+ *  of four.  After padding to a multiple of eight come the number of
+ *  entries, as a long, and the entries: longs whose high 64-B bits are
+ *  the hash and whose low B bits are the order's number times N^K plus
+ *  the number of the position, sorted.  The entries are mapped rather
+ *  than read, so a lookup is a binary search.  Usage:
+ *
+ *      java enigma.CycleCatalogue [--threads=N] [--rotors=NAME,...]
+ *                                 [--fixed=SETTINGS] CONFIG CATALOGUE
+ *      java enigma.CycleCatalogue --lookup CATALOGUE INDICATORS
+ *
+ *  The first form writes a catalogue of every rotor order of the
+ *  configuration CONFIG (only those of the named rotors, with --rotors)
+ *  to CATALOGUE, on N threads (default: one per processor), with the
+ *  non-moving rotors other than the reflector at SETTINGS (default: the
+ *  first letter of the alphabet).  The second prints the settings lines
+ *  whose cycle structure matches that of the indicators in the file
+ *  INDICATORS, one indicator per line (settings lines and characters
+ *  outside the alphabet are ignored).
+ *  @author Avik Samanta
+ */
+class CycleCatalogue {
+
+    /** First int of a catalogue file ("ENC1"). */
+    static final int MAGIC = 0x454e4331;
+
+    /** Most entries in a catalogue, so that it can be sorted in an array
+     *  and mapped in one piece. */
+    static final long MAX_ENTRIES = 1L << 28;
+
+    /** Build or consult a catalogue as directed by ARGS. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--lookup --threads=(\\d+) --rotors=(.+) "
+                                + "--fixed=(.+) --=(.+){2}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.CycleCatalogue "
+                            + "[--threads=N] [--rotors=NAMES] "
+                            + "[--fixed=SETTINGS] CONFIG CATALOGUE%n"
+                            + "       java enigma.CycleCatalogue --lookup "
+                            + "CATALOGUE INDICATORS");
+            }
+            List<String> files = options.get("--");
+            if (options.contains("--lookup")) {
+                long start = System.nanoTime();
+                CycleCatalogue catalogue = map(new File(files.get(0)));
+                List<String> found =
+                    catalogue.candidates(indicators(new File(files.get(1))));
+                for (String line : found) {
+                    System.out.println(line);
+                }
+                System.err.printf("%d candidates in %.1f ms%n", found.size(),
+                                  (System.nanoTime() - start) * 1e-6);
+                return;
+            }
+            Machine mach = Main.loadConfig(files.get(0));
+            HashSet<String> allowed = null;
+            if (options.contains("--rotors")) {
+                allowed = new HashSet<>(Arrays.asList(
+                    options.getFirst("--rotors").split(",")));
+            }
+            int threads = options.contains("--threads")
+                ? Integer.parseInt(options.getFirst("--threads"))
+                : Runtime.getRuntime().availableProcessors();
+            long start = System.nanoTime();
+            long count = build(mach, KeySearch.orders(mach, allowed),
+                               options.contains("--fixed")
+                               ? options.getFirst("--fixed") : null,
+                               Math.max(1, threads),
+                               new File(files.get(1)));
+            System.err.printf("%d entries in %.1f s%n", count,
+                              (System.nanoTime() - start) * 1e-9);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /* ***** BUILDING ***** */
+
+    /** Write to FILE a catalogue of MACH with each of the rotor orders
+     *  ORDERS, whose non-moving rotors are at the settings given by the
+     *  letters FIXED (all at 0 if null), computing it on THREADS threads.
+     *  Return the number of entries. */
+    static long build(Machine mach, List<String[]> orders, String fixed,
+                      int threads, File file) {
+        Alphabet alpha = mach.alphabet();
+        int n = alpha.size();
+        int k = mach.numPawls();
+        int[] fixedSettings = new int[mach.numRotors() - 1 - k];
+        if (fixed != null) {
+            int[] letters = fixed.codePoints().toArray();
+            if (letters.length != fixedSettings.length) {
+                throw error("need %d settings of non-moving rotors",
+                            fixedSettings.length);
+            }
+            for (int i = 0; i < letters.length; i += 1) {
+                fixedSettings[i] = alpha.toIndex(letters[i]);
+                if (fixedSettings[i] < 0) {
+                    throw error("bad setting: %s", fixed);
+                }
+            }
+        }
+        if (k == 0 || orders.isEmpty()) {
+            throw error("no moving rotors to catalogue");
+        }
+        long positions = 1;
+        for (int i = 0; i < k; i += 1) {
+            positions *= n;
+            if (positions * orders.size() > MAX_ENTRIES) {
+                throw error("catalogue too large; use fewer rotors");
+            }
+        }
+        long[] entries = new long[(int) (positions * orders.size())];
+        int bits = idBits(entries.length);
+        AtomicInteger next = new AtomicInteger();
+        RuntimeException[] failures = new RuntimeException[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t += 1) {
+            final int which = t;
+            final int size = (int) positions;
+            workers[t] = new Thread(() -> {
+                try {
+                    Machine copy = mach.copy();
+                    copy.setPlugboard(new Permutation("", alpha));
+                    for (int o = next.getAndIncrement(); o < orders.size();
+                         o = next.getAndIncrement()) {
+                        copy.insertRotors(orders.get(o));
+                        catalogue(copy, fixedSettings, entries, o * size,
+                                  size, bits);
+                    }
+                } catch (RuntimeException excp) {
+                    failures[which] = excp;
+                }
+            });
+            workers[t].start();
+        }
+        for (int t = 0; t < threads; t += 1) {
+            try {
+                workers[t].join();
+            } catch (InterruptedException excp) {
+                throw error("interrupted");
+            }
+            if (failures[t] != null) {
+                throw failures[t];
+            }
+        }
+        Arrays.parallelSort(entries);
+        write(file, mach, orders, fixedSettings, bits, entries);
+        return entries.length;
+    }
+
+    /** Store in ENTRIES[BASE .. BASE+COUNT-1] the entries for MACH, whose
+     *  rotors are inserted, at each of the COUNT starting positions of
+     *  its moving rotors, with its non-moving rotors at FIXED, where the
+     *  low BITS bits of an entry identify it. */
+    private static void catalogue(Machine mach, int[] fixed, long[] entries,
+                                  int base, int count, int bits) {
+        int n = mach.alphabet().size();
+        int k = mach.numPawls();
+        int[] positions = new int[mach.numRotors() - 1];
+        System.arraycopy(fixed, 0, positions, 0, fixed.length);
+        int[][] steps = new int[2 * k][n];
+        int[][] products = new int[k][n];
+        int[] scratch = new int[n + 1];
+        for (int p = 0; p < count; p += 1) {
+            for (int i = positions.length - 1, rest = p;
+                 i >= fixed.length; i -= 1) {
+                positions[i] = rest % n;
+                rest /= n;
+            }
+            mach.setPositions(positions);
+            for (int[] step : steps) {
+                mach.tabulate(step);
+            }
+            for (int i = 0; i < k; i += 1) {
+                int[] first = steps[i], second = steps[i + k];
+                for (int c = 0; c < n; c += 1) {
+                    products[i][c] = second[first[c]];
+                }
+            }
+            entries[base + p] =
+                (signature(products, scratch) >>> bits << bits) | (base + p);
+        }
+    }
+
+    /** Write to FILE the catalogue of MACH for rotor orders ORDERS with
+     *  non-moving rotors at FIXED, whose sorted ENTRIES have BITS bits
+     *  of identification. */
+    private static void write(File file, Machine mach, List<String[]> orders,
+                              int[] fixed, int bits, long[] entries) {
+        Alphabet alpha = mach.alphabet();
+        try (DataOutputStream out =
+             new DataOutputStream(new BufferedOutputStream(
+                 new FileOutputStream(file), Main.OUTPUT_BUFFER))) {
+            out.writeInt(MAGIC);
+            out.writeInt(alpha.size());
+            out.writeInt(mach.numRotors());
+            out.writeInt(mach.numPawls());
+            out.writeInt(orders.size());
+            out.writeInt(bits);
+            for (int i = 0; i < alpha.size(); i += 1) {
+                out.writeInt(alpha.toCodePoint(i));
+            }
+            for (int setting : fixed) {
+                out.writeInt(setting);
+            }
+            for (String[] order : orders) {
+                for (String name : order) {
+                    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                    out.write(new byte[padded(bytes.length, 4)
+                                       - bytes.length]);
+                }
+            }
+            out.write(new byte[padded(out.size(), 8) - out.size()]);
+            out.writeLong(entries.length);
+            for (long entry : entries) {
+                out.writeLong(entry);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /* ***** LOOKUP ***** */
+
+    /** Return the catalogue in FILE, mapped read-only. */
+    static CycleCatalogue map(File file) {
+        MappedByteBuffer data;
+        try (FileChannel channel =
+             new RandomAccessFile(file, "r").getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw error("%s is too large", file);
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        } catch (IOException excp) {
+            throw error("could not map %s", file);
+        }
+        try {
+            if (data.getInt(0) != MAGIC) {
+                throw error("%s is not a cycle catalogue", file);
+            }
+            return new CycleCatalogue(data);
+        } catch (IndexOutOfBoundsException excp) {
+            throw error("%s is truncated", file);
+        }
+    }
+
+    /** A catalogue whose contents are DATA. */
+    private CycleCatalogue(MappedByteBuffer data) {
+        int n = data.getInt(4);
+        int slots = data.getInt(8);
+        _moving = data.getInt(12);
+        int numOrders = data.getInt(16);
+        _bits = data.getInt(20);
+        int pos = 24;
+        int[] letters = new int[n];
+        for (int i = 0; i < n; i += 1, pos += 4) {
+            letters[i] = data.getInt(pos);
+        }
+        _alphabet = new Alphabet(new String(letters, 0, n));
+        StringBuilder fixed = new StringBuilder();
+        for (int i = 0; i < slots - 1 - _moving; i += 1, pos += 4) {
+            fixed.appendCodePoint(letters[data.getInt(pos)]);
+        }
+        _fixed = fixed.toString();
+        for (int o = 0; o < numOrders; o += 1) {
+            StringBuilder order = new StringBuilder("*");
+            for (int i = 0; i < slots; i += 1) {
+                byte[] name = new byte[data.getInt(pos)];
+                data.get(pos + 4, name);
+                order.append(' ')
+                    .append(new String(name, StandardCharsets.UTF_8));
+                pos += 4 + padded(name.length, 4);
+            }
+            _orders.add(order.toString());
+        }
+        pos = padded(pos, 8);
+        long count = data.getLong(pos);
+        long positions = 1;
+        for (int i = 0; i < _moving; i += 1) {
+            positions *= n;
+        }
+        _positions = positions;
+        _entries = data.position(pos + 8).slice().asLongBuffer();
+        if (_entries.limit() < count) {
+            throw new IndexOutOfBoundsException();
+        }
+        _entries.limit((int) count);
+    }
+
+    /** Return the settings lines, without plugboard, of the rotor orders
+     *  and starting positions in my catalogue that could have produced
+     *  the doubled INDICATORS, all typed at the same starting position.
+     *  Each indicator must hold twice as many letters of my alphabet as
+     *  there are moving rotors; other characters are ignored. */
+    List<String> candidates(List<String> indicators) {
+        int n = _alphabet.size();
+        int[][] products = new int[_moving][n];
+        for (int[] product : products) {
+            Arrays.fill(product, -1);
+        }
+        for (String indicator : indicators) {
+            int[] letters = indicator.codePoints().map(_alphabet::toIndex)
+                .filter(c -> c >= 0).toArray();
+            if (letters.length != 2 * _moving) {
+                throw error("bad indicator: %s", indicator);
+            }
+            for (int i = 0; i < _moving; i += 1) {
+                int from = letters[i], to = letters[i + _moving];
+                if (products[i][from] >= 0 && products[i][from] != to) {
+                    throw error("inconsistent indicators");
+                }
+                products[i][from] = to;
+            }
+        }
+        int missing = 0;
+        for (int[] product : products) {
+            for (int c : product) {
+                missing += c < 0 ? 1 : 0;
+            }
+        }
+        if (missing > 0) {
+            throw error("indicators leave %d letter pairs unknown; need "
+                        + "more", missing);
+        }
+        long low = signature(products, new int[n + 1]) >>> _bits << _bits;
+        long high = low | ((1L << _bits) - 1);
+        ArrayList<String> result = new ArrayList<>();
+        for (int i = first(low); i < _entries.limit(); i += 1) {
+            long entry = _entries.get(i);
+            if (entry > high) {
+                break;
+            }
+            long id = entry & ((1L << _bits) - 1);
+            result.add(settings((int) (id / _positions), id % _positions));
+        }
+        return result;
+    }
+
+    /** Return the index of the first of my entries that is at least
+     *  KEY, or the number of entries if there is none. */
+    private int first(long key) {
+        int lo = 0, hi = _entries.limit();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_entries.get(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Return the settings line for rotor order ORDER at the starting
+     *  position numbered POSITION. */
+    private String settings(int order, long position) {
+        int[] letters = new int[_moving];
+        for (int i = _moving - 1; i >= 0; i -= 1) {
+            letters[i] = _alphabet.toCodePoint((int) (position
+                                                      % _alphabet.size()));
+            position /= _alphabet.size();
+        }
+        return _orders.get(order) + " " + _fixed
+            + new String(letters, 0, letters.length);
+    }
+
+    /** Return the lines of FILE other than empty lines and settings
+     *  lines. */
+    static List<String> indicators(File file) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+        ArrayList<String> result = new ArrayList<>();
+        for (String line : lines) {
+            if (!line.isBlank() && !line.startsWith("*")) {
+                result.add(line);
+            }
+        }
+        return result;
+    }
+
+    /* ***** UTILITIES ***** */
+
+    /** Return a hash of the lengths of the cycles of each of the
+     *  permutations PRODUCTS (given as arrays of images), in order,
+     *  using SCRATCH, an array one longer than they are, for counting. */
+    static long signature(int[][] products, int[] scratch) {
+        long result = 0;
+        for (int[] product : products) {
+            Arrays.fill(scratch, 0);
+            for (int c = 0; c < product.length; c += 1) {
+                if (product[c] >= 0) {
+                    int len = 0;
+                    for (int d = c; product[d] >= 0; len += 1) {
+                        int e = product[d];
+                        product[d] = -1 - e;
+                        d = e;
+                    }
+                    scratch[len] += 1;
+                }
+            }
+            for (int c = 0; c < product.length; c += 1) {
+                product[c] = -1 - product[c];
+            }
+            for (int len = 1; len < scratch.length; len += 1) {
+                if (scratch[len] != 0) {
+                    result = mix(result ^ ((long) len << 32 | scratch[len]));
+                }
+            }
+            result = mix(result ^ -1L);
+        }
+        return result;
+    }
+
+    /** Return a scrambling of X in which every bit depends on every bit
+     *  of X. */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    /** Return the number of low bits needed to number COUNT entries. */
+    private static int idBits(int count) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(count - 1));
+    }
+
+    /** Return N rounded up to a multiple of M, a power of two. */
+    private static int padded(int n, int m) {
+        return (n + m - 1) & -m;
+    }
+
+    /** The alphabet of the machine catalogued. */
+    private final Alphabet _alphabet;
+    /** The number of moving rotors, and so of products per entry. */
+    private final int _moving;
+    /** Number of bits of an entry that identify its setting. */
+    private final int _bits;
+    /** Settings of the non-moving rotors, as letters. */
+    private final String _fixed;
+    /** The beginnings of the settings lines of each rotor order. */
+    private final ArrayList<String> _orders = new ArrayList<>();
+    /** Number of starting positions of the moving rotors. */
+    private final long _positions;
+    /** The entries, sorted. */
+    private final LongBuffer _entries;
+}
@@ -0,0 +1,108 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CycleCatalogue class.
+ *  @author Avik Samanta
+ */
+public class CycleCatalogueTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    /** Return a machine with the naval rotors B, Beta, I, II, and III. */
+    private Machine machine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new FixedRotor("Beta",
+                                  new Permutation(NAVALA.get("Beta"),
+                                                  UPPER)));
+        rotors.add(new MovingRotor("I", new Permutation(NAVALA.get("I"),
+                                                        UPPER), "Q"));
+        rotors.add(new MovingRotor("II", new Permutation(NAVALA.get("II"),
+                                                         UPPER), "E"));
+        rotors.add(new MovingRotor("III",
+                                   new Permutation(NAVALA.get("III"),
+                                                   UPPER), "V"));
+        return new Machine(UPPER, 5, 3, rotors);
+    }
+
+    @Test
+    public void testSignature() {
+        int[][] products = { { 1, 0, 3, 4, 2 } };
+        int[][] same = { { 0, 2, 1, 4, 3 } };
+        int[][] identity = { { 0, 1, 2, 3, 4 } };
+        int[] scratch = new int[6];
+        long sig = CycleCatalogue.signature(products, scratch);
+        assertArrayEquals(new int[] { 1, 0, 3, 4, 2 }, products[0]);
+        assertTrue(sig != CycleCatalogue.signature(same, scratch));
+        assertTrue(sig != CycleCatalogue.signature(identity, scratch));
+        int[][] swapped = { { 2, 3, 0, 1, 4 } };
+        int[][] conjugate = { { 1, 2, 0, 4, 3 } };
+        int[][] cycle23 = { { 3, 2, 4, 0, 1 } };
+        assertEquals(CycleCatalogue.signature(swapped, scratch),
+                     CycleCatalogue.signature(same, scratch));
+        assertEquals(sig, CycleCatalogue.signature(conjugate, scratch));
+        assertEquals(sig, CycleCatalogue.signature(cycle23, scratch));
+    }
+
+    @Test
+    public void testLookup() throws IOException {
+        Machine mach = machine();
+        List<String[]> orders = KeySearch.orders(mach, null);
+        File file = File.createTempFile("cycles", ".cat");
+        try {
+            assertEquals(orders.size() * 26 * 26 * 26,
+                         CycleCatalogue.build(mach, orders, "C", 2, file));
+            String truth = "* B Beta III I II CQMV";
+            mach.insertRotors(new String[] { "B", "Beta", "III", "I",
+                                             "II" });
+            mach.setPlugboard(new Permutation("(AQ) (EX) (HZ) (MT) (PK)",
+                                              UPPER));
+            Random random = new Random(1938);
+            List<String> indicators = new ArrayList<>();
+            for (int m = 0; m < 120; m += 1) {
+                mach.setRotors("CQMV");
+                StringBuilder key = new StringBuilder();
+                for (int i = 0; i < 3; i += 1) {
+                    key.append((char) ('A' + random.nextInt(26)));
+                }
+                indicators.add(mach.convert(key.toString() + key));
+            }
+            List<String> found =
+                CycleCatalogue.map(file).candidates(indicators);
+            assertTrue(found.contains(truth));
+            assertTrue(found.size() < 100);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testTooFewIndicators() throws IOException {
+        Machine mach = machine();
+        File file = File.createTempFile("cycles", ".cat");
+        try {
+            List<String[]> orders = new ArrayList<>();
+            orders.add(new String[] { "B", "Beta", "I", "II", "III" });
+            CycleCatalogue.build(mach, orders, null, 1, file);
+            CycleCatalogue.map(file).candidates(List.of("ABCDEF"));
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** A stage of a reactive pipeline that converts a stream of UTF-8 bytes
+ *  in the format of Main's input into the bytes Main would print for it.
+ *  Chunks may split lines, and even characters, anywhere: settings lines
+ *  are gathered until complete and then applied to the machine, and
+ *  message letters are grouped in fives across chunk boundaries.
+ *
+ *  Backpressure is preserved end to end.  I request one chunk from
+ *  upstream only when my subscriber has outstanding demand and all the
+ *  output from the previous chunk has been delivered, so the output I
+ *  hold at any time is that of at most one input chunk.  Output buffers
+ *  come from a small pool; a subscriber that is finished with a buffer
+ *  may hand it back with release, and otherwise it is simply collected.
+ *
+ *  I accept one subscriber.  Errors in the input (bad settings lines,
+ *  letters outside the alphabet, malformed UTF-8), and any other
+ *  exception raised while converting, cancel the upstream subscription
+ *  and are passed on with onError after any output that precedes them;
+ *  onNext itself never throws.
+ *  @author Avik Samanta
+ */
+class EncryptionProcessor
+    implements Flow.Processor<ByteBuffer, ByteBuffer> {
+
+    /** Capacity of my output buffers. */
+    static final int BUFFER_SIZE = 1 << 13;
+
+    /** A processor that converts with MACH, which is configured by the
+     *  settings lines of the input. */
+    EncryptionProcessor(Machine mach) {
+        _machine = mach;
+        _alphabet = mach.alphabet();
+        _settingsParser = new Main(mach, null, null);
+    }
+
+    /* ***** UPSTREAM ***** */
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (_upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        _upstream = subscription;
+        drain();
+    }
+
+    @Override
+    public void onNext(ByteBuffer chunk) {
+        if (_terminated) {
+            return;
+        }
+        try {
+            while (chunk.hasRemaining()) {
+                accept(chunk.get());
+            }
+            ship();
+        } catch (RuntimeException excp) {
+            ship();
+            _upstream.cancel();
+            terminate(excp);
+        }
+        _requested = false;
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable err) {
+        if (!_terminated) {
+            ship();
+            terminate(err);
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        if (_terminated) {
+            return;
+        }
+        try {
+            if (_state == SETTINGS) {
+                endSettings();
+            } else if (_state == MESSAGE) {
+                if (_decoder.partial()) {
+                    throw error("malformed UTF-8 in message");
+                }
+                put('\n');
+            }
+            ship();
+            terminate(null);
+        } catch (RuntimeException excp) {
+            ship();
+            terminate(excp);
+        }
+    }
+
+    /* ***** DOWNSTREAM ***** */
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        if (_downstream != null) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException(
+                                   "already subscribed"));
+            return;
+        }
+        _downstream = subscriber;
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    if (_upstream != null) {
+                        _upstream.cancel();
+                    }
+                    terminate(new IllegalArgumentException(
+                                  "non-positive request"));
+                } else {
+                    _demand.getAndAccumulate(n, (a, b) -> a + b < 0
+                                             ? Long.MAX_VALUE : a + b);
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                _cancelled = true;
+                if (_upstream != null) {
+                    _upstream.cancel();
+                }
+                _ready.clear();
+            }
+        });
+        drain();
+    }
+
+    /** Return BUFFER, which I delivered, to my pool for reuse.  The
+     *  caller must not use it afterwards. */
+    void release(ByteBuffer buffer) {
+        if (buffer.capacity() == BUFFER_SIZE && _pooled.get() < POOL_SIZE) {
+            _pooled.incrementAndGet();
+            _pool.add(buffer.clear());
+        }
+    }
+
+    /** Return the number of output buffers waiting for demand. */
+    int queued() {
+        return _ready.size();
+    }
+
+    /** Deliver ready buffers while there is demand, ask upstream for more
+     *  input when all output has been delivered, and pass on termination
+     *  once nothing remains to deliver.  Calls that arrive while another
+     *  thread is draining are folded into its loop. */
+    private void drain() {
+        if (_wip.getAndIncrement() != 0) {
+            return;
+        }
+        do {
+            Flow.Subscriber<? super ByteBuffer> down = _downstream;
+            if (down != null && !_cancelled) {
+                ByteBuffer buffer;
+                while (_demand.get() > 0 && (buffer = _ready.poll()) != null) {
+                    _demand.decrementAndGet();
+                    down.onNext(buffer);
+                }
+                if (_terminated && _ready.isEmpty() && !_signalled) {
+                    _signalled = true;
+                    if (_error == null) {
+                        down.onComplete();
+                    } else {
+                        down.onError(_error);
+                    }
+                } else if (!_terminated && !_requested && _ready.isEmpty()
+                           && _demand.get() > 0 && _upstream != null) {
+                    _requested = true;
+                    _upstream.request(1);
+                }
+            }
+        } while (_wip.decrementAndGet() != 0);
+    }
+
+    /** Record that my input has ended, with ERR if it ended in error. */
+    private void terminate(Throwable err) {
+        if (!_terminated) {
+            _error = err;
+            _terminated = true;
+        }
+        drain();
+    }
+
+    /* ***** CONVERSION ***** */
+
+    /** Process the input byte B. */
+    private void accept(byte b) {
+        switch (_state) {
+        case LINE_START:
+            if (_blank && b != '\n') {
+                put('\n');
+                _blank = false;
+            }
+            if (_line == 1 || b == '*') {
+                _state = SETTINGS;
+                _settings.reset();
+                if (b == '\n') {
+                    endSettings();
+                } else {
+                    _settings.add(b);
+                }
+            } else if (b == '\n') {
+                if (_blank) {
+                    put('\n');
+                }
+                _blank = true;
+                _line += 1;
+            } else {
+                _state = MESSAGE;
+                _count = 0;
+                message(b);
+            }
+            break;
+        case SETTINGS:
+            if (b == '\n') {
+                endSettings();
+            } else {
+                _settings.add(b);
+            }
+            break;
+        default:
+            message(b);
+            break;
+        }
+    }
+
+    /** Apply the settings line gathered so far. */
+    private void endSettings() {
+        _settingsParser.setUp(_machine, _settings.toString());
+        _state = LINE_START;
+        _line += 1;
+    }
+
+    /** Process B, a byte of a message line. */
+    private void message(byte b) {
+        int u = b & 0xff;
+        if (u == '\n' && !_decoder.partial()) {
+            put('\n');
+            _state = LINE_START;
+            _line += 1;
+            return;
+        }
+        int c = _decoder.next(u);
+        if (c == Utf8.MALFORMED) {
+            throw error("malformed UTF-8 in message");
+        } else if (c >= 0) {
+            letter(c);
+        }
+    }
+
+    /** Convert code point C of a message line and add the result to my
+     *  output, unless C is whitespace. */
+    private void letter(int c) {
+        if (Character.isWhitespace(c)) {
+            return;
+        }
+        int index = _alphabet.toIndex(c);
+        if (index < 0) {
+            throw error("character '%s' not in alphabet",
+                        new String(Character.toChars(c)));
+        }
+        if (_count == MessageLexer.GROUP) {
+            put(' ');
+            _count = 0;
+        }
+        int out = _alphabet.toCodePoint(_machine.convert(index));
+        int n = Utf8.encode(out, _encoded, 0);
+        for (int k = 0; k < n; k += 1) {
+            put(_encoded[k]);
+        }
+        _count += 1;
+    }
+
+    /** Add the byte B to my output. */
+    private void put(int b) {
+        if (_out == null) {
+            _out = _pool.poll();
+            if (_out == null) {
+                _out = ByteBuffer.allocate(BUFFER_SIZE);
+            } else {
+                _pooled.decrementAndGet();
+            }
+        }
+        _out.put((byte) b);
+        if (!_out.hasRemaining()) {
+            ship();
+        }
+    }
+
+    /** Queue the output gathered so far for delivery. */
+    private void ship() {
+        if (_out != null && _out.position() > 0) {
+            _ready.add(_out.flip());
+            _out = null;
+        }
+    }
+
+    /** A growable array of bytes. */
+    private static class Bytes {
+
+        /** Append B. */
+        void add(byte b) {
+            if (_size == _data.length) {
+                _data = Arrays.copyOf(_data, 2 * _size);
+            }
+            _data[_size] = b;
+            _size += 1;
+        }
+
+        /** Empty me. */
+        void reset() {
+            _size = 0;
+        }
+
+        @Override
+        public String toString() {
+            return new String(_data, 0, _size, StandardCharsets.UTF_8);
+        }
+
+        /** My contents are _data[0 .. _size-1]. */
+        private byte[] _data = new byte[64];
+        /** Number of bytes in me. */
+        private int _size;
+    }
+
+    /** Values of _state: at the start of a line, in a settings line, and
+     *  in a message line. */
+    private static final int LINE_START = 0, SETTINGS = 1, MESSAGE = 2;
+    /** Most buffers kept in the pool. */
+    private static final int POOL_SIZE = 16;
+
+    /** The machine doing the conversion. */
+    private final Machine _machine;
+    /** Its alphabet. */
+    private final Alphabet _alphabet;
+    /** Used for its parser of settings lines. */
+    private final Main _settingsParser;
+
+    /** Where I am in the current line. */
+    private int _state = LINE_START;
+    /** Number of the current input line, starting at 1. */
+    private int _line = 1;
+    /** True iff the last line was blank and has not yet been printed;
+     *  Main drops a blank line at the very end of its input. */
+    private boolean _blank;
+    /** The settings line being gathered. */
+    private final Bytes _settings = new Bytes();
+    /** Decodes message lines. */
+    private final Utf8.Decoder _decoder = new Utf8.Decoder();
+    /** Scratch space for the encoding of one output letter. */
+    private final byte[] _encoded = new byte[Utf8.MAX_WIDTH];
+    /** Number of letters in the last group of the current line. */
+    private int _count;
+    /** The buffer now being filled, or null. */
+    private ByteBuffer _out;
+
+    /** Buffers awaiting delivery. */
+    private final ConcurrentLinkedQueue<ByteBuffer> _ready =
+        new ConcurrentLinkedQueue<>();
+    /** Buffers available for reuse, and how many there are. */
+    private final ConcurrentLinkedQueue<ByteBuffer> _pool =
+        new ConcurrentLinkedQueue<>();
+    /** Number of buffers in _pool. */
+    private final AtomicInteger _pooled = new AtomicInteger();
+    /** Buffers requested by my subscriber and not yet delivered. */
+    private final AtomicLong _demand = new AtomicLong();
+    /** Number of drain calls in progress or pending. */
+    private final AtomicInteger _wip = new AtomicInteger();
+
+    /** My source. */
+    private volatile Flow.Subscription _upstream;
+    /** My subscriber. */
+    private volatile Flow.Subscriber<? super ByteBuffer> _downstream;
+    /** True iff a chunk has been requested and has not yet arrived. */
+    private volatile boolean _requested;
+    /** True iff my input has ended, normally or not. */
+    private volatile boolean _terminated;
+    /** The error that ended my input, or null. */
+    private volatile Throwable _error;
+    /** True iff termination has been passed on. */
+    private boolean _signalled;
+    /** True iff my subscriber has cancelled. */
+    private volatile boolean _cancelled;
+}
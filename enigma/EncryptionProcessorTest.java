@@ -0,0 +1,287 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EncryptionProcessor class.
+ *  @author Avik Samanta
+ */
+public class EncryptionProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Input exercising settings lines, blank lines, and grouping. */
+    private static final String INPUT =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+        + "FROM his shoulder Hiawatha\n".toUpperCase()
+        + "Took the camera of rosewood\n".toUpperCase()
+        + "\n"
+        + "* B Beta I II III AAAA\n"
+        + "HELLO WORLD\n"
+        + "\n\n";
+
+    /** Return an unset machine with the rotors B, Beta, I, II, III, and
+     *  IV. */
+    private Machine machine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new FixedRotor("Beta",
+                                  new Permutation(NAVALA.get("Beta"),
+                                                  UPPER)));
+        String[] names = { "I", "II", "III", "IV" };
+        String[] notches = { "Q", "E", "V", "J" };
+        for (int i = 0; i < names.length; i += 1) {
+            rotors.add(new MovingRotor(names[i],
+                                       new Permutation(NAVALA.get(names[i]),
+                                                       UPPER),
+                                       notches[i]));
+        }
+        return new Machine(UPPER, 5, 3, rotors);
+    }
+
+    /** Return Main's output for INPUT. */
+    private String expected(String input) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Main(machine(),
+                 new LineReader(new ByteArrayInputStream(
+                                    input.getBytes(StandardCharsets.UTF_8))),
+                 new PrintStream(out, false, StandardCharsets.UTF_8))
+            .process();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /** A publisher that delivers INPUT synchronously, in chunks of
+     *  SIZE bytes, as they are requested. */
+    private static class ChunkPublisher
+        implements Flow.Publisher<ByteBuffer> {
+
+        /** A publisher of INPUT in chunks of SIZE bytes. */
+        ChunkPublisher(String input, int size) {
+            this(input.getBytes(StandardCharsets.UTF_8), size);
+        }
+
+        /** A publisher of the bytes INPUT in chunks of SIZE bytes. */
+        ChunkPublisher(byte[] input, int size) {
+            _bytes = input;
+            _size = size;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> sub) {
+            sub.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    _demand += n;
+                    if (_emitting) {
+                        return;
+                    }
+                    _emitting = true;
+                    while (_demand > 0 && _pos < _bytes.length
+                           && !_cancelled) {
+                        int len = Math.min(_size, _bytes.length - _pos);
+                        _demand -= 1;
+                        _pos += len;
+                        sub.onNext(ByteBuffer.wrap(_bytes, _pos - len, len));
+                    }
+                    if (_pos == _bytes.length && !_cancelled && !_ended) {
+                        _ended = true;
+                        sub.onComplete();
+                    }
+                    _emitting = false;
+                }
+
+                @Override
+                public void cancel() {
+                    _cancelled = true;
+                }
+            });
+        }
+
+        /** The bytes to publish. */
+        private final byte[] _bytes;
+        /** Chunk size and next byte to send. */
+        private int _size, _pos;
+        /** Outstanding demand. */
+        private long _demand;
+        /** State of the publication. */
+        private boolean _emitting, _cancelled, _ended;
+    }
+
+    /** A subscriber that collects what it receives, requesting one buffer
+     *  at a time and waiting DELAY milliseconds over each. */
+    private static class Collector implements Flow.Subscriber<ByteBuffer> {
+
+        /** A collector that takes DELAY milliseconds per buffer, and
+         *  returns buffers to PROCESSOR. */
+        Collector(EncryptionProcessor processor, long delay) {
+            _processor = processor;
+            _delay = delay;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            _subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(ByteBuffer buffer) {
+            _out.write(buffer.array(),
+                       buffer.arrayOffset() + buffer.position(),
+                       buffer.remaining());
+            _received.addAndGet(buffer.remaining());
+            _maxQueued = Math.max(_maxQueued, _processor.queued());
+            _processor.release(buffer);
+            if (_delay > 0) {
+                try {
+                    Thread.sleep(_delay);
+                } catch (InterruptedException excp) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            _subscription.request(1);
+        }
+
+        @Override
+        public synchronized void onError(Throwable err) {
+            _error = err;
+            _done = true;
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void onComplete() {
+            _done = true;
+            notifyAll();
+        }
+
+        /** Wait for the end of the stream. */
+        synchronized void await() throws InterruptedException {
+            while (!_done) {
+                wait();
+            }
+        }
+
+        /** The processor feeding me. */
+        private final EncryptionProcessor _processor;
+        /** Milliseconds per buffer. */
+        private final long _delay;
+        /** My subscription. */
+        private Flow.Subscription _subscription;
+        /** What I received. */
+        private final ByteArrayOutputStream _out = new ByteArrayOutputStream();
+        /** Number of bytes received. */
+        private final AtomicLong _received = new AtomicLong();
+        /** Largest number of buffers seen waiting in the processor. */
+        private volatile int _maxQueued;
+        /** The error received, if any. */
+        private Throwable _error;
+        /** True once the stream has ended. */
+        private boolean _done;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesMain() throws InterruptedException {
+        String expected = expected(INPUT);
+        for (int size : new int[] { 1, 2, 3, 7, 64, 4096 }) {
+            EncryptionProcessor proc = new EncryptionProcessor(machine());
+            Collector sink = new Collector(proc, 0);
+            proc.subscribe(sink);
+            new ChunkPublisher(INPUT, size).subscribe(proc);
+            sink.await();
+            assertNull(sink._error);
+            assertEquals("chunk size " + size, expected,
+                         sink._out.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testError() throws InterruptedException {
+        String input = "* B Beta III IV I AXLE\nHELLO\nHELLO, WORLD\nHI\n";
+        EncryptionProcessor proc = new EncryptionProcessor(machine());
+        Collector sink = new Collector(proc, 0);
+        proc.subscribe(sink);
+        new ChunkPublisher(input, 3).subscribe(proc);
+        sink.await();
+        assertTrue(sink._error instanceof EnigmaException);
+        assertTrue(sink._out.toString(StandardCharsets.UTF_8)
+                   .startsWith(expected("* B Beta III IV I AXLE\nHELLO\n")));
+    }
+
+    @Test
+    public void testMalformed() throws InterruptedException {
+        String good = "* B Beta III IV I AXLE\nHELLO\n";
+        byte[] prefix = (good + "AB").getBytes(StandardCharsets.UTF_8);
+        byte[] input = Arrays.copyOf(prefix, prefix.length + 6);
+        byte[] bad = { (byte) 0xf7, (byte) 0xbf, (byte) 0xbf, (byte) 0xbf,
+                       'C', '\n' };
+        System.arraycopy(bad, 0, input, prefix.length, bad.length);
+        for (int size : new int[] { 1, 2, 5, 4096 }) {
+            EncryptionProcessor proc = new EncryptionProcessor(machine());
+            Collector sink = new Collector(proc, 0);
+            proc.subscribe(sink);
+            new ChunkPublisher(input, size).subscribe(proc);
+            sink.await();
+            assertTrue(sink._error instanceof EnigmaException);
+            assertEquals("malformed UTF-8 in message",
+                         sink._error.getMessage());
+            assertTrue(sink._out.toString(StandardCharsets.UTF_8)
+                       .startsWith(expected(good)));
+        }
+    }
+
+    @Test
+    public void testSlowSubscriber() throws InterruptedException {
+        int chunks = 300;
+        String line = "ABCDEFGHIJ".repeat(100) + "\n";
+        int perLine = 1000 + 199 + 1;
+        EncryptionProcessor proc = new EncryptionProcessor(machine());
+        Collector sink = new Collector(proc, 2);
+        proc.subscribe(sink);
+        long maxLag = 0;
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (SubmissionPublisher<ByteBuffer> publisher =
+             new SubmissionPublisher<>(executor, 4)) {
+            publisher.subscribe(proc);
+            ByteBuffer settings = ByteBuffer.wrap(
+                "* B Beta III IV I AXLE\n".getBytes(StandardCharsets.UTF_8));
+            publisher.submit(settings);
+            for (int i = 0; i < chunks; i += 1) {
+                publisher.submit(ByteBuffer.wrap(
+                    line.getBytes(StandardCharsets.UTF_8)));
+                maxLag = Math.max(maxLag,
+                                  i + 1 - sink._received.get() / perLine);
+            }
+        }
+        sink.await();
+        executor.shutdown();
+        assertNull(sink._error);
+        assertEquals((long) chunks * perLine, sink._received.get());
+        assertTrue("publisher ran " + maxLag + " chunks ahead", maxLag <= 8);
+        assertTrue(sink._maxQueued <= 1);
+    }
+}
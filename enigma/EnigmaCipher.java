@@ -0,0 +1,260 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/** A running Enigma machine that converts UTF-8 text held in
+ *  ByteBuffers.  Each character of the key's alphabet is converted, and
+ *  advances the machine; every other character, including whitespace,
+ *  is copied unchanged.  There is no grouping into fives.
+ *
+ *  A cipher is made by EnigmaKey.newCipher and must be confined to one
+ *  thread at a time.  Conversion allocates nothing.  As with
+ *  javax.crypto.Cipher, update converts as much as it can and may be
+ *  called repeatedly on the pieces of a stream, which may split
+ *  characters anywhere, and doFinal converts the rest of the stream and
+ *  returns the cipher to the start of its key for the next one.
+ *  @author Avik Samanta
+ */
+public final class EnigmaCipher {
+
+    /** A cipher for KEY that converts with MACH. */
+    EnigmaCipher(EnigmaKey key, Machine mach) {
+        _key = key;
+        _machine = mach;
+        _alphabet = mach.alphabet();
+        int width = 1;
+        for (int i = 0; i < _alphabet.size(); i += 1) {
+            width = Math.max(width, Utf8.width(_alphabet.toCodePoint(i)));
+        }
+        _width = width;
+    }
+
+    /** Return my key. */
+    public EnigmaKey key() {
+        return _key;
+    }
+
+    /** Convert the characters remaining in IN into OUT, stopping early
+     *  when IN ends in the middle of a character or OUT has no room for
+     *  the next character (for a letter, room for the widest letter of
+     *  the alphabet).  The positions of both buffers are advanced
+     *  past what was consumed and produced.  Return the number of bytes
+     *  added to OUT.  Throws IllegalArgumentException if IN is not valid
+     *  UTF-8. */
+    public int update(ByteBuffer in, ByteBuffer out) {
+        int start = out.position();
+        int p = in.position(), limit = in.limit();
+        while (p < limit) {
+            int c = Utf8.decode(in, p, limit);
+            if (c == Utf8.TRUNCATED) {
+                break;
+            } else if (c == Utf8.MALFORMED) {
+                throw new IllegalArgumentException("malformed UTF-8");
+            }
+            int n = Utf8.width(c);
+            int index = _alphabet.toIndex(c);
+            if (out.remaining() < (index < 0 ? n : _width)) {
+                break;
+            }
+            Utf8.put(index < 0 ? c
+                     : _alphabet.toCodePoint(_machine.convert(index)), out);
+            p += n;
+        }
+        in.position(p);
+        return out.position() - start;
+    }
+
+    /** Convert all of IN into OUT, as for update, and then return to the
+     *  start of my key.  Return the number of bytes added to OUT.  Throws
+     *  IllegalArgumentException if IN ends in the middle of a character
+     *  and BufferOverflowException if OUT is too small; in either case, I
+     *  am left as update would leave me. */
+    public int doFinal(ByteBuffer in, ByteBuffer out) {
+        int result = update(in, out);
+        if (in.hasRemaining()) {
+            if (partial(in)) {
+                throw new IllegalArgumentException("truncated UTF-8");
+            }
+            throw new BufferOverflowException();
+        }
+        reset();
+        return result;
+    }
+
+    /** Return to the start of my key, abandoning any conversion in
+     *  progress. */
+    public void reset() {
+        _key.reset(_machine);
+    }
+
+    /** Return a channel whose contents are those of SOURCE, converted by
+     *  me.  Reaching the end of SOURCE completes the conversion as for
+     *  doFinal. */
+    public ReadableByteChannel readable(ReadableByteChannel source) {
+        return new Reader(source);
+    }
+
+    /** Return a channel that converts what is written to it with me and
+     *  writes the result to SINK, which should be blocking.  Closing it
+     *  completes the conversion as for doFinal and closes SINK. */
+    public WritableByteChannel writable(WritableByteChannel sink) {
+        return new Writer(sink);
+    }
+
+    /** Return true iff the bytes remaining in IN begin a character that
+     *  does not end within them. */
+    private static boolean partial(ByteBuffer in) {
+        return Utf8.decode(in, in.position(), in.limit()) == Utf8.TRUNCATED;
+    }
+
+    /** Size of the input buffers of my channels.  Their output buffers
+     *  are four times as large, which is room enough for any conversion
+     *  of a full input buffer. */
+    private static final int CHANNEL_BUFFER = 1 << 13;
+
+    /** A channel reading the conversion of another. */
+    private class Reader implements ReadableByteChannel {
+
+        /** A channel reading the conversion of SOURCE. */
+        Reader(ReadableByteChannel source) {
+            _source = source;
+            _in = ByteBuffer.allocate(CHANNEL_BUFFER);
+            _out = ByteBuffer.allocate(4 * CHANNEL_BUFFER);
+            _out.flip();
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            while (!_out.hasRemaining()) {
+                if (_done) {
+                    return -1;
+                }
+                int n = _source.read(_in);
+                _in.flip();
+                _out.clear();
+                try {
+                    if (n < 0) {
+                        doFinal(_in, _out);
+                        _done = true;
+                    } else {
+                        update(_in, _out);
+                    }
+                } catch (IllegalArgumentException excp) {
+                    throw new IOException(excp.getMessage());
+                }
+                _in.compact();
+                _out.flip();
+                if (n == 0 && !_out.hasRemaining()) {
+                    return 0;
+                }
+            }
+            int k = Math.min(dst.remaining(), _out.remaining());
+            dst.put(dst.position(), _out, _out.position(), k);
+            dst.position(dst.position() + k);
+            _out.position(_out.position() + k);
+            return k;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return _source.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            _source.close();
+        }
+
+        /** Where I read from. */
+        private final ReadableByteChannel _source;
+        /** Bytes read and not yet converted (filling), and converted
+         *  bytes not yet returned (draining). */
+        private final ByteBuffer _in, _out;
+        /** True once _source has ended. */
+        private boolean _done;
+    }
+
+    /** A channel writing the conversion of its input to another. */
+    private class Writer implements WritableByteChannel {
+
+        /** A channel writing to SINK. */
+        Writer(WritableByteChannel sink) {
+            _sink = sink;
+            _in = ByteBuffer.allocate(CHANNEL_BUFFER);
+            _out = ByteBuffer.allocate(4 * CHANNEL_BUFFER);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int result = 0;
+            while (src.hasRemaining()) {
+                int k = Math.min(src.remaining(), _in.remaining());
+                _in.put(_in.position(), src, src.position(), k);
+                _in.position(_in.position() + k);
+                src.position(src.position() + k);
+                result += k;
+                _in.flip();
+                try {
+                    update(_in, _out);
+                } catch (IllegalArgumentException excp) {
+                    throw new IOException(excp.getMessage());
+                }
+                _in.compact();
+                drain();
+            }
+            return result;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return _open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!_open) {
+                return;
+            }
+            _open = false;
+            _in.flip();
+            try {
+                doFinal(_in, _out);
+            } catch (IllegalArgumentException excp) {
+                throw new IOException(excp.getMessage());
+            } finally {
+                drain();
+                _sink.close();
+            }
+        }
+
+        /** Write all of _out to _sink. */
+        private void drain() throws IOException {
+            _out.flip();
+            while (_out.hasRemaining()) {
+                _sink.write(_out);
+            }
+            _out.clear();
+        }
+
+        /** Where I write to. */
+        private final WritableByteChannel _sink;
+        /** Bytes written to me and not yet converted, and converted bytes
+         *  not yet written to _sink. */
+        private final ByteBuffer _in, _out;
+        /** False once I am closed. */
+        private boolean _open = true;
+    }
+
+    /** My key. */
+    private final EnigmaKey _key;
+    /** The machine doing the conversion. */
+    private final Machine _machine;
+    /** Its alphabet. */
+    private final Alphabet _alphabet;
+    /** Length in UTF-8 of the widest letter of _alphabet. */
+    private final int _width;
+}
@@ -0,0 +1,171 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for EnigmaKey and EnigmaCipher.
+ *  @author Avik Samanta
+ */
+public class EnigmaCipherTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A configuration with the rotors of the Hiawatha example. */
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n"
+        + " 5 3\n"
+        + " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " IV MJ     (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+        + " Beta N    (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "           (RX) (SZ) (TV)\n";
+
+    /** The Hiawatha settings. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Return the UTF-8 encoding of S. */
+    private static ByteBuffer bytes(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Return the contents of BUF, flipped, as a String. */
+    private static String text(ByteBuffer buf) {
+        buf.flip();
+        return StandardCharsets.UTF_8.decode(buf).toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testDoFinal() {
+        EnigmaCipher cipher = EnigmaKey.parse(CONFIG, SETTINGS).newCipher();
+        ByteBuffer out = ByteBuffer.allocate(100);
+        cipher.doFinal(bytes("FROM HIS SHOULDER, HIAWATHA"), out);
+        assertEquals("QVPQ SOK OILPUBKJ, ZPISFXDW", text(out));
+        out.clear();
+        cipher.doFinal(bytes("QVPQ SOK OILPUBKJ, ZPISFXDW"), out);
+        assertEquals("FROM HIS SHOULDER, HIAWATHA", text(out));
+    }
+
+    @Test
+    public void testSplitInput() {
+        EnigmaKey key = EnigmaKey.parse(CONFIG, SETTINGS);
+        EnigmaCipher cipher = key.newCipher();
+        byte[] in = "FROM HIS\u00e9 SHOULDER HIAWATHA"
+            .getBytes(StandardCharsets.UTF_8);
+        ByteBuffer out = ByteBuffer.allocate(100);
+        ByteBuffer piece = ByteBuffer.allocate(3);
+        for (int i = 0; i < in.length; ) {
+            while (piece.hasRemaining() && i < in.length) {
+                piece.put(in[i]);
+                i += 1;
+            }
+            piece.flip();
+            if (i == in.length) {
+                cipher.doFinal(piece, out);
+            } else {
+                cipher.update(piece, out);
+            }
+            piece.compact();
+        }
+        assertEquals("QVPQ SOK\u00e9 OILPUBKJ ZPISFXDW", text(out));
+    }
+
+    @Test
+    public void testShortOutput() {
+        EnigmaCipher cipher = EnigmaKey.parse(CONFIG, SETTINGS).newCipher();
+        ByteBuffer in = bytes("FROM HIS");
+        ByteBuffer out = ByteBuffer.allocate(3);
+        assertEquals(3, cipher.update(in, out));
+        assertEquals(3, in.position());
+        try {
+            cipher.doFinal(in, out);
+            fail("expected overflow");
+        } catch (java.nio.BufferOverflowException excp) {
+            assertEquals(3, in.position());
+        }
+        ByteBuffer rest = ByteBuffer.allocate(10);
+        cipher.doFinal(in, rest);
+        assertEquals("QVP", text(out));
+        assertEquals("Q SOK", text(rest));
+    }
+
+    @Test
+    public void testChannels() throws IOException {
+        EnigmaKey key = EnigmaKey.parse(CONFIG, SETTINGS);
+        String plain = "FROM HIS SHOULDER HIAWATHA\n".repeat(1000);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        try (WritableByteChannel w =
+             key.newCipher().writable(Channels.newChannel(sink))) {
+            w.write(bytes(plain));
+        }
+        byte[] cipherText = sink.toByteArray();
+        assertEquals(plain.length(), cipherText.length);
+        ReadableByteChannel r =
+            key.newCipher().readable(Channels.newChannel(
+                                         new ByteArrayInputStream(cipherText)));
+        ByteBuffer buf = ByteBuffer.allocate(2 * plain.length());
+        while (r.read(buf) >= 0) {
+            continue;
+        }
+        assertEquals(plain, text(buf));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadSettings() {
+        EnigmaKey.parse(CONFIG, "* B Beta III IV IV AXLE");
+    }
+
+    @Test
+    public void testMalformed() {
+        EnigmaCipher cipher = EnigmaKey.parse(CONFIG, SETTINGS).newCipher();
+        int[][] bad = {
+            { 0xf7, 0xbf, 0xbf, 0xbf }, { 0xed, 0xa0, 0x80 },
+            { 0xc1, 0x81 }, { 0xe0, 0x80, 0x80 }, { 0xf4, 0x90, 0x80, 0x80 },
+        };
+        for (int[] seq : bad) {
+            ByteBuffer in = ByteBuffer.allocate(seq.length + 2);
+            in.put((byte) 'F').put((byte) 'R');
+            for (int b : seq) {
+                in.put((byte) b);
+            }
+            in.flip();
+            ByteBuffer out = ByteBuffer.allocate(20);
+            try {
+                cipher.update(in, out);
+                fail("accepted malformed UTF-8");
+            } catch (IllegalArgumentException excp) {
+                assertEquals("malformed UTF-8", excp.getMessage());
+            }
+            cipher.reset();
+        }
+        ByteBuffer in = ByteBuffer.wrap(new byte[] { 'F', (byte) 0xf0,
+                                                     (byte) 0x9f });
+        ByteBuffer out = ByteBuffer.allocate(20);
+        assertEquals(1, cipher.update(in, out));
+        assertEquals(1, in.position());
+        try {
+            cipher.doFinal(in, out);
+            fail("accepted truncated UTF-8");
+        } catch (IllegalArgumentException excp) {
+            assertEquals("truncated UTF-8", excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package enigma;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Scanner;
+
+/** An Enigma key: a machine configuration together with the settings
+ *  line that chooses its rotors, their initial positions, and its
+ *  plugboard.  A key is immutable and may be shared freely among
+ *  threads; each thread makes its own EnigmaCipher from it with
+ *  newCipher, which is cheap.
+ *
+ *  This class and EnigmaCipher are the package's interface for programs
+ *  that embed it.  Errors in configurations or settings lines are
+ *  reported with IllegalArgumentException.
+ *  @author Avik Samanta
+ */
+public final class EnigmaKey {
+
+    /** Return the key given by the configuration file or compiled
+     *  inventory CONFIG and the settings line SETTINGS, which have the
+     *  formats Main accepts. */
+    public static EnigmaKey load(Path config, String settings) {
+        try {
+            return new EnigmaKey(Main.loadConfig(config.toString()),
+                                 settings);
+        } catch (EnigmaException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the key given by the text of a configuration file, CONFIG,
+     *  and the settings line SETTINGS. */
+    public static EnigmaKey parse(String config, String settings) {
+        try {
+            return new EnigmaKey(Main.readConfig(new Scanner(config)),
+                                 settings);
+        } catch (EnigmaException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The key that sets up the unset machine MACH according to
+     *  SETTINGS.  MACH's rotors become mine, and it must not be used
+     *  elsewhere. */
+    private EnigmaKey(Machine mach, String settings) {
+        new Main(mach, null, null).setUp(mach, settings);
+        _alphabet = mach.alphabet();
+        _pawls = mach.numPawls();
+        _settings = SettingsCache.normalize(settings);
+        _rotors = new String[mach.numRotors()];
+        _slotRotors = new Rotor[mach.numRotors()];
+        _positions = new int[mach.numRotors() - 1];
+        for (int i = 0; i < _rotors.length; i += 1) {
+            _slotRotors[i] = mach.getRotor(i);
+            _slotRotors[i].compile();
+            _rotors[i] = _slotRotors[i].name();
+            if (i > 0) {
+                _positions[i - 1] = mach.getRotor(i).setting();
+            }
+        }
+        _plugboard = mach.plugboard();
+    }
+
+    /** Return a new cipher, at the start of my key.  Its machine holds
+     *  copies of just the rotors in my slots, sharing their compiled
+     *  tables, rather than of the whole inventory. */
+    public EnigmaCipher newCipher() {
+        ArrayList<Rotor> rotors = new ArrayList<>(_slotRotors.length);
+        for (Rotor r : _slotRotors) {
+            rotors.add(r.copy());
+        }
+        Machine mach = new Machine(_alphabet, _slotRotors.length, _pawls,
+                                   rotors);
+        mach.insertRotors(_rotors);
+        mach.setPlugboard(_plugboard);
+        EnigmaCipher result = new EnigmaCipher(this, mach);
+        result.reset();
+        return result;
+    }
+
+    /** Return my settings line, normalized. */
+    public String settings() {
+        return _settings;
+    }
+
+    @Override
+    public String toString() {
+        return "EnigmaKey[" + _settings + "]";
+    }
+
+    /** Put MACH, a machine made by newCipher, at the start of my key. */
+    void reset(Machine mach) {
+        mach.setPositions(_positions);
+    }
+
+    /** The alphabet of my machine. */
+    private final Alphabet _alphabet;
+    /** The number of pawls of my machine. */
+    private final int _pawls;
+    /** My settings line. */
+    private final String _settings;
+    /** Names of the rotors in each slot. */
+    private final String[] _rotors;
+    /** The rotors in my slots, with their tables compiled, which
+     *  ciphers copy. */
+    private final Rotor[] _slotRotors;
+    /** Initial positions of the rotors in slots 1 and up. */
+    private final int[] _positions;
+    /** The plugboard, shared by all ciphers. */
+    private final Permutation _plugboard;
+}
@@ -13,4 +13,9 @@ class FixedRotor extends Rotor {
         super(name, perm);
     }
 
+    @Override
+    Rotor copy() {
+        return shareTables(new FixedRotor(name(), _permutation));
+    }
+
 }
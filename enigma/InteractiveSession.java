@@ -0,0 +1,284 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import java.util.Arrays;
+
+/** An operator's session at the keyboard: each letter is converted and
+ *  shown as soon as it is typed, rather than when its line is complete.
+ *  Input has the same form as Main's.  A line beginning with '*' is a
+ *  settings line, applied when it ends; other lines are messages, whose
+ *  letters are converted one at a time by Machine.convert(int) and
+ *  written in groups of five, the blank before a group being written
+ *  with its first letter, and each line of input ends a line of output.
+ *  Whitespace within messages is ignored.  Errors, such as a bad
+ *  settings line or a character outside the alphabet, are reported on
+ *  the standard error and the offending line or character is skipped,
+ *  so that a typing slip does not end the session.
+ *
+ *  Input is read from the standard input's file descriptor as raw bytes,
+ *  bypassing Java's buffering, and the output is flushed once for each
+ *  read, so every keystroke produces output at once.  When the standard
+ *  input is a terminal, it is put into non-canonical mode without echo
+ *  (with stty) for the session, so that keystrokes arrive without
+ *  waiting for the end of the line; Control-D then ends the session, as
+ *  end of input does otherwise.  At the end, the number of letters and
+ *  the median, 99th percentile, and largest times from the arrival of a
+ *  keystroke to the flushing of its output are reported on the standard
+ *  error.  See Main's --interactive.
+ *  @author Avik Samanta
+ */
+class InteractiveSession {
+
+    /** Character that ends a session in non-canonical mode (Control-D). */
+    static final int END_OF_SESSION = 0x04;
+
+    /** A session converting with MACH, which is not yet set up, reading
+     *  from IN, writing to OUT, and reporting to ERR. */
+    InteractiveSession(Machine mach, InputStream in, OutputStream out,
+                       PrintStream err) {
+        _machine = mach;
+        _alphabet = mach.alphabet();
+        _parser = new Main(mach, null, null);
+        _in = in;
+        _out = out;
+        _err = err;
+    }
+
+    /** A session converting with MACH on the standard input and output,
+     *  with the terminal, if any, in non-canonical mode. */
+    InteractiveSession(Machine mach) {
+        this(mach, new FileInputStream(FileDescriptor.in),
+             new BufferedOutputStream(
+                 new FileOutputStream(FileDescriptor.out),
+                 Main.OUTPUT_BUFFER),
+             System.err);
+        _terminal = System.console() != null;
+    }
+
+    /** Convert keystrokes until the end of input or of the session, and
+     *  then report their latencies. */
+    void run() {
+        String saved = _terminal ? stty("-g") : null;
+        Thread restore = null;
+        if (saved != null) {
+            restore = new Thread(() -> stty(saved));
+            Runtime.getRuntime().addShutdownHook(restore);
+            stty("-icanon -echo min 1");
+        }
+        try {
+            byte[] buf = new byte[READ_SIZE];
+            boolean more = true;
+            while (more) {
+                int n = _in.read(buf);
+                if (n <= 0) {
+                    break;
+                }
+                long arrived = System.nanoTime();
+                int letters = 0;
+                for (int i = 0; i < n && more; i += 1) {
+                    if (_terminal && buf[i] == END_OF_SESSION) {
+                        more = false;
+                    } else {
+                        letters += key(buf[i] & 0xff);
+                    }
+                }
+                _out.flush();
+                long latency = System.nanoTime() - arrived;
+                for (int k = 0; k < letters; k += 1) {
+                    record(latency);
+                }
+            }
+            if (_column > 0) {
+                _out.write(LINE_SEPARATOR);
+            }
+            _out.flush();
+        } catch (IOException excp) {
+            _err.printf("Error: %s%n", excp.getMessage());
+        } finally {
+            if (saved != null) {
+                stty(saved);
+                Runtime.getRuntime().removeShutdownHook(restore);
+            }
+        }
+        _err.println(summary());
+    }
+
+    /** Handle the input byte B, and return the number of letters
+     *  converted as a result (0 or 1). */
+    private int key(int b) throws IOException {
+        boolean lineStart = _lineStart;
+        _lineStart = false;
+        if (_settings != null) {
+            if (b == '\n') {
+                settings();
+                _lineStart = true;
+            } else {
+                _settings.write(b);
+            }
+            return 0;
+        }
+        if (b == '\n') {
+            _out.write(LINE_SEPARATOR);
+            _column = 0;
+            _decoder.reset();
+            _lineStart = true;
+            return 0;
+        }
+        if (lineStart && b == '*') {
+            _settings = new ByteArrayOutputStream();
+            _settings.write(b);
+            return 0;
+        }
+        int c = decode(b);
+        if (c < 0 || Character.isWhitespace(c)) {
+            return 0;
+        }
+        int index = _alphabet.toIndex(c);
+        if (!_ready) {
+            _err.printf("Error: no settings line yet%n");
+            return 0;
+        } else if (index < 0) {
+            _err.printf("Error: %s is not in the alphabet%n",
+                        new String(Character.toChars(c)));
+            return 0;
+        }
+        if (_column > 0 && _column % MessageLexer.GROUP == 0) {
+            _out.write(' ');
+        }
+        writeUtf8(_alphabet.toCodePoint(_machine.convert(index)));
+        _column += 1;
+        return 1;
+    }
+
+    /** Apply the settings line just read, reporting any error. */
+    private void settings() {
+        String line = new String(_settings.toByteArray(),
+                                 StandardCharsets.UTF_8).trim();
+        _settings = null;
+        try {
+            _parser.setUp(_machine, line);
+            _ready = true;
+        } catch (EnigmaException excp) {
+            _ready = false;
+            _err.printf("Error: %s%n", excp.getMessage());
+        }
+    }
+
+    /** Add the byte B to the UTF-8 sequence being decoded, returning the
+     *  code point it completes, or -1 if it completes none.  Malformed
+     *  sequences are reported and dropped; a byte that cuts one short
+     *  is then decoded afresh unless it is itself a continuation
+     *  byte. */
+    private int decode(int b) {
+        boolean partial = _decoder.partial();
+        int c = _decoder.next(b);
+        if (c == Utf8.MALFORMED) {
+            _err.printf("Error: malformed UTF-8 in message%n");
+            return partial && (b & 0xc0) != 0x80 ? decode(b) : -1;
+        }
+        return Math.max(c, -1);
+    }
+
+    /** Write the code point C to my output in UTF-8. */
+    private void writeUtf8(int c) throws IOException {
+        _out.write(_encoded, 0, Utf8.encode(c, _encoded, 0));
+    }
+
+    /** Record NANOS as the latency of a keystroke. */
+    private void record(long nanos) {
+        if (_count == _latencies.length) {
+            _latencies = Arrays.copyOf(_latencies, 2 * _count);
+        }
+        _latencies[_count] = nanos;
+        _count += 1;
+    }
+
+    /** Return the number of letters converted so far. */
+    int letters() {
+        return _count;
+    }
+
+    /** Return a one-line summary of the latencies of my keystrokes. */
+    String summary() {
+        if (_count == 0) {
+            return "0 letters";
+        }
+        long[] sorted = Arrays.copyOf(_latencies, _count);
+        Arrays.sort(sorted);
+        return String.format("%d letters, keystroke to output: p50 %.1f us, "
+                             + "p99 %.1f us, max %.1f us", _count,
+                             sorted[_count / 2] * 1e-3,
+                             sorted[(int) (_count * 0.99)] * 1e-3,
+                             sorted[_count - 1] * 1e-3);
+    }
+
+    /** Run stty with the arguments ARGS on the terminal, returning its
+     *  output, trimmed, or null if it fails. */
+    private static String stty(String args) {
+        ProcessBuilder builder =
+            new ProcessBuilder("sh", "-c", "stty " + args);
+        builder.redirectInput(new File("/dev/tty"));
+        builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+        try {
+            Process proc = builder.start();
+            String result = new String(proc.getInputStream().readAllBytes(),
+                                       StandardCharsets.UTF_8).trim();
+            return proc.waitFor() == 0 ? result : null;
+        } catch (IOException excp) {
+            return null;
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /** Largest number of bytes taken from the input at once. */
+    private static final int READ_SIZE = 4096;
+
+    /** The bytes of a line separator. */
+    private static final byte[] LINE_SEPARATOR =
+        System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    /** The machine converting. */
+    private final Machine _machine;
+    /** Its alphabet. */
+    private final Alphabet _alphabet;
+    /** Parses settings lines. */
+    private final Main _parser;
+    /** Source of keystrokes. */
+    private final InputStream _in;
+    /** Destination of converted letters. */
+    private final OutputStream _out;
+    /** Destination of reports. */
+    private final PrintStream _err;
+    /** True iff the input is a terminal whose mode I change. */
+    private boolean _terminal;
+    /** True iff the last settings line was applied without error. */
+    private boolean _ready;
+    /** True iff the next byte starts a line. */
+    private boolean _lineStart = true;
+    /** The settings line being read, or null if none is. */
+    private ByteArrayOutputStream _settings;
+    /** Letters output on the current line. */
+    private int _column;
+    /** Decodes the message keystrokes. */
+    private final Utf8.Decoder _decoder = new Utf8.Decoder();
+    /** Scratch space for the encoding of one output letter. */
+    private final byte[] _encoded = new byte[Utf8.MAX_WIDTH];
+    /** Latencies of the letters converted, in _latencies[0 .. _count-1],
+     *  in nanoseconds. */
+    private long[] _latencies = new long[1 << 10];
+    /** Number of letters converted. */
+    private int _count;
+}
@@ -0,0 +1,109 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the InteractiveSession class.
+ *  @author Avik Samanta
+ */
+public class InteractiveSessionTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    /** Return the output of a session with the naval rotors given INPUT,
+     *  with its reports going to ERR. */
+    private String session(String input, OutputStream err) {
+        return session(input.getBytes(StandardCharsets.UTF_8), err);
+    }
+
+    /** Return the output of a session with the naval rotors given the
+     *  bytes INPUT, with its reports going to ERR. */
+    private String session(byte[] input, OutputStream err) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new FixedRotor("Beta",
+                                  new Permutation(NAVALA.get("Beta"),
+                                                  UPPER)));
+        String[] moving = { "I", "III", "IV" };
+        String[] notches = { "Q", "V", "J" };
+        for (int i = 0; i < moving.length; i += 1) {
+            rotors.add(new MovingRotor(moving[i],
+                                       new Permutation(
+                                           NAVALA.get(moving[i]), UPPER),
+                                       notches[i]));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InteractiveSession session =
+            new InteractiveSession(new Machine(UPPER, 5, 3, rotors),
+                                   new ByteArrayInputStream(input),
+                                   out, new PrintStream(err));
+        session.run();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testConvert() {
+        String nl = System.lineSeparator();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW" + nl + nl + "QVPQ" + nl,
+                     session("* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) "
+                             + "(BY)\nFROM HIS SHOULDER HIAWATHA\n\n"
+                             + "* B Beta III IV I AXLE (HQ) (EX) (IP) "
+                             + "(TR) (BY)\nFROM", err));
+        assertTrue(err.toString().startsWith("27 letters"));
+    }
+
+    @Test
+    public void testErrorsSkipped() {
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        String nl = System.lineSeparator();
+        assertEquals(nl + "QVPQS" + nl,
+                     session("FROM\n* B Beta III IV I\n"
+                             + "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) "
+                             + "(BY)\nFR0OMH\n", err));
+        String[] reports = err.toString().split("\\R");
+        assertEquals(7, reports.length);
+        assertTrue(reports[0].startsWith("Error: no settings"));
+        assertTrue(reports[3].startsWith("Error: no settings"));
+        assertTrue(reports[4].startsWith("Error: "));
+        assertTrue(reports[5].startsWith("Error: 0 is not"));
+    }
+
+    @Test
+    public void testMalformed() {
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        String nl = System.lineSeparator();
+        byte[] settings = ("* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) "
+                           + "(BY)\nFR").getBytes(StandardCharsets.UTF_8);
+        byte[] rest = {
+            (byte) 0xf7, (byte) 0xbf, (byte) 0xbf, (byte) 0xbf, 'O',
+            (byte) 0xe2, 'M', (byte) 0xed, (byte) 0xa0, (byte) 0x80, 'H',
+            '\n',
+        };
+        byte[] input = Arrays.copyOf(settings, settings.length + rest.length);
+        System.arraycopy(rest, 0, input, settings.length, rest.length);
+        assertEquals("QVPQS" + nl, session(input, err));
+        String[] reports = err.toString().split("\\R");
+        assertEquals(8, reports.length);
+        for (int i = 0; i < 7; i += 1) {
+            assertEquals("Error: malformed UTF-8 in message", reports[i]);
+        }
+        assertTrue(reports[7].startsWith("5 letters"));
+    }
+}
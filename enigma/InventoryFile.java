@@ -0,0 +1,230 @@
+package enigma;
+
+import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
+
+/** A compiled, binary form of a configuration file, meant to be mapped
+ *  read-only into memory.  The rotors' permutation tables are read in
+ *  place from the mapping rather than copied onto the heap, so that any
+ *  number of processes mapping the same file share one copy of it in
+ *  the operating system's page cache.
+ *
+ *  The file is a sequence of big-endian ints: a header (MAGIC, number
+ *  of slots, number of pawls, alphabet size N, number of rotors), the N
+ *  code points of the alphabet, a directory entry per rotor, and then
+ *  for each rotor N ints of forward permutation and N ints of inverse.
+ *  A directory entry holds the rotor's type ('R', 'N', or 'M'), the byte
+ *  offset of its tables, the length of its UTF-8 name, the name padded
+ *  to a multiple of four bytes, the number of notches, and their
+ *  indices.  Mapping a file checks that all of this is consistent and
+ *  that every pair of tables is a permutation and its inverse, so that a
+ *  truncated or corrupt file is rejected before any rotor is used.
+ *
+ *  To compile a configuration file, use
+ *      java enigma.InventoryFile CONFIG OUTPUT
+ *  Main accepts the result anywhere it accepts a configuration file.
+ *  @author Avik Samanta
+ */
+class InventoryFile {
+
+    /** First int of an inventory file ("ENI1"). */
+    static final int MAGIC = 0x454e4931;
+
+    /** Compile the configuration file ARGS[0] into the inventory file
+     *  ARGS[1]. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 2) {
+                throw error("Usage: java enigma.InventoryFile CONFIG OUTPUT");
+            }
+            write(Main.loadConfig(args[0]), new File(args[1]));
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Return true iff FILE starts with MAGIC. */
+    static boolean isInventory(File file) {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            return in.length() >= 4 && in.readInt() == MAGIC;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Write the rotors available to MACH, with its alphabet, number of
+     *  slots, and number of pawls, to FILE. */
+    static void write(Machine mach, File file) {
+        Alphabet alpha = mach.alphabet();
+        int n = alpha.size();
+        ArrayList<Rotor> rotors = new ArrayList<>(mach.inventory());
+        ArrayList<byte[]> names = new ArrayList<>();
+        ArrayList<int[]> notches = new ArrayList<>();
+        int offset = 4 * (5 + n);
+        for (Rotor r : rotors) {
+            byte[] name = r.name().getBytes(StandardCharsets.UTF_8);
+            int[] notch = notchIndices(r, alpha);
+            names.add(name);
+            notches.add(notch);
+            offset += 4 * (4 + notch.length) + padded(name.length);
+        }
+        try (DataOutputStream out =
+             new DataOutputStream(new BufferedOutputStream(
+                 new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(mach.numRotors());
+            out.writeInt(mach.numPawls());
+            out.writeInt(n);
+            out.writeInt(rotors.size());
+            for (int i = 0; i < n; i += 1) {
+                out.writeInt(alpha.toCodePoint(i));
+            }
+            for (int k = 0; k < rotors.size(); k += 1) {
+                Rotor r = rotors.get(k);
+                out.writeInt(r.reflecting() ? 'R' : r.rotates() ? 'M' : 'N');
+                out.writeInt(offset + k * 8 * n);
+                out.writeInt(names.get(k).length);
+                out.write(names.get(k));
+                for (int i = names.get(k).length;
+                     i < padded(names.get(k).length); i += 1) {
+                    out.writeByte(0);
+                }
+                out.writeInt(notches.get(k).length);
+                for (int notch : notches.get(k)) {
+                    out.writeInt(notch);
+                }
+            }
+            for (Rotor r : rotors) {
+                Permutation perm = r.permutation();
+                for (int i = 0; i < n; i += 1) {
+                    out.writeInt(perm.permute(i));
+                }
+                for (int i = 0; i < n; i += 1) {
+                    out.writeInt(perm.invert(i));
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Return a machine whose rotors are views of the inventory file
+     *  FILE, mapped read-only. */
+    static Machine map(File file) {
+        MappedByteBuffer data;
+        try (FileChannel channel =
+             new RandomAccessFile(file, "r").getChannel()) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        } catch (IOException excp) {
+            throw error("could not map %s", file);
+        }
+        try {
+            if (data.getInt(0) != MAGIC) {
+                throw error("%s is not an inventory file", file);
+            }
+            int limit = data.limit() / 4;
+            int numRotors = data.getInt(4);
+            int pawls = data.getInt(8);
+            int n = data.getInt(12);
+            int count = data.getInt(16);
+            check(n > 0 && n <= limit && count >= 0 && count <= limit
+                  && numRotors > 0 && pawls >= 0 && pawls < numRotors,
+                  file);
+            int[] letters = new int[n];
+            for (int i = 0; i < n; i += 1) {
+                letters[i] = data.getInt(20 + 4 * i);
+                check(Character.isValidCodePoint(letters[i]), file);
+            }
+            Alphabet alpha;
+            try {
+                alpha = new Alphabet(new String(letters, 0, n));
+            } catch (EnigmaException excp) {
+                throw error("%s is corrupt", file);
+            }
+            check(alpha.size() == n, file);
+            IntBuffer ints = data.asIntBuffer();
+            ArrayList<Rotor> rotors = new ArrayList<>();
+            int pos = 20 + 4 * n;
+            for (int k = 0; k < count; k += 1) {
+                int type = data.getInt(pos);
+                int offset = data.getInt(pos + 4);
+                check((type == 'R' || type == 'N' || type == 'M')
+                      && offset >= 0 && offset % 4 == 0
+                      && offset / 4 <= limit - 2 * n, file);
+                int tables = offset / 4;
+                int nameLength = data.getInt(pos + 8);
+                check(nameLength > 0 && nameLength <= data.limit(), file);
+                byte[] nameBytes = new byte[nameLength];
+                data.get(pos + 12, nameBytes);
+                String name = new String(nameBytes, StandardCharsets.UTF_8);
+                pos += 12 + padded(nameLength);
+                int numNotches = data.getInt(pos);
+                check(numNotches >= 0 && numNotches <= n, file);
+                StringBuilder notches = new StringBuilder();
+                for (int i = 0; i < numNotches; i += 1) {
+                    int notch = data.getInt(pos + 4 + 4 * i);
+                    check(notch >= 0 && notch < n, file);
+                    notches.appendCodePoint(alpha.toCodePoint(notch));
+                }
+                pos += 4 + 4 * numNotches;
+                IntBuffer forward = ints.slice(tables, n);
+                IntBuffer inverse = ints.slice(tables + n, n);
+                for (int i = 0; i < n; i += 1) {
+                    int c = forward.get(i);
+                    check(c >= 0 && c < n && inverse.get(c) == i, file);
+                }
+                Permutation perm =
+                    new MappedPermutation(alpha, forward, inverse);
+                rotors.add(rotor(type, name, perm, notches.toString()));
+            }
+            return new Machine(alpha, numRotors, pawls, rotors);
+        } catch (IndexOutOfBoundsException excp) {
+            throw error("%s is truncated", file);
+        }
+    }
+
+    /** Report that FILE is corrupt unless OK. */
+    private static void check(boolean ok, File file) {
+        if (!ok) {
+            throw error("%s is corrupt", file);
+        }
+    }
+
+    /** Return a rotor of type TYPE ('R', 'N', or 'M') named NAME, with
+     *  permutation PERM and notches NOTCHES. */
+    private static Rotor rotor(int type, String name, Permutation perm,
+                               String notches) {
+        switch (type) {
+        case 'R':
+            return new Reflector(name, perm);
+        case 'M':
+            return new MovingRotor(name, perm, notches);
+        default:
+            return new FixedRotor(name, perm);
+        }
+    }
+
+    /** Return the indices in ALPHA of the notches of R. */
+    private static int[] notchIndices(Rotor r, Alphabet alpha) {
+        return r.notches().codePoints().map(alpha::toIndex).toArray();
+    }
+
+    /** Return N rounded up to a multiple of 4. */
+    private static int padded(int n) {
+        return (n + 3) & ~3;
+    }
+}
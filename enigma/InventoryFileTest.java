@@ -0,0 +1,142 @@
+package enigma;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the InventoryFile class.
+ *  @author Avik Samanta
+ */
+public class InventoryFileTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a new temporary inventory file, deleted on exit, compiled
+     *  from a configuration with all the naval rotors. */
+    private static File compiled() throws Exception {
+        File inv = File.createTempFile("naval", ".inv");
+        inv.deleteOnExit();
+        InventoryFile.write(Main.loadConfig(navalConfig(5, 3).getPath()),
+                            inv);
+        return inv;
+    }
+
+    /** Check that FILE is refused by InventoryFile.map. */
+    private static void checkRejected(File file) {
+        try {
+            InventoryFile.map(file);
+            fail("accepted a damaged inventory file");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage(),
+                       excp.getMessage().endsWith(" is truncated")
+                       || excp.getMessage().endsWith(" is corrupt"));
+        }
+    }
+
+    /** Overwrite the int at byte offset POS of FILE with VALUE. */
+    private static void poke(File file, long pos, int value)
+        throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(pos);
+            raf.writeInt(value);
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        File conf = navalConfig(5, 3);
+        File inv = compiled();
+        assertFalse(InventoryFile.isInventory(conf));
+        assertTrue(InventoryFile.isInventory(inv));
+        Machine text = Main.loadConfig(conf.getPath());
+        Machine mapped = Main.loadConfig(inv.getPath());
+        assertEquals(text.numRotors(), mapped.numRotors());
+        assertEquals(text.numPawls(), mapped.numPawls());
+        assertEquals(UPPER_STRING, mapped.alphabet().getLetters());
+        HashMap<String, Rotor> byName = new HashMap<>();
+        for (Rotor r : mapped.inventory()) {
+            byName.put(r.name(), r);
+        }
+        assertEquals(text.inventory().size(), byName.size());
+        for (Rotor r : text.inventory()) {
+            Rotor m = byName.get(r.name());
+            assertNotNull(r.name(), m);
+            assertEquals(r.getClass(), m.getClass());
+            assertEquals(r.notches(), m.notches());
+            for (int i = 0; i < UPPER.size(); i += 1) {
+                assertEquals(r.permutation().permute(i),
+                             m.permutation().permute(i));
+                assertEquals(r.permutation().invert(i),
+                             m.permutation().invert(i));
+            }
+        }
+        String[] settings = {
+            "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+            "* C Gamma VI VII VIII ZZZY (AB) (CD)",
+        };
+        for (String line : settings) {
+            String[] out = new String[2];
+            Machine[] machs = { text, mapped };
+            for (int k = 0; k < 2; k += 1) {
+                new Main(machs[k], null, null).setUp(machs[k], line);
+                StringBuilder msg = new StringBuilder();
+                for (int i = 0; i < 2000; i += 1) {
+                    msg.append((char) ('A' + i * 7 % 26));
+                }
+                out[k] = machs[k].convert(msg.toString());
+            }
+            assertEquals(line, out[0], out[1]);
+        }
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        File inv = compiled();
+        long length = inv.length();
+        for (long cut : new long[] { 4, 13, 24, 200, length / 2,
+                                     length - 4, length - 1 }) {
+            try (RandomAccessFile raf = new RandomAccessFile(inv, "rw")) {
+                raf.setLength(cut);
+            }
+            checkRejected(inv);
+            inv = compiled();
+        }
+    }
+
+    @Test
+    public void testCorrupt() throws Exception {
+        File inv = compiled();
+        int n = UPPER.size();
+        long dir = 20 + 4 * n;
+        long[][] damage = {
+            { 12, -1 }, { 12, 1 << 30 }, { 16, -5 }, { 4, 0 },
+            { 20, 'B' }, { dir, 'X' }, { dir + 4, 3 }, { dir + 4, -4 },
+            { dir + 8, -1 }, { dir + 16, n },
+        };
+        for (long[] d : damage) {
+            poke(inv, d[0], (int) d[1]);
+            checkRejected(inv);
+            inv = compiled();
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(inv, "r")) {
+            raf.seek(dir + 4);
+            long tables = raf.readInt();
+            raf.seek(tables + 4);
+            int second = raf.readInt();
+            poke(inv, tables, second);
+        }
+        checkRejected(inv);
+    }
+}
@@ -0,0 +1,607 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Set;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** An exhaustive search for the rotor order, reflector, and starting
+ *  positions that best decrypt a ciphertext, spread over several local
+ *  worker processes.  The plugboard is taken to be empty.
+ *
+ *  A coordinator divides the search space into work units, each one
+ *  rotor order and a fixed-size range of starting positions, and writes
+ *  them as files into a job directory.  Workers claim a unit by renaming
+ *  its file from pending/ to leased/, which only one of them can do,
+ *  and touch the lease while they work on it.  When done, a worker
+ *  writes its best candidates to done/ and drops the lease.  The
+ *  coordinator returns units whose leases have gone stale to pending/,
+ *  and restarts workers that die, so that a crashed worker's units are
+ *  eventually done by someone else.  It gives up on a unit that keeps
+ *  going stale, and on workers that keep dying without finishing any
+ *  unit, rather than restarting them forever.  Usage:
+ *
+ *      java enigma.KeySearch [--workers=N] [--unit=N] [--lease=SECS]
+ *                            [--rotors=NAME,...] [--top=K]
+ *                            [--ngrams=FILE] CONFIG CIPHERTEXT DIR
+ *      java enigma.KeySearch --worker DIR
+ *
+ *  The first form coordinates a search, running N workers (default:
+ *  one per processor), and prints the best K settings lines it finds
+ *  (default 10), best first.  --rotors limits the search to the named
+ *  rotors.  Candidates are scored against the NgramScorer table FILE
+ *  if given, and otherwise by their index of coincidence.  CIPHERTEXT
+ *  may be in the format of Main's input or output; settings lines and
+ *  characters outside the alphabet are ignored.  The second form runs a
+ *  worker for the job in DIR.
+ *  @author Avik Samanta
+ */
+class KeySearch {
+
+    /** Run a coordinator or worker as described by ARGS. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--worker --workers=(\\d+) --unit=(\\d+) "
+                                + "--lease=(\\d+) --rotors=(.+) "
+                                + "--top=(\\d+) --ngrams=(.+) "
+                                + "--=(.*){1,3}", args);
+            List<String> files = options.get("--");
+            if (!options.ok()
+                || files.size() != (options.contains("--worker") ? 1 : 3)) {
+                throw error("Usage: java enigma.KeySearch [--workers=N] "
+                            + "[--unit=N] [--lease=SECS] [--rotors=NAMES] "
+                            + "[--top=K] [--ngrams=FILE] CONFIG "
+                            + "CIPHERTEXT DIR%n"
+                            + "       java enigma.KeySearch --worker DIR");
+            }
+            if (options.contains("--worker")) {
+                new KeySearch(new File(files.get(0))).work();
+                return;
+            }
+            KeySearch search = new KeySearch(new File(files.get(2)));
+            search.create(files.get(0), new File(files.get(1)),
+                          option(options, "--rotors", null),
+                          Integer.parseInt(option(options, "--unit",
+                                                  "20000")),
+                          Integer.parseInt(option(options, "--top", "10")),
+                          option(options, "--ngrams", null));
+            int workers = Runtime.getRuntime().availableProcessors();
+            workers = Integer.parseInt(option(options, "--workers",
+                                              Integer.toString(workers)));
+            long lease =
+                1000L * Integer.parseInt(option(options, "--lease", "30"));
+            for (String line : search.coordinate(workers, lease)) {
+                System.out.println(line);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the value of option KEY in OPTIONS, or DEFLT if absent. */
+    private static String option(CommandArgs options, String key,
+                                 String deflt) {
+        return options.contains(key) ? options.get(key).get(0) : deflt;
+    }
+
+    /** A search whose job directory is DIR. */
+    KeySearch(File dir) {
+        _dir = dir;
+        _pending = new File(dir, "pending");
+        _leased = new File(dir, "leased");
+        _done = new File(dir, "done");
+    }
+
+    /* ***** COORDINATOR ***** */
+
+    /** Set up a new job in my directory for decrypting the file
+     *  CIPHERTEXT with the machine described by the configuration file
+     *  CONFIG, using only the rotors in the comma-separated list ROTORS
+     *  (all of them if null).  Each work unit covers UNIT starting
+     *  positions, and keeps its best TOP candidates, scored with the
+     *  n-gram file NGRAMS, or by index of coincidence if it is null. */
+    void create(String config, File ciphertext, String rotors, int unit,
+                int top, String ngrams) {
+        Machine mach = Main.loadConfig(config);
+        if (ngrams != null
+            && !NgramScorer.map(new File(ngrams)).fits(mach.alphabet())) {
+            throw error("%s is not for this alphabet", ngrams);
+        }
+        Set<String> allowed = null;
+        if (rotors != null) {
+            allowed = new HashSet<>(Arrays.asList(rotors.split(",")));
+        }
+        List<String[]> orders = orders(mach, allowed);
+        if (orders.isEmpty()) {
+            throw error("no rotor orders to search");
+        }
+        long positions = 1;
+        for (int i = 1; i < mach.numRotors(); i += 1) {
+            positions *= mach.alphabet().size();
+        }
+        for (File sub : new File[] { _pending, _leased, _done }) {
+            if (!sub.mkdirs() && !sub.isDirectory()) {
+                throw error("could not create %s", sub);
+            }
+        }
+        int units = 0;
+        for (String[] order : orders) {
+            for (long lo = 0; lo < positions; lo += unit) {
+                long hi = Math.min(positions, lo + unit);
+                write(new File(_pending, String.format("u%07d", units)),
+                      lo + " " + hi + " " + String.join(" ", order));
+                units += 1;
+            }
+        }
+        Properties job = new Properties();
+        job.setProperty("config", new File(config).getAbsolutePath());
+        job.setProperty("ciphertext",
+                        letters(mach.alphabet(), ciphertext));
+        job.setProperty("units", Integer.toString(units));
+        job.setProperty("top", Integer.toString(top));
+        if (ngrams != null) {
+            job.setProperty("ngrams", new File(ngrams).getAbsolutePath());
+        }
+        try (Writer out = Files.newBufferedWriter(new File(_dir, "job")
+                                                  .toPath(),
+                                                  StandardCharsets.UTF_8)) {
+            job.store(out, "enigma key search");
+        } catch (IOException excp) {
+            throw error("could not write job file in %s", _dir);
+        }
+    }
+
+    /** Run NUMWORKERS worker processes on my job until every unit is done,
+     *  reissuing units whose leases are older than LEASE milliseconds and
+     *  replacing workers that fail.  Return the best candidates found, as
+     *  lines of the form "SCORE SETTINGS", best first.  A unit whose
+     *  lease goes stale more than MAX_RETRIES times, or a worker slot
+     *  that fails more than MAX_RESTARTS times while no unit is
+     *  finished, ends the search with an error. */
+    List<String> coordinate(int numWorkers, long lease) {
+        Properties job = job();
+        int units = Integer.parseInt(job.getProperty("units"));
+        int top = Integer.parseInt(job.getProperty("top"));
+        ArrayList<Process> workers = new ArrayList<>();
+        int[] failures = new int[numWorkers];
+        HashMap<String, Integer> retries = new HashMap<>();
+        int restarts = 0, done = 0;
+        try {
+            for (int i = 0; i < numWorkers; i += 1) {
+                workers.add(startWorker());
+            }
+            while (done < units) {
+                for (File held : list(_leased)) {
+                    if (System.currentTimeMillis() - held.lastModified()
+                        > lease) {
+                        File unit = new File(_pending, held.getName());
+                        if (!move(held, unit)) {
+                            continue;
+                        }
+                        _reissued += 1;
+                        if (retries.merge(unit.getName(), 1, Integer::sum)
+                            > MAX_RETRIES) {
+                            throw error("unit %s (%s) failed %d times",
+                                        unit.getName(), read(unit).get(0),
+                                        MAX_RETRIES + 1);
+                        }
+                    }
+                }
+                for (int i = 0; i < workers.size(); i += 1) {
+                    Process w = workers.get(i);
+                    if (!w.isAlive() && w.exitValue() != 0) {
+                        failures[i] += 1;
+                        if (failures[i] > MAX_RESTARTS) {
+                            throw error("worker failed %d times without "
+                                        + "finishing a unit",
+                                        MAX_RESTARTS + 1);
+                        }
+                        restarts += 1;
+                        workers.set(i, startWorker());
+                    }
+                }
+                sleep(POLL);
+                int now = count(_done);
+                if (now > done) {
+                    Arrays.fill(failures, 0);
+                    done = now;
+                }
+            }
+            for (Process w : workers) {
+                w.waitFor();
+            }
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        } finally {
+            for (Process w : workers) {
+                w.destroy();
+            }
+        }
+        if (restarts > 0) {
+            System.err.printf("key search: restarted %d workers%n",
+                              restarts);
+        }
+        PriorityQueue<Candidate> best = new PriorityQueue<>();
+        for (File result : list(_done)) {
+            for (String line : read(result)) {
+                if (!line.isEmpty()) {
+                    keep(best, new Candidate(line), top);
+                }
+            }
+        }
+        ArrayList<Candidate> sorted = new ArrayList<>(best);
+        sorted.sort(null);
+        ArrayList<String> result = new ArrayList<>();
+        for (int i = sorted.size() - 1; i >= 0; i -= 1) {
+            result.add(sorted.get(i).toString());
+        }
+        return result;
+    }
+
+    /** Return the number of stale leases my coordinator has returned to
+     *  pending/. */
+    int reissued() {
+        return _reissued;
+    }
+
+    /** Start and return a worker process for my job. */
+    private Process startWorker() {
+        String java = new File(new File(System.getProperty("java.home"),
+                                        "bin"), "java").getPath();
+        ProcessBuilder builder =
+            new ProcessBuilder(java, "-cp",
+                               System.getProperty("java.class.path"),
+                               KeySearch.class.getName(), "--worker",
+                               _dir.getPath());
+        builder.inheritIO();
+        try {
+            return builder.start();
+        } catch (IOException excp) {
+            throw error("could not start worker: %s", excp.getMessage());
+        }
+    }
+
+    /* ***** WORKER ***** */
+
+    /** Claim and search units of my job until all are done. */
+    void work() {
+        Properties job = job();
+        int units = Integer.parseInt(job.getProperty("units"));
+        int top = Integer.parseInt(job.getProperty("top"));
+        Machine mach = Main.loadConfig(job.getProperty("config"));
+        int[] cipher = job.getProperty("ciphertext").codePoints()
+            .map(mach.alphabet()::toIndex).toArray();
+        mach.setPlugboard(new Permutation("", mach.alphabet()));
+        NgramScorer scorer = null;
+        if (job.getProperty("ngrams") != null) {
+            scorer = NgramScorer.map(new File(job.getProperty("ngrams")));
+        }
+        while (count(_done) < units) {
+            File lease = claim();
+            if (lease == null) {
+                sleep(POLL);
+                continue;
+            }
+            String[] unit = read(lease).get(0).split(" ");
+            PriorityQueue<Candidate> best = new PriorityQueue<>();
+            search(mach, scorer, cipher,
+                   Arrays.copyOfRange(unit, 2, unit.length),
+                   Long.parseLong(unit[0]), Long.parseLong(unit[1]),
+                   lease, best, top);
+            StringBuilder text = new StringBuilder();
+            for (Candidate c : best) {
+                text.append(c).append('\n');
+            }
+            File done = new File(_done, lease.getName());
+            File temp = new File(_done, lease.getName() + ".tmp");
+            write(temp, text.toString());
+            move(temp, done);
+            lease.delete();
+        }
+    }
+
+    /** Claim a pending unit, returning its lease file, or null if there
+     *  are no pending units. */
+    private File claim() {
+        for (File unit : list(_pending)) {
+            File lease = new File(_leased, unit.getName());
+            if (move(unit, lease)) {
+                lease.setLastModified(System.currentTimeMillis());
+                return lease;
+            }
+        }
+        return null;
+    }
+
+    /** Try each starting position with index in [LO, HI) for MACH with
+     *  the rotors named ORDER, decrypting CIPHER and keeping the best TOP
+     *  in BEST as rated by SCORER (by index of coincidence if null).
+     *  Renew LEASE from time to time while doing so. */
+    private void search(Machine mach, NgramScorer scorer, int[] cipher,
+                        String[] order, long lo, long hi, File lease,
+                        PriorityQueue<Candidate> best, int top) {
+        int n = mach.alphabet().size();
+        int[] positions = new int[mach.numRotors() - 1];
+        int[] plain = new int[cipher.length];
+        long renewed = System.currentTimeMillis();
+        mach.insertRotors(order);
+        for (long p = lo; p < hi; p += 1) {
+            long rest = p;
+            for (int i = positions.length - 1; i >= 0; i -= 1) {
+                positions[i] = (int) (rest % n);
+                rest /= n;
+            }
+            mach.setPositions(positions);
+            mach.convert(cipher, plain, cipher.length);
+            double score = scorer == null ? score(plain, n)
+                : scorer.score(plain, plain.length);
+            if (best.size() < top || score > best.peek().score()) {
+                keep(best, new Candidate(score, settings(mach, order,
+                                                         positions)),
+                     top);
+            }
+            if ((p & RENEW_MASK) == 0
+                && System.currentTimeMillis() - renewed > RENEW) {
+                renewed = System.currentTimeMillis();
+                lease.setLastModified(renewed);
+            }
+        }
+    }
+
+    /** Return the score of the decryption TEXT, whose letters are indices
+     *  in an alphabet of size N: its index of coincidence.  Higher scores
+     *  are more like natural language. */
+    static double score(int[] text, int n) {
+        int[] counts = new int[n];
+        for (int c : text) {
+            counts[c] += 1;
+        }
+        long sum = 0;
+        for (int k : counts) {
+            sum += (long) k * (k - 1);
+        }
+        long len = text.length;
+        return len < 2 ? 0 : (double) sum / (len * (len - 1));
+    }
+
+    /** Return the settings line for MACH with rotors ORDER at
+     *  POSITIONS. */
+    private static String settings(Machine mach, String[] order,
+                                   int[] positions) {
+        StringBuilder result = new StringBuilder("*");
+        for (String name : order) {
+            result.append(' ').append(name);
+        }
+        result.append(' ');
+        for (int p : positions) {
+            result.appendCodePoint(mach.alphabet().toCodePoint(p));
+        }
+        return result.toString();
+    }
+
+    /* ***** SEARCH SPACE ***** */
+
+    /** Return every admissible assignment of rotors to the slots of MACH
+     *  using only the rotors named in ALLOWED (or any, if null): a
+     *  reflector, then non-moving rotors, then moving rotors, with no
+     *  rotor used twice. */
+    static List<String[]> orders(Machine mach, Set<String> allowed) {
+        ArrayList<Rotor> reflectors = new ArrayList<>(),
+            fixed = new ArrayList<>(), moving = new ArrayList<>();
+        for (Rotor r : mach.inventory()) {
+            if (allowed != null && !allowed.contains(r.name())) {
+                continue;
+            } else if (r.reflecting()) {
+                reflectors.add(r);
+            } else if (r.rotates()) {
+                moving.add(r);
+            } else {
+                fixed.add(r);
+            }
+        }
+        ArrayList<String[]> result = new ArrayList<>();
+        int numFixed = mach.numRotors() - 1 - mach.numPawls();
+        orders(new String[mach.numRotors()], 0, numFixed, reflectors, fixed,
+               moving, new HashSet<>(), result);
+        return result;
+    }
+
+    /** Add to RESULT every completion of the partial order ORDER, whose
+     *  slots before K are filled with rotors in USED, where slots 1 through
+     *  NUMFIXED take rotors from FIXED, slot 0 from REFLECTORS, and the
+     *  rest from MOVING. */
+    private static void orders(String[] order, int k, int numFixed,
+                               List<Rotor> reflectors, List<Rotor> fixed,
+                               List<Rotor> moving, Set<String> used,
+                               List<String[]> result) {
+        if (k == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        List<Rotor> choices =
+            k == 0 ? reflectors : k <= numFixed ? fixed : moving;
+        for (Rotor r : choices) {
+            if (used.add(r.name())) {
+                order[k] = r.name();
+                orders(order, k + 1, numFixed, reflectors, fixed, moving,
+                       used, result);
+                used.remove(r.name());
+            }
+        }
+    }
+
+    /** Return the letters of ALPHA in the ciphertext file FILE, skipping
+     *  settings lines. */
+    private static String letters(Alphabet alpha, File file) {
+        StringBuilder result = new StringBuilder();
+        for (String line : read(file)) {
+            if (line.startsWith("*")) {
+                continue;
+            }
+            line.codePoints().filter(c -> alpha.toIndex(c) >= 0)
+                .forEach(result::appendCodePoint);
+        }
+        return result.toString();
+    }
+
+    /* ***** UTILITIES ***** */
+
+    /** A scored candidate setting. */
+    private static class Candidate implements Comparable<Candidate> {
+
+        /** A candidate with score SCORE and settings line SETTINGS. */
+        Candidate(double score, String settings) {
+            _score = score;
+            _settings = settings;
+        }
+
+        /** The candidate written as LINE by toString. */
+        Candidate(String line) {
+            int blank = line.indexOf(' ');
+            _score = Double.parseDouble(line.substring(0, blank));
+            _settings = line.substring(blank + 1);
+        }
+
+        /** Return my score. */
+        double score() {
+            return _score;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            int c = Double.compare(_score, other._score);
+            return c != 0 ? c : _settings.compareTo(other._settings);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.6f %s", _score, _settings);
+        }
+
+        /** My score. */
+        private final double _score;
+        /** My settings line. */
+        private final String _settings;
+    }
+
+    /** Add C to BEST, a min-heap, and drop its lowest entry if it then
+     *  has more than TOP entries. */
+    private static void keep(PriorityQueue<Candidate> best, Candidate c,
+                             int top) {
+        best.add(c);
+        if (best.size() > top) {
+            best.poll();
+        }
+    }
+
+    /** Return my job description. */
+    private Properties job() {
+        Properties job = new Properties();
+        try (Reader in = Files.newBufferedReader(new File(_dir, "job")
+                                                 .toPath(),
+                                                 StandardCharsets.UTF_8)) {
+            job.load(in);
+        } catch (IOException excp) {
+            throw error("no job in %s", _dir);
+        }
+        return job;
+    }
+
+    /** Rename FROM to TO atomically, returning false if FROM no longer
+     *  exists. */
+    private static boolean move(File from, File to) {
+        try {
+            Files.move(from.toPath(), to.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (NoSuchFileException excp) {
+            return false;
+        } catch (IOException excp) {
+            throw error("could not rename %s: %s", from, excp.getMessage());
+        }
+    }
+
+    /** Return the completed files in DIR (those not ending in .tmp). */
+    private static File[] list(File dir) {
+        File[] result = dir.listFiles((d, name) -> !name.endsWith(".tmp"));
+        if (result == null) {
+            throw error("could not list %s", dir);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /** Return the number of completed files in DIR. */
+    private static int count(File dir) {
+        return list(dir).length;
+    }
+
+    /** Return the lines of FILE. */
+    private static List<String> read(File file) {
+        try {
+            return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Replace the contents of FILE with TEXT. */
+    private static void write(File file, String text) {
+        try {
+            Path path = file.toPath();
+            Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Wait MILLIS milliseconds. */
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Milliseconds between checks for work or completion. */
+    private static final long POLL = 200;
+    /** Most times a unit is reissued before the search gives up. */
+    static final int MAX_RETRIES = 3;
+    /** Most times a worker slot is restarted in a row without a unit
+     *  being finished before the search gives up. */
+    static final int MAX_RESTARTS = 10;
+    /** Milliseconds between lease renewals. */
+    private static final long RENEW = 2000;
+    /** Leases are renewed only at positions whose low bits under this
+     *  mask are zero, to keep clock reads off the inner loop. */
+    private static final long RENEW_MASK = 0xff;
+
+    /** The job directory. */
+    private final File _dir;
+    /** Subdirectories of _dir for units waiting, claimed, and done. */
+    private final File _pending, _leased, _done;
+    /** Number of stale leases reissued by coordinate. */
+    private int _reissued;
+}
@@ -0,0 +1,114 @@
+package enigma;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySearch class.
+ *  @author Avik Samanta
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /* ***** TESTS ***** */
+
+    /** Plaintext encrypted for the search. */
+    private static final String PLAIN =
+        "ON THE SHORES OF GITCHE GUMEE BY THE SHINING BIG SEA WATER "
+        + "STOOD THE WIGWAM OF NOKOMIS DAUGHTER OF THE MOON NOKOMIS "
+        + "DARK BEHIND IT ROSE THE FOREST ROSE THE BLACK AND GLOOMY "
+        + "PINE TREES ROSE THE FIRS WITH CONES UPON THEM BRIGHT BEFORE "
+        + "IT BEAT THE WATER BEAT THE CLEAR AND SUNNY WATER BEAT THE "
+        + "SHINING BIG SEA WATER";
+
+    /** The key used to encrypt PLAIN. */
+    private static final String KEY = "* B II III I QEV";
+
+    @Test
+    public void testWorkerKilled() throws Exception {
+        File conf = navalConfig(4, 3, "B", "I", "II", "III");
+        Machine mach = Main.loadConfig(conf.getPath());
+        mach.insertRotors(new String[] { "B", "II", "III", "I" });
+        mach.setRotors("QEV");
+        mach.setPlugboard(new Permutation("", UPPER));
+        StringBuilder cipher = new StringBuilder();
+        for (int k = 0; k < 4; k += 1) {
+            cipher.append(mach.convert(PLAIN.replace(" ", ""))).append('\n');
+        }
+        File text = File.createTempFile("cipher", ".txt");
+        File dir = Files.createTempDirectory("keysearch").toFile();
+        try {
+            Files.write(text.toPath(),
+                        cipher.toString().getBytes(StandardCharsets.UTF_8));
+            KeySearch search = new KeySearch(dir);
+            search.create(conf.getPath(), text, null, 2197, 3, null);
+            AtomicReference<List<String>> found = new AtomicReference<>();
+            Thread coordinator = new Thread(() ->
+                found.set(search.coordinate(2, 3000)));
+            coordinator.start();
+            File leased = new File(dir, "leased");
+            while (count(leased) < 2) {
+                Thread.sleep(5);
+            }
+            Optional<ProcessHandle> victim =
+                ProcessHandle.current().children().findFirst();
+            assertTrue(victim.isPresent());
+            victim.get().destroyForcibly();
+            coordinator.join();
+            assertTrue(search.reissued() >= 1);
+            assertEquals(0, count(leased));
+            assertEquals(3, found.get().size());
+            assertTrue(found.get().get(0), found.get().get(0).endsWith(KEY));
+        } finally {
+            text.delete();
+            deleteAll(dir);
+        }
+    }
+
+    @Test
+    public void testPoisonedUnit() throws Exception {
+        File conf = navalConfig(4, 3, "B", "I", "II", "III");
+        File text = File.createTempFile("cipher", ".txt");
+        File dir = Files.createTempDirectory("keysearch").toFile();
+        try {
+            Files.write(text.toPath(),
+                        PLAIN.getBytes(StandardCharsets.UTF_8));
+            KeySearch search = new KeySearch(dir);
+            search.create(conf.getPath(), text, null, 2197, 3, null);
+            Files.write(new File(new File(dir, "pending"), "u0000000")
+                        .toPath(),
+                        "0 10 B X Y Z".getBytes(StandardCharsets.UTF_8));
+            try {
+                search.coordinate(2, 200);
+                fail("search finished with a unit that kills its worker");
+            } catch (EnigmaException excp) {
+                assertEquals("unit u0000000 (0 10 B X Y Z) failed "
+                             + (KeySearch.MAX_RETRIES + 1) + " times",
+                             excp.getMessage());
+            }
+            ProcessHandle.current().children()
+                .forEach(w -> w.onExit().join());
+        } finally {
+            text.delete();
+            deleteAll(dir);
+        }
+    }
+
+    /** Return the number of files in DIR. */
+    private static int count(File dir) {
+        String[] names = dir.list();
+        return names == null ? 0 : names.length;
+    }
+}
@@ -0,0 +1,313 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** A generator of key sheets: files of distinct, random settings lines
+ *  acceptable to Main for a given configuration.  Each line has a
+ *  reflector in the first slot, non-moving and then moving rotors in the
+ *  rest, no rotor twice, one initial position per rotor after the
+ *  reflector, and a plugboard of disjoint letter pairs.  Usage:
+ *
+ *      java enigma.KeySheet [--threads=N] [--pairs=P] [--seed=S]
+ *                           CONFIG COUNT OUTPUT
+ *
+ *  writes COUNT lines for CONFIG to OUTPUT, using N threads (default:
+ *  one per processor), P plugboard pairs per line (default 10, or as many
+ *  as the alphabet allows), and random seed S (default: chosen at random).
+ *  Lines are written in no particular order, and the rate is reported on
+ *  the standard error.
+ *
+ *  Duplicates are suppressed with a shared open-addressing table of
+ *  32-bit fingerprints of 64-bit line hashes, placed by the other half
+ *  of the hash.  A distinct line whose fingerprint matches one already
+ *  in its probe sequence is discarded as a duplicate and drawn again, so
+ *  no line is ever written twice.  The table is sized for a load of at
+ *  most 2/3 when the heap allows, and otherwise as large as the heap
+ *  allows down to a load of 4/5; sheets too large even for that are
+ *  refused before anything is written.  It has one further slot per
+ *  thread, for the line each thread may add after the last is claimed.
+ *  @author Avik Samanta
+ */
+class KeySheet {
+
+    /** Generate a key sheet as directed by ARGS. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--threads=(\\d+) --pairs=(\\d+) "
+                                + "--seed=(-?\\d+) --=(.*){3}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.KeySheet [--threads=N] "
+                            + "[--pairs=P] [--seed=S] CONFIG COUNT OUTPUT");
+            }
+            List<String> files = options.get("--");
+            Machine mach = Main.loadConfig(files.get(0));
+            int threads = Runtime.getRuntime().availableProcessors();
+            if (options.contains("--threads")) {
+                threads = Integer.parseInt(options.getFirst("--threads"));
+            }
+            int pairs = mach.alphabet().size() / 2;
+            if (options.contains("--pairs")) {
+                int asked = Integer.parseInt(options.getFirst("--pairs"));
+                pairs = Math.min(pairs, asked);
+            } else {
+                pairs = Math.min(pairs, DEFAULT_PAIRS);
+            }
+            SplittableRandom random = options.contains("--seed")
+                ? new SplittableRandom(Long.parseLong(options
+                                                      .getFirst("--seed")))
+                : new SplittableRandom();
+            long count = Long.parseLong(files.get(1));
+            KeySheet sheet = new KeySheet(mach, pairs, count, threads);
+            long start = System.nanoTime();
+            try (OutputStream out =
+                 new BufferedOutputStream(new FileOutputStream(files.get(2)),
+                                          Main.OUTPUT_BUFFER)) {
+                sheet.generate(random, out);
+            } catch (IOException excp) {
+                throw error("could not write %s", files.get(2));
+            }
+            double secs = (System.nanoTime() - start) * 1e-9;
+            System.err.printf("key sheet: %d keys in %.2f s, %.0f keys/s, "
+                              + "%d duplicates%n", count, secs,
+                              count / secs, sheet.duplicates());
+            return;
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad number%n");
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A generator of COUNT keys for MACH, with PAIRS plugboard pairs
+     *  each, on THREADS threads. */
+    KeySheet(Machine mach, int pairs, long count, int threads) {
+        if (count < 0 || count > MAX_KEYS) {
+            throw error("can generate at most %d keys", MAX_KEYS);
+        }
+        _alphabet = mach.alphabet();
+        _positions = mach.numRotors() - 1;
+        _pairs = pairs;
+        _orders = KeySearch.orders(mach, null).stream()
+            .map(order -> "* " + String.join(" ", order) + " ")
+            .toArray(String[]::new);
+        if (_orders.length == 0) {
+            throw error("configuration admits no rotor orders");
+        }
+        if (threads < 1 || threads > MAX_THREADS) {
+            throw error("need between 1 and %d threads", MAX_THREADS);
+        }
+        _threads = threads;
+        _remaining = new AtomicLong(count);
+        Runtime runtime = Runtime.getRuntime();
+        long free = runtime.maxMemory()
+            - (runtime.totalMemory() - runtime.freeMemory());
+        long slots = Math.min(count + count / 2 + threads,
+                              free / 4 * 3 / Integer.BYTES);
+        if (slots < count + count / 4 + threads) {
+            throw error("not enough memory to generate %d keys", count);
+        }
+        _seen = new AtomicIntegerArray((int) Math.max(MIN_SLOTS, slots));
+    }
+
+    /** Write my keys to OUT using my threads, each with its own
+     *  generator split from RANDOM. */
+    void generate(SplittableRandom random, OutputStream out)
+        throws IOException {
+        int threads = _threads;
+        Thread[] workers = new Thread[threads];
+        RuntimeException[] failures = new RuntimeException[threads];
+        IOException[] ioFailures = new IOException[threads];
+        for (int k = 0; k < threads; k += 1) {
+            SplittableRandom mine = random.split();
+            final int which = k;
+            workers[k] = new Thread(() -> {
+                try {
+                    work(mine, out);
+                } catch (IOException excp) {
+                    ioFailures[which] = excp;
+                    _remaining.set(0);
+                } catch (RuntimeException excp) {
+                    failures[which] = excp;
+                    _remaining.set(0);
+                }
+            });
+            workers[k].start();
+        }
+        for (int k = 0; k < threads; k += 1) {
+            try {
+                workers[k].join();
+            } catch (InterruptedException excp) {
+                throw error("interrupted");
+            }
+            if (ioFailures[k] != null) {
+                throw ioFailures[k];
+            } else if (failures[k] != null) {
+                throw failures[k];
+            }
+        }
+    }
+
+    /** Return the number of duplicate keys generated and discarded. */
+    long duplicates() {
+        return _duplicates.get();
+    }
+
+    /** Generate keys with RANDOM until none remain to be generated, writing
+     *  them to OUT a chunk at a time. */
+    private void work(SplittableRandom random, OutputStream out)
+        throws IOException {
+        StringBuilder chunk = new StringBuilder(CHUNK + CHUNK / 4);
+        int[] letters = new int[_alphabet.size()];
+        long misses = 0;
+        while (_remaining.get() > 0) {
+            int start = chunk.length();
+            key(random, letters, chunk);
+            if (!add(hash(chunk, start))) {
+                chunk.setLength(start);
+                _duplicates.incrementAndGet();
+                misses += 1;
+                if (misses > MAX_MISSES) {
+                    throw error("configuration has too few distinct keys");
+                }
+                continue;
+            }
+            misses = 0;
+            if (_remaining.getAndDecrement() <= 0) {
+                chunk.setLength(start);
+                break;
+            }
+            chunk.append('\n');
+            if (chunk.length() >= CHUNK) {
+                write(chunk, out);
+            }
+        }
+        write(chunk, out);
+    }
+
+    /** Append a random settings line to LINE, using RANDOM and scratch
+     *  space LETTERS. */
+    private void key(SplittableRandom random, int[] letters,
+                     StringBuilder line) {
+        int n = _alphabet.size();
+        line.append(_orders[random.nextInt(_orders.length)]);
+        for (int i = 0; i < _positions; i += 1) {
+            line.appendCodePoint(_alphabet.toCodePoint(random.nextInt(n)));
+        }
+        for (int i = 0; i < n; i += 1) {
+            letters[i] = i;
+        }
+        for (int i = 0; i < 2 * _pairs; i += 1) {
+            int k = i + random.nextInt(n - i);
+            int t = letters[i];
+            letters[i] = letters[k];
+            letters[k] = t;
+        }
+        for (int i = 0; i < 2 * _pairs; i += 2) {
+            line.append(" (");
+            line.appendCodePoint(_alphabet.toCodePoint(letters[i]));
+            line.appendCodePoint(_alphabet.toCodePoint(letters[i + 1]));
+            line.append(')');
+        }
+    }
+
+    /** Return a 64-bit hash of the characters of TEXT from START on.
+     *  Its low 32 bits are never 0, which marks an empty slot in
+     *  _seen. */
+    private static long hash(CharSequence text, int start) {
+        long h = FNV_BASIS;
+        for (int i = start; i < text.length(); i += 1) {
+            h = (h ^ text.charAt(i)) * FNV_PRIME;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h == 0 ? h | 1 : h;
+    }
+
+    /** Add the fingerprint of the line hash H to _seen, returning false
+     *  iff it was already present.  Each thread adds at most one
+     *  fingerprint after the last key is claimed, so the table, with
+     *  more slots than keys and threads together, never fills; a full
+     *  lap of it without a free slot is an error rather than a hang. */
+    private boolean add(long h) {
+        int fingerprint = (int) h;
+        int slots = _seen.length();
+        int i = (int) (((h >>> 32) * slots) >>> 32);
+        for (int probes = 0; probes < slots;
+             probes += 1, i = i + 1 == slots ? 0 : i + 1) {
+            int old = _seen.get(i);
+            if (old == fingerprint) {
+                return false;
+            } else if (old == 0) {
+                if (_seen.compareAndSet(i, 0, fingerprint)) {
+                    return true;
+                } else if (_seen.get(i) == fingerprint) {
+                    return false;
+                }
+            }
+        }
+        throw error("duplicate table is full");
+    }
+
+    /** Write CHUNK to OUT as UTF-8 and clear it. */
+    private static void write(StringBuilder chunk, OutputStream out)
+        throws IOException {
+        byte[] bytes = chunk.toString().getBytes(StandardCharsets.UTF_8);
+        chunk.setLength(0);
+        synchronized (out) {
+            out.write(bytes);
+        }
+    }
+
+    /** Default number of plugboard pairs. */
+    static final int DEFAULT_PAIRS = 10;
+    /** Most keys in one sheet, so that _seen stays addressable by int. */
+    static final long MAX_KEYS = 1L << 28;
+    /** Most threads, so that _seen stays addressable by int. */
+    static final int MAX_THREADS = 1 << 12;
+    /** Fewest slots in _seen. */
+    private static final int MIN_SLOTS = 16;
+    /** Characters of output a worker collects before writing them. */
+    private static final int CHUNK = 1 << 16;
+    /** Successive duplicates after which a worker concludes that the key
+     *  space is exhausted. */
+    private static final long MAX_MISSES = 1 << 20;
+    /** FNV-1a parameters. */
+    private static final long FNV_BASIS = 0xcbf29ce484222325L,
+        FNV_PRIME = 0x100000001b3L;
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+    /** Number of rotor positions in a key. */
+    private final int _positions;
+    /** Number of plugboard pairs in a key. */
+    private final int _pairs;
+    /** Number of threads generating keys. */
+    private final int _threads;
+    /** The admissible rotor orders, each as the start of a settings line
+     *  up to its positions. */
+    private final String[] _orders;
+    /** Number of keys still to be claimed. */
+    private final AtomicLong _remaining;
+    /** Fingerprints of the keys generated so far, in an open-addressing
+     *  table with at least 5/4 as many slots as keys, plus one per
+     *  thread; 0 marks an empty slot. */
+    private final AtomicIntegerArray _seen;
+    /** Number of duplicates discarded. */
+    private final AtomicLong _duplicates = new AtomicLong();
+}
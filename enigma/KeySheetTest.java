@@ -0,0 +1,73 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.SplittableRandom;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySheet class.
+ *  @author Avik Samanta
+ */
+public class KeySheetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTS ***** */
+
+    /** Return the lines of a sheet of COUNT keys with PAIRS plugboard
+     *  pairs for MACH, generated by THREADS threads. */
+    private String[] sheet(Machine mach, int pairs, long count,
+                           int threads) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new KeySheet(mach, pairs, count, threads)
+            .generate(new SplittableRandom(17), out);
+        String text = out.toString(StandardCharsets.UTF_8);
+        return text.isEmpty() ? new String[0] : text.split("\n");
+    }
+
+    @Test
+    public void testLinesAreDistinctSettings() throws Exception {
+        String conf = navalConfig(5, 3).getPath();
+        Machine mach = Main.loadConfig(conf);
+        String[] lines = sheet(mach, 10, 20000, 4);
+        assertEquals(20000, lines.length);
+        assertEquals(lines.length, new HashSet<>(Arrays.asList(lines)).size());
+        Main main = new Main(mach,
+                             new LineReader(new ByteArrayInputStream(
+                                 new byte[0])),
+                             new PrintStream(new ByteArrayOutputStream()));
+        for (String line : lines) {
+            main.setUp(mach, line);
+            assertEquals(10, line.split("\\(").length - 1);
+        }
+    }
+
+    @Test
+    public void testSmallKeySpace() throws Exception {
+        Machine mach = Main.loadConfig(navalConfig(3, 2, "B", "I", "II")
+                                       .getPath());
+        String[] lines = sheet(mach, 0, 2 * 26 * 26, 3);
+        assertEquals(2 * 26 * 26, new HashSet<>(Arrays.asList(lines)).size());
+    }
+
+    @Test
+    public void testManyThreads() throws Exception {
+        Machine mach = Main.loadConfig(navalConfig(5, 3).getPath());
+        for (int trial = 0; trial < 20; trial += 1) {
+            String[] lines = sheet(mach, 10, 10, 64);
+            assertEquals(10, new HashSet<>(Arrays.asList(lines)).size());
+        }
+        assertEquals(0, sheet(mach, 10, 0, 64).length);
+    }
+}
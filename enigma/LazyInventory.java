@@ -0,0 +1,297 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** The rotors of a large configuration file, read only as they are
+ *  needed.  Opening the file makes one quick pass over it that records,
+ *  for each rotor, its name, type, notches, and where its cycles lie in
+ *  the file (including any continuation lines that begin with '('), and
+ *  keeps only that index.  A rotor's cycles are read from the file and
+ *  parsed into a Permutation only when a machine first asks for it by
+ *  name, and the result is kept and shared by every machine using this
+ *  inventory.  So the time and memory needed to start a job grow with
+ *  the rotors it uses rather than with the size of the file.
+ *
+ *  Main.loadConfig uses this for configuration files of at least
+ *  Main.LAZY_CONFIG_SIZE bytes.  Errors in the description of a rotor
+ *  are reported when the rotor is first used, not when the file is
+ *  opened.  So is a change to the file since it was opened, as shown by
+ *  its size or modification time: replacing or rewriting the file (as
+ *  --watch expects) leaves the rotors already loaded alone, but the
+ *  others can no longer be loaded from it.
+ *  @author Avik Samanta
+ */
+class LazyInventory {
+
+    /** Return an unset machine whose rotors come from a LazyInventory of
+     *  the configuration file FILE. */
+    static Machine open(File file) {
+        LazyInventory inventory = new LazyInventory(file);
+        return new Machine(inventory._alphabet, inventory._numRotors,
+                           inventory._pawls, inventory);
+    }
+
+    /** An inventory of the rotors described in FILE. */
+    private LazyInventory(File file) {
+        _file = file;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            _modified = file.lastModified();
+            _size = channel.size();
+            scan(new Bytes(channel));
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+    }
+
+    /** Return the names of all my rotors, in the order of the file. */
+    List<String> names() {
+        return _names;
+    }
+
+    /** Return a new rotor like the one named NAME, at setting 0, or null
+     *  if there is none. */
+    Rotor rotor(String name) {
+        Rotor proto;
+        synchronized (this) {
+            proto = _loaded.get(name);
+            if (proto == null) {
+                Entry entry = _entries.get(name);
+                if (entry == null) {
+                    return null;
+                }
+                proto = load(name, entry);
+                _loaded.put(name, proto);
+            }
+        }
+        return proto.copy();
+    }
+
+    /** Return the number of rotors parsed so far. */
+    synchronized int loaded() {
+        return _loaded.size();
+    }
+
+    /** Return the rotor NAME described by ENTRY. */
+    private Rotor load(String name, Entry entry) {
+        if (entry._end - entry._start > Integer.MAX_VALUE) {
+            throw error("bad rotor description");
+        }
+        ByteBuffer bytes =
+            ByteBuffer.allocate((int) (entry._end - entry._start));
+        try (RandomAccessFile raf = new RandomAccessFile(_file, "r");
+             FileChannel channel = raf.getChannel()) {
+            if (channel.size() != _size
+                || _file.lastModified() != _modified) {
+                throw error("%s has changed since it was opened", _file);
+            }
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, entry._start + bytes.position())
+                    < 0) {
+                    throw error("%s has changed since it was opened",
+                                _file);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", _file);
+        }
+        String text = new String(bytes.array(), StandardCharsets.UTF_8);
+        StringBuilder cycles = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = text.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                cycles.append(c);
+            }
+        }
+        return Main.makeRotor(name, entry._type, entry._notches,
+                              new Permutation(cycles.toString(),
+                                              _alphabet));
+    }
+
+    /** Read the alphabet and the numbers of slots and pawls from IN, and
+     *  record an Entry for each rotor. */
+    private void scan(Bytes in) throws IOException {
+        Entry last = null;
+        for (int line = 1; in.peek() >= 0; line += 1) {
+            in.skipBlanks();
+            int c = in.peek();
+            if (line == 1) {
+                _alphabet = new Alphabet(in.token());
+            } else if (line == 2) {
+                try {
+                    _numRotors = Integer.parseInt(in.token());
+                    in.skipBlanks();
+                    _pawls = Integer.parseInt(in.token());
+                } catch (NumberFormatException excp) {
+                    throw error("configuration file truncated");
+                }
+            } else if (c == '(') {
+                if (last == null) {
+                    throw error("bad rotor description");
+                }
+                last._end = in.skipLine();
+            } else if (c >= 0 && c != '\n') {
+                String name = in.token();
+                in.skipBlanks();
+                String typeNotches = in.token();
+                if (typeNotches.isEmpty()) {
+                    throw error("bad rotor description");
+                }
+                long start = in.position();
+                last = new Entry(typeNotches.charAt(0),
+                                 typeNotches.substring(1), start,
+                                 in.skipLine());
+                if (_entries.put(name, last) == null) {
+                    _names.add(name);
+                }
+            }
+            in.skipLine();
+            in.next();
+        }
+        if (_alphabet == null) {
+            throw error("configuration file truncated");
+        }
+    }
+
+    /** Return true iff B is an ASCII blank or line-end character other
+     *  than '\n'. */
+    private static boolean isBlank(int b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f'
+            || b == 0x0b;
+    }
+
+    /** The bytes of a file, read in order through a buffer. */
+    private static class Bytes {
+
+        /** The bytes of CHANNEL, from its start. */
+        Bytes(FileChannel channel) {
+            _channel = channel;
+        }
+
+        /** Return the next byte (0 to 255) without reading it, or -1 at
+         *  the end of the file. */
+        int peek() throws IOException {
+            if (_next == _limit) {
+                _base += _limit;
+                _next = _limit = 0;
+                int n = _channel.read(ByteBuffer.wrap(_buffer));
+                if (n <= 0) {
+                    return -1;
+                }
+                _limit = n;
+            }
+            return _buffer[_next] & 0xff;
+        }
+
+        /** Read and return the next byte (0 to 255), or -1 at the end of
+         *  the file. */
+        int next() throws IOException {
+            int b = peek();
+            if (b >= 0) {
+                _next += 1;
+            }
+            return b;
+        }
+
+        /** Return the offset in the file of the next byte. */
+        long position() {
+            return _base + _next;
+        }
+
+        /** Read past any blanks. */
+        void skipBlanks() throws IOException {
+            while (isBlank(peek())) {
+                _next += 1;
+            }
+        }
+
+        /** Read up to the next '\n' or the end of the file, returning
+         *  its offset. */
+        long skipLine() throws IOException {
+            while (peek() >= 0) {
+                while (_next < _limit && _buffer[_next] != '\n') {
+                    _next += 1;
+                }
+                if (_next < _limit) {
+                    break;
+                }
+            }
+            return position();
+        }
+
+        /** Read and return, decoded, the bytes up to the next blank,
+         *  '\n', or the end of the file. */
+        String token() throws IOException {
+            _token.reset();
+            for (int b = peek(); b >= 0 && b != '\n' && !isBlank(b);
+                 b = peek()) {
+                _token.write(b);
+                _next += 1;
+            }
+            return _token.toString(StandardCharsets.UTF_8);
+        }
+
+        /** Where the bytes come from. */
+        private final FileChannel _channel;
+        /** Bytes read from _channel; those in [_next, _limit) are not yet
+         *  consumed. */
+        private final byte[] _buffer = new byte[BUFFER_SIZE];
+        /** Bounds of the unconsumed bytes in _buffer. */
+        private int _next, _limit;
+        /** Offset in the file of _buffer[0]. */
+        private long _base;
+        /** The bytes of the token being read. */
+        private final ByteArrayOutputStream _token =
+            new ByteArrayOutputStream();
+    }
+
+    /** Where a rotor is described. */
+    private static class Entry {
+
+        /** A rotor of type TYPE with NOTCHES, whose cycles are in bytes
+         *  [START, END) of the file, until more are found. */
+        Entry(char type, String notches, long start, long end) {
+            _type = type;
+            _notches = notches;
+            _start = start;
+            _end = end;
+        }
+
+        /** The rotor's type: 'M', 'N', or 'R'. */
+        private final char _type;
+        /** Its notches. */
+        private final String _notches;
+        /** The bytes holding its cycles. */
+        private long _start, _end;
+    }
+
+    /** Bytes of the file read at once while scanning it. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The configuration file. */
+    private final File _file;
+    /** Its size and modification time when I was opened. */
+    private final long _size, _modified;
+    /** The alphabet. */
+    private Alphabet _alphabet;
+    /** Numbers of slots and pawls. */
+    private int _numRotors, _pawls;
+    /** Where each rotor is described, by name. */
+    private final HashMap<String, Entry> _entries = new HashMap<>();
+    /** Names of the rotors, in order. */
+    private final ArrayList<String> _names = new ArrayList<>();
+    /** Rotors parsed so far, by name.  Only ever copied. */
+    private final HashMap<String, Rotor> _loaded = new HashMap<>();
+}
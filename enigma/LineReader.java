@@ -0,0 +1,143 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import java.util.NoSuchElementException;
+
+import static enigma.EnigmaException.*;
+
+/** Reads lines of UTF-8 text from an InputStream like Scanner.nextLine,
+ *  while keeping track of the number of bytes consumed so far, so that a
+ *  reader may later be restarted at a line boundary.  Lines end with
+ *  '\n', and an immediately preceding '\r' is dropped.  A line may be
+ *  read either as a String or as raw bytes, which saves decoding lines
+ *  that are about to be decoded letter by letter anyway.
+ *  @author Avik Samanta
+ */
+class LineReader {
+
+    /** Size of my input buffer. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** A reader for STR, whose first byte is at offset START in its
+     *  file. */
+    LineReader(InputStream str, long start) {
+        _str = str;
+        _position = start;
+        _buffer = new byte[BUFFER_SIZE];
+        _line = new byte[256];
+        _charset = StandardCharsets.UTF_8;
+    }
+
+    /** A reader for STR, starting at offset 0. */
+    LineReader(InputStream str) {
+        this(str, 0);
+    }
+
+    /** Return true iff there is another line to read. */
+    boolean hasNextLine() {
+        return fill();
+    }
+
+    /** Return the next line, without its terminator. */
+    String nextLine() {
+        int len = nextLineBytes();
+        return new String(_line, 0, len, _charset);
+    }
+
+    /** Read the next line, without its terminator, and return its length
+     *  in bytes.  The bytes themselves are in lineBytes() until the next
+     *  line is read. */
+    int nextLineBytes() {
+        if (!fill()) {
+            throw new NoSuchElementException();
+        }
+        int len = 0;
+        while (fill()) {
+            byte b = _buffer[_next];
+            _next += 1;
+            _position += 1;
+            if (b == '\n') {
+                break;
+            }
+            if (len == _line.length) {
+                byte[] bigger = new byte[2 * len];
+                System.arraycopy(_line, 0, bigger, 0, len);
+                _line = bigger;
+            }
+            _line[len] = b;
+            len += 1;
+        }
+        if (len > 0 && _line[len - 1] == '\r') {
+            len -= 1;
+        }
+        _lineLength = len;
+        return len;
+    }
+
+    /** Return the buffer holding the line last read by nextLineBytes. */
+    byte[] lineBytes() {
+        return _line;
+    }
+
+    /** Return the line last read by nextLineBytes as a String. */
+    String lineString() {
+        return new String(_line, 0, _lineLength, _charset);
+    }
+
+    /** Return the offset in the input of the first byte not yet
+     *  returned as part of a line. */
+    long position() {
+        return _position;
+    }
+
+    /** Close my input. */
+    void close() {
+        try {
+            _str.close();
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+    }
+
+    /** Make sure there is at least one unread byte in _buffer, if
+     *  possible.  Return false iff the input is exhausted. */
+    private boolean fill() {
+        try {
+            while (_next == _limit) {
+                if (_eof) {
+                    return false;
+                }
+                _limit = _str.read(_buffer);
+                _next = 0;
+                if (_limit < 0) {
+                    _limit = 0;
+                    _eof = true;
+                }
+            }
+            return true;
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+    }
+
+    /** Source of bytes. */
+    private final InputStream _str;
+    /** Character set used for decoding lines. */
+    private final Charset _charset;
+    /** Bytes read from _str; the unread ones are in [_next, _limit). */
+    private final byte[] _buffer;
+    /** Bounds of the unread bytes in _buffer. */
+    private int _next, _limit;
+    /** Bytes of the line being read. */
+    private byte[] _line;
+    /** Length of the last line read. */
+    private int _lineLength;
+    /** Offset of _buffer[_next] in the input. */
+    private long _position;
+    /** True once _str has reported end of input. */
+    private boolean _eof;
+}
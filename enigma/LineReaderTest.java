@@ -0,0 +1,129 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the LineReader class.
+ *  @author Avik Samanta
+ */
+public class LineReaderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a stream of the UTF-8 encoding of TEXT that delivers at
+     *  most CHUNK bytes per read. */
+    private static InputStream stream(String text, int chunk) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets
+                                                      .UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, chunk));
+            }
+        };
+    }
+
+    /** Return the lines of TEXT as read with nextLine by a LineReader
+     *  whose source delivers CHUNK bytes at a time, checking position()
+     *  after each against the byte offsets of TEXT. */
+    private static List<String> lines(String text, int chunk) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        LineReader reader = new LineReader(stream(text, chunk));
+        ArrayList<String> result = new ArrayList<>();
+        long expected = 0;
+        while (reader.hasNextLine()) {
+            result.add(reader.nextLine());
+            while (expected < bytes.length && bytes[(int) expected] != '\n') {
+                expected += 1;
+            }
+            expected = Math.min(expected + 1, bytes.length);
+            assertEquals(expected, reader.position());
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testLineEnds() {
+        for (int chunk : new int[] { 1, 2, 3, 1 << 20 }) {
+            assertEquals(Arrays.asList("AB", "", "CD", "E"),
+                         lines("AB\n\nCD\nE\n", chunk));
+            assertEquals(Arrays.asList("AB", "", "CD", "E"),
+                         lines("AB\r\n\r\nCD\r\nE", chunk));
+            assertEquals(Arrays.asList("AB\rC", "D\r"),
+                         lines("AB\rC\nD\r\r\n", chunk));
+            assertEquals(Arrays.asList("", ""), lines("\n\n", chunk));
+            assertEquals(Arrays.asList(), lines("", chunk));
+        }
+    }
+
+    @Test
+    public void testMissingFinalNewline() {
+        LineReader reader = new LineReader(stream("* B\nHELLO", 3));
+        assertEquals("* B", reader.nextLine());
+        assertTrue(reader.hasNextLine());
+        assertEquals(5, reader.nextLineBytes());
+        assertEquals("HELLO", reader.lineString());
+        assertFalse(reader.hasNextLine());
+        assertEquals(9, reader.position());
+        try {
+            reader.nextLineBytes();
+            fail("read past end of input");
+        } catch (NoSuchElementException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testLongLines() {
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; longLine.length() < 3 * LineReader.BUFFER_SIZE + 7;
+             i += 1) {
+            longLine.append((char) ('A' + i % 26));
+        }
+        String text = "* SHORT\n" + longLine + "\r\n" + longLine + "\nEND";
+        for (int chunk : new int[] { 1000, 1 << 20 }) {
+            assertEquals(Arrays.asList("* SHORT", longLine.toString(),
+                                       longLine.toString(), "END"),
+                         lines(text, chunk));
+        }
+    }
+
+    @Test
+    public void testUTF8() {
+        String first = "* \u03a9mega \u0394 \u00c4\u00d6";
+        String second = "\u00e9\u4e2d\ud83d\ude00X";
+        String text = first + "\n" + second + "\r\n";
+        for (int chunk : new int[] { 1, 2, 5, 1 << 20 }) {
+            LineReader reader = new LineReader(stream(text, chunk));
+            assertEquals(first.getBytes(StandardCharsets.UTF_8).length,
+                         reader.nextLineBytes());
+            assertEquals(first, reader.lineString());
+            assertEquals(10, reader.nextLineBytes());
+            assertEquals(second, reader.lineString());
+            assertFalse(reader.hasNextLine());
+        }
+    }
+
+    @Test
+    public void testStartOffset() {
+        LineReader reader = new LineReader(stream("AB\nCD\n", 4), 100);
+        assertEquals("AB", reader.nextLine());
+        assertEquals(103, reader.position());
+        assertEquals("CD", reader.nextLine());
+        assertEquals(106, reader.position());
+    }
+}
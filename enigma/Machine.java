@@ -1,5 +1,8 @@
 package enigma;
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import static enigma.EnigmaException.*;
 /** Class that represents a complete enigma machine.
  *  @author Avik Samanta
@@ -13,12 +16,41 @@ class Machine {
             Collection<Rotor> allRotors) {
         _alphabet = alpha;
         _slots = new Rotor[numRotors];
+        _canAdvance = new boolean[numRotors];
         _pawls = pawls;
         _inventory = allRotors;
+        _byName = new HashMap<>();
+        for (Rotor r : allRotors) {
+            _byName.put(r.name(), r);
+        }
         Permutation perm = new Permutation("", _alphabet);
         _plugBoard = new FixedRotor("plugNchug", perm);
     }
 
+    /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
+     *  and 0 <= PAWLS < NUMROTORS pawls, whose available rotors are those
+     *  of LAZY, loaded as they are first used. */
+    Machine(Alphabet alpha, int numRotors, int pawls, LazyInventory lazy) {
+        this(alpha, numRotors, pawls, new ArrayList<Rotor>());
+        _lazy = lazy;
+    }
+
+    /** Return a new machine with my alphabet, number of slots, and
+     *  number of pawls, whose available rotors are copies of mine at
+     *  their 0 settings.  The copies share my rotors' permutations, which
+     *  are not modified after configuration, so the new machine may be
+     *  used in a different thread from me. */
+    Machine copy() {
+        if (_lazy != null) {
+            return new Machine(_alphabet, _slots.length, _pawls, _lazy);
+        }
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (Rotor r : _inventory) {
+            rotors.add(r.copy());
+        }
+        return new Machine(_alphabet, _slots.length, _pawls, rotors);
+    }
+
     /** Return the number of rotor slots I have. */
     int numRotors() {
         return _slots.length;
@@ -46,25 +78,100 @@ class Machine {
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
         for (int i = 0; i < _slots.length; i++) {
-            for (Rotor curr: _inventory) {
-                String temp1 = new String();
-                String temp2 = new String();
-                temp1 = curr.name();
-                temp2 = rotors[i];
-                if (temp2.equals(temp1)) {
-                    _slots[i] = curr;
-                }
+            _slots[i] = rotor(rotors[i]);
+        }
+        resetReflector();
+        _kernelStale = true;
+        _quiet = 0;
+    }
+
+    /** Return my available rotor named NAME, or null if there is
+     *  none. */
+    Rotor rotor(String name) {
+        Rotor result = _byName.get(name);
+        if (result == null && _lazy != null) {
+            result = _lazy.rotor(name);
+            if (result != null) {
+                _byName.put(name, result);
+                _inventory.add(result);
             }
         }
+        return result;
+    }
+
+    /** Return all my available rotors, loading any that are not yet
+     *  loaded. */
+    Collection<Rotor> inventory() {
+        if (_lazy != null) {
+            for (String name : _lazy.names()) {
+                rotor(name);
+            }
+        }
+        return _inventory;
+    }
+
+    /** Return a snapshot of my slots, rotor settings, and plugboard,
+     *  labeled with the settings line LINE. */
+    Settings saveSettings(String line) {
+        int[] positions = new int[_slots.length];
+        for (int i = 0; i < _slots.length; i += 1) {
+            positions[i] = _slots[i].getSetting();
+        }
+        return new Settings(line, _slots, positions, _plugBoard);
+    }
+
+    /** Restore my slots, rotor settings, and plugboard from SETTINGS,
+     *  which must come from a machine with the same rotors. */
+    void restoreSettings(Settings settings) {
+        for (int i = 0; i < _slots.length; i += 1) {
+            _slots[i] = settings.rotor(i);
+            _slots[i].changeSetting(settings.position(i));
+        }
+        resetReflector();
+        _plugBoard = settings.plugboard();
+        _kernelStale = true;
+        _quiet = 0;
+    }
+
+    /** Return the reflector in slot 0 to its 0 setting.  A reflector
+     *  used earlier in another slot may have been given a setting there,
+     *  which would otherwise stay with it. */
+    private void resetReflector() {
+        if (_slots[0] != null && _slots[0].reflecting()) {
+            _slots[0].changeSetting(0);
+        }
     }
 
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
+        int k = 0;
         for (int i = 1; i < numRotors(); i++) {
-            getRotor(i).changeSetting(_alphabet.toInt(setting.charAt(i - 1)));
+            int c = setting.codePointAt(k);
+            getRotor(i).changeSetting(_alphabet.toIndex(c));
+            k += Character.charCount(c);
+        }
+        _quiet = 0;
+    }
+
+    /** Set my rotors to the settings POSITIONS, where POSITIONS[k] is the
+     *  setting of rotor #(k+1) (the reflector is not included). */
+    void setPositions(int[] positions) {
+        for (int i = 1; i < numRotors(); i++) {
+            getRotor(i).changeSetting(positions[i - 1]);
+        }
+        _quiet = 0;
+    }
+
+    /** Return the settings of my rotors other than the reflector, in the
+     *  form setPositions takes. */
+    int[] positions() {
+        int[] result = new int[_slots.length - 1];
+        for (int i = 1; i < _slots.length; i += 1) {
+            result[i - 1] = _slots[i].getSetting();
         }
+        return result;
     }
 
     /** Return the current plugboard's permutation. */
@@ -86,40 +193,34 @@ class Machine {
             System.err.printf("[");
             for (int r = 1; r < numRotors(); r += 1) {
                 System.err.printf("%c",
-                        alphabet().toChar(getRotor(r).setting()));
+                        alphabet().toCodePoint(getRotor(r).setting()));
             }
-            System.err.printf("] %c -> ", alphabet().toChar(c));
-        }
-        c = plugboard().permute(c);
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(c));
+            System.err.printf("] %c -> ", alphabet().toCodePoint(c));
         }
         c = applyRotors(c);
-        c = plugboard().permute(c);
         if (Main.verbose()) {
-            System.err.printf("%c%n", alphabet().toChar(c));
+            System.err.printf("%c%n", alphabet().toCodePoint(c));
         }
         return c;
     }
     /** Returns the Settings. */
     public String returnSettings() {
-        String retVal = "";
+        StringBuilder retVal = new StringBuilder();
         for (int i = 0; i < _slots.length; i++) {
-            retVal += _alphabet.toChar(_slots[i].setting());
+            retVal.appendCodePoint(_alphabet.toCodePoint(_slots[i].setting()));
         }
-        return retVal;
+        return retVal.toString();
     }
     /** Advance all rotors to their next position. */
     public void advanceRotors() {
-        int[] settings = new int[_slots.length];
-        Boolean[] can = new Boolean[_slots.length];
+        if (_quiet > 0) {
+            _quiet -= 1;
+            _slots[_slots.length - 1].advance();
+            return;
+        }
+        boolean[] can = _canAdvance;
         for (int i = 0; i < _slots.length; i++) {
-            int temp = getRotor(i).getSetting();
-            settings[i] = temp;
-            can[i] = false;
-            if (i == _slots.length - 1) {
-                can[i] = true;
-            }
+            can[i] = i == _slots.length - 1;
         }
         for (int i = _slots.length - 1; i > 1; i--) {
             Rotor curr = getRotor(i);
@@ -155,11 +256,75 @@ class Machine {
                 curr.advance();
             }
         }
+        _quiet = quietSteps();
+    }
+
+    /** Return the number of the following calls to advanceRotors that
+     *  will advance only the rightmost rotor, as far as can be told
+     *  cheaply, assuming the settings are not otherwise changed meanwhile.
+     *  Those calls need not check any notches.  The rotors other than the
+     *  rightmost keep their settings until then, so the only thing that
+     *  can end such a run is the rightmost rotor reaching a notch, which
+     *  happens at a known step.  The result is 0 whenever a rotor other
+     *  than the rightmost would be advanced (or told to advance) by the
+     *  next call, or when the rotors are not of the usual kinds; the next
+     *  call then steps in full. */
+    private int quietSteps() {
+        int last = _slots.length - 1;
+        Rotor fast = _slots[last];
+        if (last < 2) {
+            return Integer.MAX_VALUE;
+        }
+        if (fast.getClass() != MovingRotor.class) {
+            return 0;
+        }
+        for (int i = last - 1; i > 1; i -= 1) {
+            Rotor curr = _slots[i];
+            if (curr == fast) {
+                return 0;
+            }
+            if (curr.getClass() != FixedRotor.class
+                && curr.getClass() != Reflector.class) {
+                if (i + 1 != last && _slots[i + 1].atNotch()) {
+                    return 0;
+                }
+                Rotor left = _slots[i - 1];
+                if (curr.atNotch() && left.getClass() != Reflector.class
+                    && left.getClass() != FixedRotor.class) {
+                    return 0;
+                }
+            }
+        }
+        Rotor left = _slots[last - 1];
+        if (left == fast || _slots[0] == fast || _slots[1] == fast) {
+            return 0;
+        }
+        if (left.getClass() == Reflector.class
+            || left.getClass() == FixedRotor.class) {
+            return Integer.MAX_VALUE;
+        }
+        int steps = fast.stepsToNotch();
+        return steps < 0 ? Integer.MAX_VALUE : steps;
     }
 
     /** Return the result of applying the rotors to the character C (as an
      *  index in the range 0..alphabet size - 1). */
     private int applyRotors(int c) {
+        if (_kernelStale) {
+            _kernelStale = false;
+            _kernel = Main.verbose() ? null : Specializer.kernel(_slots);
+        }
+        if (_kernel != null) {
+            try {
+                c = (int) _kernel.invokeExact(_plugBoard.convertForward(c),
+                                              _slots);
+                return _plugBoard.convertBackward(c);
+            } catch (RuntimeException | Error excp) {
+                throw excp;
+            } catch (Throwable excp) {
+                throw error("specialized conversion failed: %s", excp);
+            }
+        }
 
         c = _plugBoard.convertForward(c);
         for (int i = _slots.length - 1; i > 0; i--) {
@@ -179,18 +344,48 @@ class Machine {
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String result = "";
-        char curr;
+        StringBuilder result = new StringBuilder(msg.length());
+        int curr;
         int index;
         int duration = msg.length();
-        for (int i = 0; i < duration; i++) {
-            curr = msg.charAt(i);
-            index = _alphabet.toInt(curr);
+        for (int i = 0; i < duration; i += Character.charCount(curr)) {
+            curr = msg.codePointAt(i);
+            index = _alphabet.toIndex(curr);
             advanceRotors();
             index = applyRotors(index);
-            result += _alphabet.toChar(index);
+            result.appendCodePoint(_alphabet.toCodePoint(index));
+        }
+        return result.toString();
+    }
+
+    /** Convert the LEN letters at MSG[0 .. LEN-1] (as indices in my
+     *  alphabet), storing the results in RESULT[0 .. LEN-1] and updating
+     *  the state of the rotors accordingly.  MSG and RESULT may be the
+     *  same array. */
+    void convert(int[] msg, int[] result, int len) {
+        Rotor fast = _slots[_slots.length - 1];
+        for (int i = 0; i < len; ) {
+            advanceRotors();
+            result[i] = applyRotors(msg[i]);
+            i += 1;
+            int end = i + Math.min(_quiet, len - i);
+            _quiet -= end - i;
+            for (; i < end; i += 1) {
+                fast.advance();
+                result[i] = applyRotors(msg[i]);
+            }
+        }
+    }
+
+    /** Advance my rotors once and store in TABLE[c] the conversion of
+     *  each letter c (as an index) at the resulting position, for every
+     *  c in my alphabet: the permutation that convert would apply to the
+     *  next letter. */
+    void tabulate(int[] table) {
+        advanceRotors();
+        for (int c = 0; c < table.length; c += 1) {
+            table[c] = applyRotors(c);
         }
-        return result;
     }
 
     /** Common alphabet of my rotors. */
@@ -201,6 +396,24 @@ class Machine {
     protected Rotor[] _slots;
     /** Returns the inventory. */
     protected Collection<Rotor> _inventory;
+    /** Where rotors not yet in _inventory come from, or null if
+     *  _inventory has them all. */
+    private LazyInventory _lazy;
+    /** The number of following calls to advanceRotors that need only
+     *  advance the rightmost rotor (see quietSteps), or 0 if the next
+     *  must step in full. */
+    private int _quiet;
+    /** The rotors of _inventory, indexed by name. */
+    private HashMap<String, Rotor> _byName;
     /** Returns the plugboard.*/
     protected FixedRotor _plugBoard;
+    /** Converts letters through my current rotors, between passes through
+     *  the plugboard, or null to use the generic path.  See
+     *  Specializer. */
+    private MethodHandle _kernel;
+    /** True iff my rotors have changed since _kernel was found. */
+    private boolean _kernelStale = true;
+    /** Scratch space for advanceRotors: which slots advance this step.
+     *  Kept between calls so that stepping allocates nothing. */
+    private final boolean[] _canAdvance;
 }
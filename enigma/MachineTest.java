@@ -1,7 +1,11 @@
 package enigma;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Random;
 import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.Timeout;
@@ -137,4 +141,179 @@ public class MachineTest {
         assertEquals("QVPQSOKOILPUBKJZPISFXDW",
                 mach.convert("FROMHISSHOULDERHIAWATHA"));
     }
+    @Test
+    public void testSpecialized() {
+        String[] results = new String[2];
+        for (int k = 0; k < 2; k += 1) {
+            Specializer.setEnabled(k == 1);
+            try {
+                Machine mach = mach1();
+                mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                                  AZ));
+                assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                        mach.convert("FROMHISSHOULDERHIAWATHA"));
+                mach.setRotors(SETTING1);
+                mach.setPlugboard(new Permutation("(AZ)", AZ));
+                results[k] = mach.convert("FROMHISSHOULDERHIAWATHA");
+                mach.insertRotors(new String[] { "Beta", "III", "B", "IV",
+                                                 "I" });
+                mach.setRotors("AXLE");
+                mach.insertRotors(ROTORS1);
+                mach.setRotors(SETTING1);
+                mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                                  AZ));
+                assertEquals("AAXLE", mach.returnSettings());
+                assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                        mach.convert("FROMHISSHOULDERHIAWATHA"));
+            } finally {
+                Specializer.setEnabled(false);
+            }
+        }
+        assertEquals(results[0], results[1]);
+    }
+
+    @Test
+    public void testLazyInventory() throws IOException {
+        HashMap<String, String> nav = TestUtils.NAVALA;
+        File conf = File.createTempFile("lazy", ".conf");
+        try (PrintWriter out = new PrintWriter(conf)) {
+            out.println(TestUtils.UPPER_STRING);
+            out.println(" 5 3");
+            out.println(" B R " + nav.get("B"));
+            out.println(" Beta N " + nav.get("Beta"));
+            out.println(" II MMZ");
+            out.println("    " + nav.get("II"));
+            out.println(" III MV " + nav.get("III"));
+            out.println();
+            out.println(" IV MJ " + nav.get("IV"));
+            out.println(" I MQ " + nav.get("I"));
+        }
+        try {
+            Machine mach = LazyInventory.open(conf);
+            mach.insertRotors(ROTORS1);
+            mach.setRotors(SETTING1);
+            mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                              AZ));
+            assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                    mach.convert("FROMHISSHOULDERHIAWATHA"));
+            assertNull(mach.rotor("V"));
+            assertEquals(6, mach.inventory().size());
+            Permutation ii = mach.rotor("II").permutation();
+            assertEquals('F', ii.permute('W'));
+            assertEquals('Q', ii.permute('Q'));
+        } finally {
+            conf.delete();
+        }
+    }
+
+    @Test
+    public void testLazyInventoryRewritten() throws IOException {
+        HashMap<String, String> nav = TestUtils.NAVALA;
+        File conf = File.createTempFile("lazy", ".conf");
+        try (PrintWriter out = new PrintWriter(conf)) {
+            out.println(TestUtils.UPPER_STRING);
+            out.println(" 5 3");
+            out.println(" B R " + nav.get("B"));
+            out.println(" Beta N " + nav.get("Beta"));
+            out.println(" III MV " + nav.get("III"));
+            out.println(" IV MJ " + nav.get("IV"));
+            out.println(" I MQ " + nav.get("I"));
+            out.println(" II ME " + nav.get("II"));
+        }
+        try {
+            Machine mach = LazyInventory.open(conf);
+            mach.insertRotors(ROTORS1);
+            try (PrintWriter out = new PrintWriter(conf)) {
+                out.println(TestUtils.UPPER_STRING);
+                out.println(" 5 3");
+                out.println(" II MA (AB)");
+            }
+            try {
+                mach.rotor("II");
+                fail("loaded a rotor from a rewritten file");
+            } catch (EnigmaException excp) {
+                assertEquals(conf + " has changed since it was opened",
+                             excp.getMessage());
+            }
+            mach.setRotors(SETTING1);
+            mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                              AZ));
+            assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                    mach.convert("FROMHISSHOULDERHIAWATHA"));
+        } finally {
+            conf.delete();
+        }
+    }
+
+    /** Return a machine with alphabet AZ holding B, Beta, and moving
+     *  rotors with the wirings of I .. V and the given NOTCHES, in that
+     *  order, from the left. */
+    private Machine multiNotch(String... notches) {
+        HashMap<String, String> nav = TestUtils.NAVALA;
+        String[] names = { "I", "II", "III", "IV", "V" };
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(ROTORS.get("B"));
+        rotors.add(ROTORS.get("Beta"));
+        String[] slots = new String[notches.length + 2];
+        slots[0] = "B";
+        slots[1] = "Beta";
+        for (int i = 0; i < notches.length; i += 1) {
+            rotors.add(new MovingRotor(names[i],
+                                       new Permutation(nav.get(names[i]),
+                                                       AZ),
+                                       notches[i]));
+            slots[i + 2] = names[i];
+        }
+        Machine mach = new Machine(AZ, slots.length, notches.length,
+                                   rotors);
+        mach.insertRotors(slots);
+        return mach;
+    }
+
+    @Test
+    public void testQuietStepping() {
+        String[][] notches = {
+            { "Q", "E", "V" }, { "AN", "BO", "CP" },
+            { "ABCDEFGHIJKLM", "Z", "" }, { "", "", "" },
+            { "Q", "E", "V", "J" }, { "Z" },
+        };
+        Random random = new Random(47);
+        for (String[] n : notches) {
+            Machine quick = multiNotch(n);
+            Machine full = multiNotch(n);
+            int[] positions = new int[n.length + 1];
+            for (int k = 0; k < positions.length; k += 1) {
+                positions[k] = random.nextInt(AZ.size());
+            }
+            quick.setPositions(positions);
+            full.setPositions(positions);
+            int[] msg = new int[2000];
+            int[] expected = new int[msg.length];
+            for (int i = 0; i < msg.length; i += 1) {
+                msg[i] = random.nextInt(AZ.size());
+                full.setRotors(full.returnSettings().substring(1));
+                expected[i] = full.convert(msg[i]);
+            }
+            quick.convert(msg, msg, 1000);
+            for (int i = 1000; i < msg.length; i += 1) {
+                msg[i] = quick.convert(msg[i]);
+            }
+            assertArrayEquals(expected, msg);
+            assertEquals(full.returnSettings(), quick.returnSettings());
+        }
+    }
+
+    @Test
+    public void testSaveRestoreSettings() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        Settings saved = mach.saveSettings("* B Beta III IV I AXLE");
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                mach.convert("FROMHISSHOULDERHIAWATHA"));
+        mach.setPlugboard(new Permutation("", AZ));
+        mach.restoreSettings(saved);
+        assertEquals("AAXLE", mach.returnSettings());
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                mach.convert("FROMHISSHOULDERHIAWATHA"));
+    }
 }
@@ -1,11 +1,19 @@
 package enigma;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 
 import java.util.NoSuchElementException;
 import java.util.List;
+import java.util.HashSet;
 import java.util.Scanner;
 import java.util.ArrayList;
 
@@ -27,18 +35,115 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *
+     *  With --checkpoint=N, which requires both INPUT and OUTPUT, the
+     *  state of the run is saved in OUTPUT.ckpt after roughly every N
+     *  letters.  With --resume, a run that was checkpointed and
+     *  interrupted continues from its last checkpoint.  With
+     *  --async-output, OUTPUT is written by a separate thread, so that
+     *  conversion does not wait for the disk.  With --index=K, a
+     *  SeekIndex of OUTPUT with a record every K letters is written to
+     *  OUTPUT.idx.  With --watch, CONFIG is read again whenever it
+     *  changes, and each message (the lines from a settings line to the
+     *  next) uses the configuration current at its settings line.  With
+     *  --specialize, rotor passes use handles built by Specializer.
+     *  With --result-cache=MB, the output of message lines is kept in a
+     *  ResultCache of about MB megabytes, and a line seen before under
+     *  the same settings and rotor positions is not converted again; a
+     *  summary of its use goes to the standard error.
+     *
+     *  With --interactive, ARGS are just CONFIG, and the standard input is
+     *  converted a keystroke at a time, as typed.  See InteractiveSession.
+     *
+     *  With --batch, ARGS are CONFIG, then a directory of .in files or a
+     *  manifest listing input files, then an output directory, and the
+     *  inputs are converted in parallel on --threads threads (default:
+     *  one per processor).  See Batch.
+     *
+     *  With --parallel, the segments of INPUT between settings lines are
+     *  converted concurrently on --threads threads, and the output is the
+     *  same as without it.  See ParallelRun. */
     public static void main(String... args) {
         try {
             CommandArgs options =
-                new CommandArgs("--verbose --=(.*){1,3}", args);
+                new CommandArgs("--verbose --checkpoint=(\\d+) --resume "
+                                + "--async-output --batch --threads=(\\d+) "
+                                + "--index=(\\d+) --parallel --watch "
+                                + "--specialize --result-cache=(\\d+) "
+                                + "--interactive "
+                                + "--=(.*){1,3}", args);
             if (!options.ok()) {
                 throw error("Usage: java enigma.Main [--verbose] "
-                            + "[INPUT [OUTPUT]]");
+                            + "[--checkpoint=N] [--resume] "
+                            + "[--async-output] [--index=K] [--watch] "
+                            + "[--specialize] [--result-cache=MB] "
+                            + "[--parallel [--threads=N]] "
+                            + "[INPUT [OUTPUT]]%n"
+                            + "       java enigma.Main --interactive "
+                            + "[--verbose] [--specialize] CONFIG%n"
+                            + "       java enigma.Main --batch "
+                            + "[--threads=N] CONFIG (DIR | MANIFEST) "
+                            + "OUTDIR");
             }
 
             _verbose = options.contains("--verbose");
-            new Main(options.get("--")).process();
+            int threads = Runtime.getRuntime().availableProcessors();
+            if (options.contains("--threads")) {
+                threads = Integer.parseInt(options.get("--threads").get(0));
+                if (threads < 1) {
+                    throw error("need at least one thread");
+                }
+            }
+            if (options.contains("--batch")) {
+                new Batch(options.get("--"), threads).run();
+                return;
+            }
+            long interval = 0;
+            if (options.contains("--checkpoint")) {
+                interval = Long.parseLong(options.get("--checkpoint").get(0));
+            } else if (options.contains("--resume")) {
+                interval = DEFAULT_CHECKPOINT_INTERVAL;
+            }
+            _asyncOutput = options.contains("--async-output");
+            if (options.contains("--index")) {
+                _indexInterval = Long.parseLong(options.get("--index")
+                                                .get(0));
+            }
+            _watchConfig = options.contains("--watch");
+            Specializer.setEnabled(options.contains("--specialize"));
+            if (options.contains("--result-cache")) {
+                _resultCacheBytes = Long.parseLong(
+                    options.get("--result-cache").get(0)) << 20;
+                if (_verbose || _indexInterval > 0) {
+                    throw error("--result-cache cannot be combined with "
+                                + "--verbose or --index");
+                }
+            }
+            if (options.contains("--interactive")) {
+                if (options.get("--").size() != 1 || interval > 0
+                    || _asyncOutput || _indexInterval > 0 || _watchConfig
+                    || _resultCacheBytes > 0
+                    || options.contains("--parallel")) {
+                    throw error("--interactive takes only CONFIG, and "
+                                + "only --verbose and --specialize");
+                }
+                new InteractiveSession(loadConfig(options.get("--").get(0)))
+                    .run();
+                return;
+            }
+            if (options.contains("--parallel")) {
+                if (_verbose || interval > 0 || _indexInterval > 0
+                    || _watchConfig || _resultCacheBytes > 0) {
+                    throw error("--parallel cannot be combined with "
+                                + "--verbose, --checkpoint, --resume, "
+                                + "--index, --watch, or --result-cache");
+                }
+                new Main(options.get("--")).processParallel(threads);
+                return;
+            }
+            new Main(options.get("--"), interval,
+                     options.contains("--resume")).process();
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -49,12 +154,30 @@ public final class Main {
     /** Open the necessary files for non-option arguments ARGS (see comment
       *  on main). */
     Main(List<String> args) {
-        _config = getInput(args.get(0));
+        this(args, 0, false);
+    }
+
+    /** Open the necessary files for non-option arguments ARGS (see comment
+     *  on main), checkpointing every INTERVAL letters if INTERVAL > 0,
+     *  and continuing from the last checkpoint if RESUME. */
+    Main(List<String> args, long interval, boolean resume) {
+        _configName = args.get(0);
+
+        if ((interval > 0 || resume) && args.size() < 3) {
+            throw error("checkpoints require input and output files");
+        }
+        if (resume) {
+            _checkpointFile = new File(args.get(2) + CHECKPOINT_SUFFIX);
+            if (!_checkpointFile.exists()) {
+                throw error("no checkpoint %s", _checkpointFile);
+            }
+            _resume = Checkpoint.read(_checkpointFile);
+        }
 
         if (args.size() > 1) {
-            _input = getInput(args.get(1));
+            _input = openInput(args.get(1));
         } else {
-            _input = new Scanner(System.in);
+            _input = new LineReader(System.in);
         }
 
         if (args.size() > 2) {
@@ -62,91 +185,279 @@ public final class Main {
         } else {
             _output = System.out;
         }
+
+        if (_indexInterval > 0) {
+            if (args.size() < 3 || resume) {
+                throw error("an index requires an output file and a "
+                            + "complete run");
+            }
+            _index = new SeekIndex.IndexWriter(
+                new File(args.get(2) + INDEX_SUFFIX), _indexInterval);
+        }
+
+        if (interval > 0) {
+            _interval = interval;
+            _checkpointFile = new File(args.get(2) + CHECKPOINT_SUFFIX);
+            _checkpointer = new Checkpointer(_checkpointFile, _outputChannel);
+        }
+    }
+
+    /** A Main that applies MACHINE, which is already configured, to the
+     *  messages in INPUT, sending the results to OUTPUT. */
+    Main(Machine machine, LineReader input, PrintStream output) {
+        _machine = machine;
+        _input = input;
+        _output = output;
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** Return a LineReader reading from the file named NAME, starting
+     *  at the line recorded in _resume, if any. */
+    private LineReader openInput(String name) {
         try {
-            return new Scanner(new File(name));
+            FileInputStream str = new FileInputStream(name);
+            long start = _resume == null ? 0 : _resume.inputOffset();
+            str.getChannel().position(start);
+            return new LineReader(str, start);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
+    /** Return a PrintStream writing to the file named NAME, and set
+     *  _outputChannel to its channel.  When resuming, NAME is cut back
+     *  to the output offset recorded in _resume and appended to. */
     private PrintStream getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            if (_resume != null) {
+                try (RandomAccessFile file =
+                     new RandomAccessFile(name, "rw")) {
+                    if (file.length() < _resume.outputOffset()) {
+                        throw error("%s is shorter than its checkpoint",
+                                    name);
+                    }
+                    file.setLength(_resume.outputOffset());
+                }
+            }
+            FileOutputStream str = new FileOutputStream(name,
+                                                        _resume != null);
+            _outputChannel = str.getChannel();
+            OutputStream out;
+            if (_asyncOutput) {
+                out = new AsyncChannelOutput(_outputChannel);
+            } else {
+                out = new BufferedOutputStream(str, OUTPUT_BUFFER);
+            }
+            return new PrintStream(out, false, StandardCharsets.UTF_8);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
     /** Configure an Enigma machine from the contents of configuration
-     *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
-    private void process() {
+     *  file _configName and apply it to the messages in _input, sending
+     *  the results to _output.  If I was given a machine, use that
+     *  instead of reading _configName. */
+    void process() {
         int line = 1;
         try {
-            Machine currMach = readConfig();
+            Machine currMach = _machine;
+            if (currMach == null && _watchConfig) {
+                _watcher = new ConfigWatcher(_configName);
+                _generation = _watcher.current();
+                currMach = _generation.newMachine();
+            } else if (currMach == null) {
+                currMach = readConfig();
+            }
+            _lexer = new MessageLexer(currMach.alphabet());
+            _lexer.index(_index);
+            if (_resultCacheBytes > 0) {
+                _resultCache = new ResultCache(_resultCacheBytes);
+            }
+            if (_resume != null) {
+                setUp(currMach, _resume.settings());
+                String positions = _resume.positions();
+                currMach.setRotors(positions.substring(
+                                       positions.offsetByCodePoints(0, 1)));
+                line = _resume.line();
+            }
             while (_input.hasNextLine()) {
-                String curr = _input.nextLine();
-                if (line > 1 && (curr.equals(""))) {
+                int len = _input.nextLineBytes();
+                byte[] curr = _input.lineBytes();
+                if (line > 1 && len == 0) {
                     if (!(_input.hasNextLine())) {
                         break;
                     }
                     _output.println();
-                } else if (line == 1 || curr.charAt(0) == '*') {
-                    setUp(currMach, curr);
+                    if (_index != null) {
+                        _index.advance(LINE_SEPARATOR_BYTES);
+                    }
+                } else if (line == 1 || curr[0] == '*') {
+                    if (_watcher != null
+                        && _watcher.current() != _generation) {
+                        currMach = reconfigure(_watcher.current());
+                    }
+                    setUp(currMach, _input.lineString());
+                    if (_index != null) {
+                        _index.settings(_settingsLine, currMach);
+                    }
                 } else {
-                    String messageLine = curr;
-                    for (int i = 0; i < messageLine.length(); i++) {
-                        char current = messageLine.charAt(i);
-                        int test = currMach.alphabet().toInt(current);
-                        if (current != ')' && current != '(') {
-                            if (current != ' ') {
-                                if ((test == -1)) {
-                                    throw new NoSuchElementException();
-                                }
-                            }
-                        }
+                    printMessageLine(curr, len, currMach);
+                    _sinceCheckpoint += len;
+                    if (_checkpointer != null
+                        && _sinceCheckpoint >= _interval) {
+                        checkpoint(line + 1, currMach);
                     }
-                    printMessageLine(messageLine, currMach);
                 }
                 line++;
             }
+            if (verbose()) {
+                System.err.printf("settings cache: %d hits, %d misses%n",
+                                  _settingsCache.hits(),
+                                  _settingsCache.misses());
+            }
+            if (_resultCache != null) {
+                System.err.println(_resultCache.summary());
+            }
+            _output.flush();
+            if (_output.checkError()) {
+                throw error("error writing output");
+            }
+            if (_checkpointer != null) {
+                _checkpointer.close();
+                _checkpointFile.delete();
+            }
+        } catch (NoSuchElementException excp) {
+            throw error("input file not ballin");
+        } finally {
+            if (_watcher != null) {
+                _watcher.close();
+            }
+            if (_index != null) {
+                _index.close();
+            }
+            if (_outputChannel != null) {
+                _output.close();
+            } else {
+                _output.flush();
+            }
+        }
+
+    }
+
+    /** Switch to the configuration of GEN, a newer generation than
+     *  _generation, and return a new machine for it.  Reports the time
+     *  taken to read the configuration and the time from its publication
+     *  until now, when it is first used. */
+    private Machine reconfigure(ConfigWatcher.Generation gen) {
+        long swap = System.nanoTime() - gen.published();
+        _generation = gen;
+        Machine mach = gen.newMachine();
+        _lexer = new MessageLexer(mach.alphabet());
+        _lexer.index(_index);
+        _settingsCache = new SettingsCache();
+        if (_resultCache != null) {
+            _resultCache = new ResultCache(_resultCacheBytes);
+        }
+        System.err.printf("configuration %d loaded in %.3f ms, "
+                          + "in use after %.3f ms%n", gen.number(),
+                          gen.loadNanos() * 1e-6, swap * 1e-6);
+        return mach;
+    }
+
+    /** Do what process does, converting the segments of _input between
+     *  settings lines on THREADS threads at once. */
+    void processParallel(int threads) {
+        processParallel(threads, ParallelRun.TASK_BYTES);
+    }
+
+    /** Do what processParallel(THREADS) does, giving each thread tasks of
+     *  at least TASKBYTES bytes of input. */
+    void processParallel(int threads, int taskBytes) {
+        try {
+            Machine template = _machine != null ? _machine : readConfig();
+            new ParallelRun(template, _input, _output, threads, taskBytes)
+                .run();
+            _output.flush();
+            if (_output.checkError()) {
+                throw error("error writing output");
+            }
         } catch (NoSuchElementException excp) {
             throw error("input file not ballin");
+        } finally {
+            if (_outputChannel != null) {
+                _output.close();
+            } else {
+                _output.flush();
+            }
         }
+    }
 
+    /** Record a checkpoint for the state of the run just before input
+     *  line LINE, with MACH in its current state. */
+    private void checkpoint(int line, Machine mach) {
+        _output.flush();
+        try {
+            _checkpointer.submit(new Checkpoint(line, _input.position(),
+                                                _outputChannel.position(),
+                                                _settingsLine,
+                                                mach.returnSettings()));
+        } catch (IOException excp) {
+            throw error("could not find output position");
+        }
+        _sinceCheckpoint = 0;
     }
 
     /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
+     *  file _configName. */
     private Machine readConfig() {
+        return loadConfig(_configName);
+    }
+
+    /** Return an Enigma machine configured from the file named NAME,
+     *  which is either a configuration file or an inventory file compiled
+     *  from one by InventoryFile.  An inventory file is mapped rather than
+     *  read. */
+    static Machine loadConfig(String name) {
+        File file = new File(name);
+        if (InventoryFile.isInventory(file)) {
+            return InventoryFile.map(file);
+        }
+        if (file.length() >= LAZY_CONFIG_SIZE) {
+            return LazyInventory.open(file);
+        }
+        try (Scanner config = new Scanner(file, StandardCharsets.UTF_8)) {
+            return readConfig(config);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return an Enigma machine configured from the contents of CONFIG,
+     *  which has the format of a configuration file. */
+    static Machine readConfig(Scanner config) {
         try {
             Alphabet alpha = new Alphabet();
             ArrayList<Rotor> rotors = new ArrayList<>();
             int pawls = 0;
             int numRotors = 0;
             int line = 1;
-            while (_config.hasNextLine()) {
+            while (config.hasNextLine()) {
 
                 if (line == 1) {
-                    Scanner curr = new Scanner(_config.nextLine());
+                    Scanner curr = new Scanner(config.nextLine());
                     String temp = curr.next();
                     alpha = new Alphabet(temp);
                 } else if (line == 2) {
-                    Scanner curr = new Scanner(_config.nextLine());
+                    Scanner curr = new Scanner(config.nextLine());
                     numRotors = (curr.nextInt());
                     pawls = (curr.nextInt());
                 } else {
-                    String settingLine = _config.nextLine();
+                    String settingLine = config.nextLine();
                     if (settingLine.isBlank()) {
-                        if ((!_config.hasNextLine())) {
+                        if ((!config.hasNextLine())) {
                             break;
                         } else {
-                            settingLine = _config.nextLine();
+                            settingLine = config.nextLine();
                         }
                     }
                     Scanner tempest = new Scanner(settingLine);
@@ -168,11 +479,12 @@ public final class Main {
             throw error("configuration file truncated");
         }
     }
-    /** Return a rotor, reading its description from _config.
+    /** Return a rotor, reading its description from the configuration
+     *  line SETTINGS.
      * @param settings
      * @param alpha
      * */
-    private Rotor readRotor(String settings, Alphabet alpha) {
+    private static Rotor readRotor(String settings, Alphabet alpha) {
         try {
             Scanner set = new Scanner(settings);
             String name = set.next();
@@ -191,114 +503,216 @@ public final class Main {
                 cycles += temp;
             }
             Permutation perm = new Permutation(cycles, alpha);
-            Rotor val = new Rotor(name, perm);
-            if (type == 'M') {
-                val = new MovingRotor(name, perm, notches);
-            } else if (type == 'N') {
-                val = new FixedRotor(name, perm);
-            } else if (type == 'R') {
-                val = new Reflector(name, perm);
-            }
-            return val;
+            return makeRotor(name, type, notches, perm);
         } catch (NoSuchElementException excp) {
             throw error("bad rotor description");
         }
     }
 
+    /** Return a rotor named NAME of type TYPE ('M' for moving, 'N' for
+     *  non-moving, 'R' for a reflector) with NOTCHES and permutation
+     *  PERM. */
+    static Rotor makeRotor(String name, char type, String notches,
+                           Permutation perm) {
+        Rotor val = new Rotor(name, perm);
+        if (type == 'M') {
+            val = new MovingRotor(name, perm, notches);
+        } else if (type == 'N') {
+            val = new FixedRotor(name, perm);
+        } else if (type == 'R') {
+            val = new Reflector(name, perm);
+        }
+        return val;
+    }
+
     /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
+     *  which must have the format specified in the assignment.  Settings
+     *  lines seen before are taken from _settingsCache rather than being
+     *  parsed again. */
+    void setUp(Machine M, String settings) {
         try {
-            if (settings.charAt(0) != '*') {
+            if (settings.isEmpty() || settings.charAt(0) != '*') {
                 throw new NoSuchElementException();
             }
+            String key = SettingsCache.normalize(settings);
+            _settingsLine = key;
+            Settings cached = _settingsCache.get(key);
+            if (cached != null) {
+                M.restoreSettings(cached);
+                return;
+            }
             Scanner set = new Scanner(settings);
             if (settings.length() < M._slots.length) {
                 throw new NoSuchElementException();
             }
             set.next();
             String[] rotors = new String[M._slots.length];
+            HashSet<String> unique = new HashSet<>();
             for (int i = 0; i < M._slots.length; i++) {
-                String unique = set.next();
-                rotors[i] = unique;
-            }
-            for (int i = 0; i < rotors.length; i++) {
-                String curr = rotors[i];
-                int dex = i;
-                for (int j = 0; j < rotors.length; j++) {
-                    if (curr == rotors[j] && i != j) {
-                        throw new NoSuchElementException();
-                    }
+                rotors[i] = set.next();
+                if (!unique.add(rotors[i])) {
+                    throw new NoSuchElementException();
                 }
             }
             M.insertRotors(rotors);
+            for (int i = 0; i < M._slots.length; i++) {
+                if (M._slots[i] == null) {
+                    throw new NoSuchElementException();
+                }
+            }
             if (!(M._slots[0] instanceof Reflector)) {
                 throw new NoSuchElementException();
             }
+            int firstMoving = M._slots.length - M.numPawls();
+            for (int i = 1; i < M._slots.length; i++) {
+                Rotor r = M._slots[i];
+                if (r.reflecting() || r.rotates() != (i >= firstMoving)) {
+                    throw new NoSuchElementException();
+                }
+            }
             String setter = set.next();
-            if (setter.length() != rotors.length - 1) {
+            if (setter.codePointCount(0, setter.length())
+                != rotors.length - 1) {
                 throw new NoSuchElementException();
             }
-            for (int i = 0; i < setter.length(); i++) {
-                if (M.alphabet().toInt(setter.charAt(i)) == -1) {
+            for (int i = 0; i < setter.length(); ) {
+                int c = setter.codePointAt(i);
+                if (M.alphabet().toIndex(c) == -1) {
                     throw new NoSuchElementException();
                 }
+                i += Character.charCount(c);
             }
             M.setRotors(setter);
-            if (set.hasNext()) {
-                String pPerms = "";
-                while (set.hasNext()) {
-                    {
-                        pPerms += set.next();
-                    }
-                }
-                Permutation perm = new Permutation(pPerms, M.alphabet());
-                M.setPlugboard(perm);
+            StringBuilder pPerms = new StringBuilder();
+            while (set.hasNext()) {
+                pPerms.append(set.next());
             }
+            M.setPlugboard(new Permutation(pPerms.toString(), M.alphabet()));
+            _settingsCache.put(M.saveSettings(key));
         } catch (NoSuchElementException excp) {
             throw error("NOT BALLIN MM MM");
         }
     }
+
     /** Return true iff verbose option specified. */
     static boolean verbose() {
         return _verbose;
     }
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters).
+    /** Print the message whose UTF-8 encoding is MSG[0 .. LEN-1] in
+     *  groups of five (except that the last group may have fewer
+     *  letters).
      *  @param mach
      *  @param msg
+     *  @param len
      *  */
-    private void printMessageLine(String msg, Machine mach) {
-        Scanner set = new Scanner(msg);
-        String result = "";
-        int counter = 0;
-        while (set.hasNext()) {
-            String curr = set.next();
-            curr = mach.convert(curr);
-            for (int i = 0; i < curr.length(); i++) {
-                if (counter == 5) {
-                    result += " ";
-                    counter = 0;
-                }
-                result += curr.charAt(i);
-                counter++;
+    private void printMessageLine(byte[] msg, int len, Machine mach) {
+        if (_resultCache != null) {
+            String cached = _resultCache.get(_settingsLine, mach, msg, len);
+            if (cached == null) {
+                CharSequence converted = _lexer.convert(msg, len, mach);
+                _resultCache.put(converted, mach);
+                _output.append(converted);
+            } else {
+                _output.append(cached);
             }
+            _output.println();
+            return;
+        }
+        _output.append(_lexer.convert(msg, len, mach));
+        _output.println();
+        if (_index != null) {
+            _index.advance(_lexer.byteLength() + LINE_SEPARATOR_BYTES);
         }
-        _output.println(result);
     }
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
+    /** Machine to use in place of one read from _configName, if any. */
+    private Machine _machine;
+
+    /** Reads and converts message lines. */
+    private MessageLexer _lexer;
+
+    /** Previously parsed settings lines. */
+    private SettingsCache _settingsCache = new SettingsCache();
+
+    /** Previously converted message lines, or null if not caching
+     *  them. */
+    private ResultCache _resultCache;
+
     /** Source of input messages. */
-    private Scanner _input;
+    private LineReader _input;
 
-    /** Source of machine configuration. */
-    private Scanner _config;
+    /** Name of the machine configuration file. */
+    private String _configName;
 
     /** File for encoded/decoded messages. */
     private PrintStream _output;
 
+    /** Channel underlying _output, if it is a file. */
+    private FileChannel _outputChannel;
+
+    /** Normalized form of the last settings line. */
+    private String _settingsLine;
+
+    /** Where checkpoints are recorded, if anywhere. */
+    private File _checkpointFile;
+
+    /** Records checkpoints, or null if not checkpointing. */
+    private Checkpointer _checkpointer;
+
+    /** The checkpoint to resume from, or null. */
+    private Checkpoint _resume;
+
+    /** Approximate number of letters between checkpoints. */
+    private long _interval;
+
+    /** Letters converted since the last checkpoint. */
+    private long _sinceCheckpoint;
+
+    /** Writes the index of the output, or null if not indexing. */
+    private SeekIndex.IndexWriter _index;
+
+    /** Watches the configuration file, or null if not watching. */
+    private ConfigWatcher _watcher;
+
+    /** The generation of the configuration in use, if watching. */
+    private ConfigWatcher.Generation _generation;
+
+    /** Default value of _interval when resuming. */
+    static final long DEFAULT_CHECKPOINT_INTERVAL = 1 << 20;
+
+    /** Suffix added to the output file name to name the checkpoint. */
+    static final String CHECKPOINT_SUFFIX = ".ckpt";
+
+    /** Suffix added to the output file name to name its index. */
+    static final String INDEX_SUFFIX = ".idx";
+
+    /** Length in bytes of the line separator println writes. */
+    private static final int LINE_SEPARATOR_BYTES =
+        System.lineSeparator().length();
+
+    /** Size in bytes from which configuration files are loaded with a
+     *  LazyInventory. */
+    static final long LAZY_CONFIG_SIZE = 1 << 20;
+
+    /** Size of the buffer for output files. */
+    static final int OUTPUT_BUFFER = 1 << 16;
+
     /** True if --verbose specified. */
     private static boolean _verbose;
+
+    /** True if --async-output specified. */
+    private static boolean _asyncOutput;
+
+    /** Letters between index records if --index specified, else 0. */
+    private static long _indexInterval;
+
+    /** Capacity of the result cache in bytes if --result-cache
+     *  specified, else 0. */
+    private static long _resultCacheBytes;
+
+    /** True if --watch specified. */
+    private static boolean _watchConfig;
 }
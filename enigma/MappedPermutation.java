@@ -0,0 +1,53 @@
+package enigma;
+
+import java.nio.IntBuffer;
+
+import static enigma.EnigmaException.*;
+
+/** A read-only permutation whose index tables live outside the Java heap,
+ *  in a region of a mapped file (see InventoryFile).  Reading it does
+ *  not allocate, and because the mapping is shared, it may be used from
+ *  any number of threads.
+ *  @author Avik Samanta
+ */
+class MappedPermutation extends Permutation {
+
+    /** A permutation of ALPHABET whose image of index K is FORWARD.get(K)
+     *  and whose inverse image of K is INVERSE.get(K). */
+    MappedPermutation(Alphabet alphabet, IntBuffer forward,
+                      IntBuffer inverse) {
+        super(alphabet);
+        _forward = forward;
+        _inverse = inverse;
+    }
+
+    @Override
+    public void addCycle(String cycle) {
+        throw error("mapped permutations are read-only");
+    }
+
+    @Override
+    int permute(int p) {
+        return _forward.get(wrap(p));
+    }
+
+    @Override
+    int invert(int c) {
+        return _inverse.get(wrap(c));
+    }
+
+    @Override
+    boolean derangement() {
+        for (int i = 0; i < size(); i += 1) {
+            if (_forward.get(i) == i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Images of each index under this permutation. */
+    private final IntBuffer _forward;
+    /** Images of each index under the inverse. */
+    private final IntBuffer _inverse;
+}
@@ -0,0 +1,119 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** A single-pass reader for message lines.  Each line is validated,
+ *  stripped of whitespace, run through a machine, and grouped into
+ *  fives in one scan, with the result going into a buffer that is
+ *  reused from line to line.  Lines may be given either as text or as
+ *  UTF-8 bytes, which are decoded straight to alphabet indices.
+ *  @author Avik Samanta
+ */
+class MessageLexer {
+
+    /** Size of the letter groups in converted output. */
+    static final int GROUP = 5;
+
+    /** A lexer for message lines in ALPHA. */
+    MessageLexer(Alphabet alpha) {
+        _alphabet = alpha;
+        _buffer = new StringBuilder();
+    }
+
+    /** Return the conversion of the message line LINE by MACH, in groups
+     *  of GROUP letters separated by single blanks (except that the last
+     *  group may have fewer letters).  Whitespace in LINE is ignored; any
+     *  other character outside my alphabet is an error.  The result is
+     *  only valid until the next call. */
+    CharSequence convert(CharSequence line, Machine mach) {
+        start();
+        for (int i = 0; i < line.length(); ) {
+            int c = Character.codePointAt(line, i);
+            i += Character.charCount(c);
+            add(c, mach);
+        }
+        return _buffer;
+    }
+
+    /** Return the conversion by MACH of the message line whose UTF-8
+     *  encoding is in LINE[0 .. LEN-1], as for convert(CharSequence,
+     *  Machine). */
+    CharSequence convert(byte[] line, int len, Machine mach) {
+        return convert(line, 0, len, mach);
+    }
+
+    /** Return the conversion by MACH of the message line whose UTF-8
+     *  encoding is in LINE[START .. START+LEN-1], as for
+     *  convert(CharSequence, Machine). */
+    CharSequence convert(byte[] line, int start, int len, Machine mach) {
+        start();
+        len += start;
+        for (int i = start; i < len; ) {
+            int c = Utf8.decode(line, i, len);
+            if (c < 0) {
+                throw error("malformed UTF-8 in message");
+            }
+            i += Utf8.width(c);
+            add(c, mach);
+        }
+        return _buffer;
+    }
+
+    /** Report each letter to INDEX, if not null, before converting
+     *  it. */
+    void index(SeekIndex.IndexWriter index) {
+        _index = index;
+    }
+
+    /** Return the length in UTF-8 bytes of the last line converted.  Only
+     *  kept while indexing. */
+    int byteLength() {
+        return _bytes;
+    }
+
+    /** Prepare to convert a new line. */
+    private void start() {
+        _buffer.setLength(0);
+        _count = 0;
+        _bytes = 0;
+    }
+
+    /** Convert code point C of a message line with MACH and add the
+     *  result to _buffer, unless C is whitespace. */
+    private void add(int c, Machine mach) {
+        if (Character.isWhitespace(c)) {
+            return;
+        }
+        int index = _alphabet.toIndex(c);
+        if (index < 0) {
+            throw error("character '%s' not in alphabet",
+                        new String(Character.toChars(c)));
+        }
+        if (_count == GROUP) {
+            _buffer.append(' ');
+            _count = 0;
+            _bytes += 1;
+        }
+        if (_index != null) {
+            _index.letter(_bytes, mach);
+            int out = _alphabet.toCodePoint(mach.convert(index));
+            _buffer.appendCodePoint(out);
+            _bytes += Utf8.width(out);
+        } else {
+            _buffer.appendCodePoint(_alphabet.toCodePoint(
+                                        mach.convert(index)));
+        }
+        _count += 1;
+    }
+
+    /** Alphabet of the lines I read. */
+    private final Alphabet _alphabet;
+    /** Holds the converted form of the last line. */
+    private final StringBuilder _buffer;
+    /** Number of letters in the last group in _buffer. */
+    private int _count;
+    /** Number of UTF-8 bytes in _buffer, while indexing. */
+    private int _bytes;
+    /** Where letters are reported, or null. */
+    private SeekIndex.IndexWriter _index;
+}
@@ -0,0 +1,108 @@
+package enigma;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the MessageLexer class.
+ *  @author Avik Samanta
+ */
+public class MessageLexerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the machine used in the Hiawatha example. */
+    private Machine hiawatha() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new FixedRotor("Beta",
+                                  new Permutation(NAVALA.get("Beta"),
+                                                  UPPER)));
+        rotors.add(new MovingRotor("III",
+                                   new Permutation(NAVALA.get("III"), UPPER),
+                                   "V"));
+        rotors.add(new MovingRotor("IV",
+                                   new Permutation(NAVALA.get("IV"), UPPER),
+                                   "J"));
+        rotors.add(new MovingRotor("I",
+                                   new Permutation(NAVALA.get("I"), UPPER),
+                                   "Q"));
+        Machine mach = new Machine(UPPER, 5, 3, rotors);
+        mach.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        mach.setRotors("AXLE");
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                          UPPER));
+        return mach;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testGrouping() {
+        MessageLexer lexer = new MessageLexer(UPPER);
+        assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW",
+                     lexer.convert("FROM HIS SHOULDER HIAWATHA",
+                                   hiawatha()).toString());
+    }
+
+    @Test
+    public void testWhitespace() {
+        MessageLexer lexer = new MessageLexer(UPPER);
+        assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW",
+                     lexer.convert("  FROMHIS\tSHOULDERHIA  WATHA ",
+                                   hiawatha()).toString());
+        assertEquals("", lexer.convert("   ", hiawatha()).toString());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadCharacter() {
+        new MessageLexer(UPPER).convert("FROM his", hiawatha());
+    }
+
+    @Test
+    public void testMalformedBytes() {
+        MessageLexer lexer = new MessageLexer(UPPER);
+        int[][] bad = {
+            { 0xf7, 0xbf, 0xbf, 0xbf }, { 0xf4, 0x90, 0x80, 0x80 },
+            { 0xc0, 0x81 }, { 0xe0, 0x80, 0x81 }, { 0xed, 0xa0, 0x80 },
+            { 0xf8, 0x88, 0x80, 0x80, 0x80 }, { 0x80 }, { 0xe2, 0x82 },
+        };
+        for (int[] seq : bad) {
+            byte[] line = new byte[seq.length + 3];
+            line[0] = 'A';
+            line[1] = 'B';
+            for (int k = 0; k < seq.length; k += 1) {
+                line[k + 2] = (byte) seq[k];
+            }
+            line[line.length - 1] = 'C';
+            try {
+                lexer.convert(line, line.length, hiawatha());
+                fail("accepted malformed UTF-8");
+            } catch (EnigmaException excp) {
+                assertEquals("malformed UTF-8 in message", excp.getMessage());
+            }
+        }
+        byte[] line = "FR\u2003O\u3000M".getBytes(StandardCharsets.UTF_8);
+        assertEquals("QVPQ",
+                     lexer.convert(line, line.length, hiawatha()).toString());
+        line = "AB\u00e9".getBytes(StandardCharsets.UTF_8);
+        try {
+            lexer.convert(line, line.length, hiawatha());
+            fail("accepted a letter outside the alphabet");
+        } catch (EnigmaException excp) {
+            assertEquals("character '\u00e9' not in alphabet",
+                         excp.getMessage());
+        }
+    }
+
+}
@@ -31,6 +31,11 @@ class MovingRotor extends Rotor {
         }
     }
 
+    @Override
+    Rotor copy() {
+        return shareTables(new MovingRotor(name(), _permutation, _notches));
+    }
+
     @Override
     String notches() {
         return _notches;
@@ -95,4 +95,26 @@ public class MovingRotorTest {
                 rotor.convertBackward(alpha.indexOf('S')));
     }
 
+    @Test
+    public void checkLargeAlphabet() {
+        StringBuilder letters = new StringBuilder();
+        for (char c = 0x100; c < 0x100 + 2 * Rotor.TABLE_LIMIT; c += 1) {
+            letters.append(c);
+        }
+        Alphabet big = new Alphabet(letters.toString());
+        String cycle = "(" + letters.substring(3, 40) + ")";
+        rotor = new MovingRotor("big", new Permutation(cycle, big), "");
+        for (int s = 0; s < big.size(); s += 7) {
+            rotor.set(s);
+            for (int p = 0; p < big.size(); p += 1) {
+                int e = rotor.convertForward(p);
+                assertEquals(p, rotor.convertBackward(e));
+                int contact = (p + s) % big.size();
+                int expected = big.toInt(rotor.permutation()
+                                         .permute(big.toChar(contact)));
+                assertEquals((expected - s + big.size()) % big.size(), e);
+            }
+        }
+    }
+
 }
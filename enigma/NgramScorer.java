@@ -0,0 +1,236 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static enigma.EnigmaException.*;
+
+/** A measure of how much a candidate plaintext resembles a sample of
+ *  natural language, as the sum over its N-letter sequences (bigrams,
+ *  trigrams, or quadgrams) of the base-10 logarithm of each sequence's
+ *  frequency in the sample.  Sequences absent from the sample count as
+ *  though they had occurred 1/100 of a time.
+ *
+ *  The frequencies are compiled once into a binary file, which is
+ *  mapped read-only and shared by every thread that scores.  The file
+ *  is a sequence of big-endian values: the ints MAGIC, N, and alphabet
+ *  size S, the S code points of the alphabet, and then S**N floats, the
+ *  one for a sequence of letters with indices c1...cN being at index
+ *  c1*S**(N-1) + ... + cN.  To compile such a file, use
+ *      java enigma.NgramScorer CONFIG CORPUS N OUTPUT
+ *  where the alphabet is CONFIG's, and CORPUS is UTF-8 text.  Letters of
+ *  CORPUS outside the alphabet are upper-cased if that brings them into
+ *  it, and are skipped otherwise.
+ *  @author Avik Samanta
+ */
+class NgramScorer {
+
+    /** First int of an n-gram file ("ENG1"). */
+    static final int MAGIC = 0x454e4731;
+
+    /** Largest number of entries in a table. */
+    static final long MAX_ENTRIES = 1L << 28;
+
+    /** Largest alphabet in a table: one letter per code point. */
+    static final int MAX_ALPHABET = Character.MAX_CODE_POINT + 1;
+
+    /** Compile the n-gram file ARGS[3] for sequences of ARGS[2] letters
+     *  in the corpus ARGS[1], using the alphabet of configuration ARGS[0].
+     */
+    public static void main(String... args) {
+        try {
+            if (args.length != 4) {
+                throw error("Usage: java enigma.NgramScorer CONFIG CORPUS N "
+                            + "OUTPUT");
+            }
+            Alphabet alpha = Main.loadConfig(args[0]).alphabet();
+            String corpus;
+            try {
+                corpus = new String(Files.readAllBytes(new File(args[1])
+                                                       .toPath()),
+                                    StandardCharsets.UTF_8);
+            } catch (IOException excp) {
+                throw error("could not read %s", args[1]);
+            }
+            write(alpha, corpus, Integer.parseInt(args[2]),
+                  new File(args[3]));
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad n-gram length%n");
+            System.exit(1);
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Write to FILE the table of N-letter sequence frequencies over ALPHA
+     *  in CORPUS. */
+    static void write(Alphabet alpha, String corpus, int n, File file) {
+        int size = alpha.size();
+        if (n < 1 || Math.pow(size, n) > MAX_ENTRIES) {
+            throw error("cannot tabulate %d-letter sequences of %d letters",
+                        n, size);
+        }
+        int entries = (int) Math.pow(size, n), high = entries / size;
+        int[] counts = new int[entries];
+        long total = 0;
+        int index = 0, run = 0;
+        for (int i = 0; i < corpus.length(); ) {
+            int cp = corpus.codePointAt(i);
+            i += Character.charCount(cp);
+            int c = alpha.toIndex(cp);
+            if (c < 0) {
+                c = alpha.toIndex(Character.toUpperCase(cp));
+                if (c < 0) {
+                    continue;
+                }
+            }
+            index = (index % high) * size + c;
+            run += 1;
+            if (run >= n) {
+                counts[index] += 1;
+                total += 1;
+            }
+        }
+        if (total == 0) {
+            throw error("corpus has no %d-letter sequences", n);
+        }
+        try (DataOutputStream out =
+             new DataOutputStream(new BufferedOutputStream(
+                 new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(n);
+            out.writeInt(size);
+            for (int i = 0; i < size; i += 1) {
+                out.writeInt(alpha.toCodePoint(i));
+            }
+            float unseen = (float) Math.log10(UNSEEN / total);
+            for (int count : counts) {
+                out.writeFloat(count == 0 ? unseen
+                               : (float) Math.log10((double) count / total));
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Return a scorer whose table is the n-gram file FILE, mapped
+     *  read-only.  The header is checked before anything is mapped, and
+     *  only the bytes it describes are mapped. */
+    static NgramScorer map(File file) {
+        MappedByteBuffer data;
+        int n, size;
+        long entries;
+        try (FileChannel channel =
+             new RandomAccessFile(file, "r").getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw error("%s is truncated", file);
+                }
+            }
+            if (header.getInt(0) != MAGIC) {
+                throw error("%s is not an n-gram file", file);
+            }
+            n = header.getInt(4);
+            size = header.getInt(8);
+            if (n < 1 || size < 1 || size > MAX_ALPHABET) {
+                throw error("%s has a bad header", file);
+            }
+            entries = 1;
+            for (int i = 0; i < n && size > 1 && entries <= MAX_ENTRIES;
+                 i += 1) {
+                entries *= size;
+            }
+            if (entries > MAX_ENTRIES) {
+                throw error("%s has a bad header", file);
+            }
+            long length = HEADER_BYTES + 4L * size + 4L * entries;
+            if (length > channel.size()) {
+                throw error("%s is truncated", file);
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } catch (IOException excp) {
+            throw error("could not map %s", file);
+        }
+        int[] letters = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            letters[i] = data.getInt(HEADER_BYTES + 4 * i);
+            if (!Character.isValidCodePoint(letters[i])) {
+                throw error("%s has a bad header", file);
+            }
+        }
+        FloatBuffer table =
+            data.slice(HEADER_BYTES + 4 * size, (int) (4 * entries))
+            .asFloatBuffer();
+        return new NgramScorer(new String(letters, 0, size), n, size,
+                               table);
+    }
+
+    /** A scorer for N-letter sequences over the SIZE letters LETTERS,
+     *  whose log frequencies are TABLE. */
+    private NgramScorer(String letters, int n, int size, FloatBuffer table) {
+        _letters = letters;
+        _n = n;
+        _size = size;
+        _high = (int) Math.pow(size, n - 1);
+        _table = table;
+    }
+
+    /** Return the number of letters in the sequences I score. */
+    int length() {
+        return _n;
+    }
+
+    /** Return true iff my table is for the alphabet ALPHA. */
+    boolean fits(Alphabet alpha) {
+        return _letters.equals(alpha.getLetters());
+    }
+
+    /** Return the score of the first LEN letters of TEXT, given as
+     *  indices in my alphabet.  Texts shorter than my sequences score 0.
+     *  This may be called from any number of threads at once. */
+    double score(int[] text, int len) {
+        if (len < _n) {
+            return 0;
+        }
+        int index = 0;
+        for (int i = 0; i < _n; i += 1) {
+            index = index * _size + text[i];
+        }
+        double sum = _table.get(index);
+        for (int i = _n; i < len; i += 1) {
+            index = (index - text[i - _n] * _high) * _size + text[i];
+            sum += _table.get(index);
+        }
+        return sum;
+    }
+
+    /** Bytes before the alphabet in an n-gram file: MAGIC, N, and S. */
+    private static final int HEADER_BYTES = 12;
+    /** Notional count of a sequence missing from the corpus. */
+    private static final double UNSEEN = 0.01;
+
+    /** The code points of my alphabet, in order. */
+    private final String _letters;
+    /** Length of my sequences. */
+    private final int _n;
+    /** Size of my alphabet. */
+    private final int _size;
+    /** _size ** (_n - 1), the weight of the first letter of a sequence
+     *  in its index. */
+    private final int _high;
+    /** Log frequencies of all sequences, indexed as described above.
+     *  Only absolute gets are used, so sharing it is safe. */
+    private final FloatBuffer _table;
+}
@@ -0,0 +1,152 @@
+package enigma;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the NgramScorer class.
+ *  @author Avik Samanta
+ */
+public class NgramScorerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Alphabet of these tests. */
+    private static final Alphabet ABCD = new Alphabet("ABCD");
+
+    /** Corpus for these tests; the lower-case letters count, and the
+     *  rest are skipped. */
+    private static final String CORPUS =
+        "ABCA BBAC DDA, abca\nCAB! ABBA CCC DAD BAD CAB ACDC BABA Xyz";
+
+    /** Return the letters of ABCD in TEXT, upper-cased, as a String. */
+    private static String letters(String text) {
+        StringBuilder result = new StringBuilder();
+        for (char c : text.toUpperCase().toCharArray()) {
+            if (ABCD.toIndex(c) >= 0) {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the score of TEXT, a string of letters of ABCD, computed
+     *  directly from the N-letter sequences of CORPUS. */
+    private static double naive(String text, int n) {
+        String corpus = letters(CORPUS);
+        HashMap<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i + n <= corpus.length(); i += 1) {
+            counts.merge(corpus.substring(i, i + n), 1, Integer::sum);
+        }
+        double total = corpus.length() - n + 1;
+        double sum = 0;
+        for (int i = 0; i + n <= text.length(); i += 1) {
+            Integer count = counts.get(text.substring(i, i + n));
+            sum += Math.log10((count == null ? 0.01 : count) / total);
+        }
+        return sum;
+    }
+
+    /** Return a scorer for N-letter sequences of CORPUS, compiled into a
+     *  temporary file. */
+    private static NgramScorer scorer(int n) throws Exception {
+        File file = File.createTempFile("ngrams", ".bin");
+        try {
+            NgramScorer.write(ABCD, CORPUS, n, file);
+            return NgramScorer.map(file);
+        } finally {
+            file.deleteOnExit();
+        }
+    }
+
+    /** Return the message of the error from mapping a file holding the
+     *  ints HEADER, then FLOATS zero floats, or null if there is none. */
+    private static String mapError(int[] header, int floats)
+        throws Exception {
+        File file = File.createTempFile("ngrams", ".bin");
+        try {
+            try (DataOutputStream out =
+                 new DataOutputStream(new FileOutputStream(file))) {
+                for (int i : header) {
+                    out.writeInt(i);
+                }
+                for (int i = 0; i < floats; i += 1) {
+                    out.writeFloat(0);
+                }
+            }
+            NgramScorer.map(file);
+            return null;
+        } catch (EnigmaException excp) {
+            return excp.getMessage().replace(file.getPath(), "FILE");
+        } finally {
+            file.delete();
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesNaive() throws Exception {
+        Random random = new Random(35);
+        for (int n = 1; n <= 4; n += 1) {
+            NgramScorer scorer = scorer(n);
+            assertEquals(n, scorer.length());
+            assertTrue(scorer.fits(ABCD));
+            assertFalse(scorer.fits(TestUtils.UPPER));
+            for (int trial = 0; trial < 50; trial += 1) {
+                int len = random.nextInt(40);
+                int[] text = new int[len + 3];
+                StringBuilder chars = new StringBuilder();
+                for (int i = 0; i < text.length; i += 1) {
+                    text[i] = random.nextInt(ABCD.size());
+                    if (i < len) {
+                        chars.append((char) ABCD.toCodePoint(text[i]));
+                    }
+                }
+                double expected = len < n ? 0 : naive(chars.toString(), n);
+                assertEquals(chars.toString(), expected,
+                             scorer.score(text, len), 1e-4);
+            }
+        }
+    }
+
+    @Test
+    public void testBadHeaders() throws Exception {
+        int magic = NgramScorer.MAGIC, a = 'A', b = 'B';
+        assertNull(mapError(new int[] { magic, 2, 2, a, b }, 4));
+        assertEquals("FILE is truncated", mapError(new int[] { magic }, 0));
+        assertEquals("FILE is not an n-gram file",
+                     mapError(new int[] { 0, 2, 2, a, b }, 4));
+        assertEquals("FILE has a bad header",
+                     mapError(new int[] { magic, 0, 2, a, b }, 1));
+        assertEquals("FILE has a bad header",
+                     mapError(new int[] { magic, 2, -1, a, b }, 4));
+        assertEquals("FILE has a bad header",
+                     mapError(new int[] { magic, Integer.MAX_VALUE, 2, a,
+                                          b }, 4));
+        assertEquals("FILE has a bad header",
+                     mapError(new int[] { magic, 1, 2, a, -b }, 2));
+        assertEquals("FILE is truncated",
+                     mapError(new int[] { magic, 2, 2, a, b }, 3));
+        assertEquals("FILE is truncated",
+                     mapError(new int[] { magic, 1, 1 << 20 }, 0));
+    }
+
+    @Test
+    public void testCommonScoresHigher() throws Exception {
+        NgramScorer scorer = scorer(2);
+        int[] common = { 1, 0, 1, 0 };
+        int[] rare = { 3, 1, 3, 1 };
+        assertTrue(scorer.score(common, 4) > scorer.score(rare, 4));
+    }
+}
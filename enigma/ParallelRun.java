@@ -0,0 +1,232 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Converts one input on several threads at once.  Each settings line
+ *  resets the machine completely, so the lines from one settings line up
+ *  to the next form a segment that can be converted independently of the
+ *  others.  The input is read on the calling thread and cut at settings
+ *  lines into tasks of at least TASK_BYTES bytes (by default), each a
+ *  run of whole segments; the tasks are converted on a pool of threads,
+ *  each with its own copy of the machine, and their output is written in
+ *  input order.  The output is exactly what Main.process would produce,
+ *  including its treatment of blank lines, and an error is reported
+ *  after the output of everything before the line that caused it.
+ *  @author Avik Samanta
+ */
+class ParallelRun {
+
+    /** Smallest amount of input, in bytes, given to a task, unless the
+     *  input runs out first. */
+    static final int TASK_BYTES = 1 << 16;
+
+    /** A run applying TEMPLATE, an unset machine, to INPUT on THREADS
+     *  threads, sending the results to OUTPUT. */
+    ParallelRun(Machine template, LineReader input, PrintStream output,
+                int threads) {
+        this(template, input, output, threads, TASK_BYTES);
+    }
+
+    /** A run applying TEMPLATE, an unset machine, to INPUT on THREADS
+     *  threads, sending the results to OUTPUT, and giving each task at
+     *  least TASKBYTES bytes of input. */
+    ParallelRun(Machine template, LineReader input, PrintStream output,
+                int threads, int taskBytes) {
+        _template = template;
+        _input = input;
+        _output = output;
+        _threads = threads;
+        _taskBytes = taskBytes;
+        _workers = ThreadLocal.withInitial(Worker::new);
+    }
+
+    /** Convert all of my input. */
+    void run() {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        ArrayDeque<Future<Task>> pending = new ArrayDeque<>();
+        try {
+            Task task = new Task();
+            int line = 1;
+            while (_input.hasNextLine()) {
+                int len = _input.nextLineBytes();
+                byte[] curr = _input.lineBytes();
+                boolean settings =
+                    line == 1 || len > 0 && curr[0] == '*';
+                if (settings && task.bytes() >= _taskBytes) {
+                    pending.add(pool.submit(task));
+                    task = new Task();
+                    while (pending.size() > MAX_PENDING_PER_THREAD
+                           * _threads) {
+                        write(pending.remove());
+                    }
+                }
+                task.add(curr, len, settings);
+                line += 1;
+            }
+            if (task.size() > 0) {
+                task.finish();
+                pending.add(pool.submit(task));
+            }
+            while (!pending.isEmpty()) {
+                write(pending.remove());
+            }
+        } finally {
+            for (Future<Task> f : pending) {
+                f.cancel(true);
+            }
+            pool.shutdownNow();
+        }
+    }
+
+    /** Wait for the task of FUTURE, write its output, and throw the
+     *  error it met, if any. */
+    private void write(Future<Task> future) {
+        Task task;
+        try {
+            task = future.get();
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("conversion failed: %s", excp.getCause());
+        }
+        _output.append(task.output());
+        if (task.error() != null) {
+            throw task.error();
+        }
+    }
+
+    /** The machine, settings parser, and lexer used by one thread. */
+    private class Worker {
+        /** The machine. */
+        private final Machine _machine = _template.copy();
+        /** Applies settings lines to _machine. */
+        private final Main _parser = new Main(_machine, null, null);
+        /** Converts message lines. */
+        private final MessageLexer _lexer =
+            new MessageLexer(_machine.alphabet());
+    }
+
+    /** A run of whole segments of the input, and its conversion. */
+    private class Task implements Callable<Task> {
+
+        /** Append the line CURR[0 .. LEN-1], which is a settings line iff
+         *  SETTINGS. */
+        void add(byte[] curr, int len, boolean settings) {
+            if (_size + len > _data.length) {
+                _data = Arrays.copyOf(_data, Math.max(2 * _data.length,
+                                                      _size + len));
+            }
+            if (_lines == _ends.length) {
+                _ends = Arrays.copyOf(_ends, 2 * _lines);
+            }
+            System.arraycopy(curr, 0, _data, _size, len);
+            _size += len;
+            _ends[_lines] = settings ? -_size - 1 : _size;
+            _lines += 1;
+        }
+
+        /** Note that I hold the last line of the input. */
+        void finish() {
+            _last = true;
+        }
+
+        /** Return the number of bytes I hold. */
+        int bytes() {
+            return _size;
+        }
+
+        /** Return the number of lines I hold. */
+        int size() {
+            return _lines;
+        }
+
+        /** Return my output, once converted. */
+        CharSequence output() {
+            return _text;
+        }
+
+        /** Return the error that stopped my conversion, or null. */
+        EnigmaException error() {
+            return _error;
+        }
+
+        @Override
+        public Task call() {
+            Worker w = _workers.get();
+            String separator = System.lineSeparator();
+            int start = 0;
+            try {
+                for (int i = 0; i < _lines; i += 1) {
+                    boolean settings = _ends[i] < 0;
+                    int end = settings ? -_ends[i] - 1 : _ends[i];
+                    if (settings) {
+                        w._parser.setUp(w._machine,
+                                        new String(_data, start, end - start,
+                                                   StandardCharsets.UTF_8));
+                    } else if (end == start) {
+                        if (!_last || i < _lines - 1) {
+                            _text.append(separator);
+                        }
+                    } else {
+                        _text.append(w._lexer.convert(_data, start,
+                                                        end - start,
+                                                        w._machine));
+                        _text.append(separator);
+                    }
+                    start = end;
+                }
+            } catch (EnigmaException excp) {
+                _error = excp;
+            }
+            _data = null;
+            return this;
+        }
+
+        /** The bytes of my lines, in _data[0 .. _size-1]. */
+        private byte[] _data = new byte[_taskBytes + _taskBytes / 4];
+        /** Number of bytes in _data. */
+        private int _size;
+        /** The end of each line in _data, or -1 - the end of a settings
+         *  line. */
+        private int[] _ends = new int[64];
+        /** Number of lines. */
+        private int _lines;
+        /** True iff my last line is the last line of the input. */
+        private boolean _last;
+        /** My conversion. */
+        private final StringBuilder _text = new StringBuilder();
+        /** The error that stopped my conversion, or null. */
+        private EnigmaException _error;
+    }
+
+    /** Most tasks per thread converted or waiting to be written at
+     *  once, which bounds the memory the run uses. */
+    private static final int MAX_PENDING_PER_THREAD = 4;
+
+    /** The machine each thread copies. */
+    private final Machine _template;
+    /** Source of input. */
+    private final LineReader _input;
+    /** Destination of output. */
+    private final PrintStream _output;
+    /** Number of threads converting. */
+    private final int _threads;
+    /** Least number of bytes of input in each task. */
+    private final int _taskBytes;
+    /** The Worker of each thread. */
+    private final ThreadLocal<Worker> _workers;
+}
@@ -0,0 +1,105 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ParallelRun class.
+ *  @author Avik Samanta
+ */
+public class ParallelRunTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Several segments, with blank lines inside and between them. */
+    private static final String SEGMENTS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+        + "FROM HIS SHOULDER HIAWATHA\n"
+        + "TOOK THE CAMERA OF ROSEWOOD\n"
+        + "\n"
+        + "MADE OF SLIDING FOLDING ROSEWOOD\n"
+        + "* B Beta I II III AAAA\n"
+        + "HELLO WORLD\n"
+        + "\n\n"
+        + "* C Gamma IV V VI ZZZZ (AB)\n"
+        + "NEATLY PUT IT ALL TOGETHER\n"
+        + "IN ITS CASE IT LAY COMPACTLY\n"
+        + "* B Beta III IV I AXLE\n"
+        + "\n"
+        + "FOLDED INTO NEARLY NOTHING\n";
+
+    /** Return the output of Main on INPUT, converting it with a fresh
+     *  machine for CONFIG on THREADS threads in tasks of TASKBYTES
+     *  bytes, or sequentially if THREADS is 0.  An error is appended to
+     *  the output as "Error: " and its message. */
+    private String run(String config, String input, int threads,
+                       int taskBytes) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        Main main =
+            new Main(Main.loadConfig(config),
+                     new LineReader(new ByteArrayInputStream(
+                         input.getBytes(StandardCharsets.UTF_8))),
+                     out);
+        try {
+            if (threads == 0) {
+                main.process();
+            } else {
+                main.processParallel(threads, taskBytes);
+            }
+        } catch (EnigmaException excp) {
+            out.print("Error: " + excp.getMessage());
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Check that converting INPUT for CONFIG in parallel gives the same
+     *  output as converting it sequentially, for several numbers of
+     *  threads and task sizes. */
+    private void checkSame(String config, String input) {
+        String expected = run(config, input, 0, 0);
+        for (int threads = 1; threads <= 4; threads += 1) {
+            for (int taskBytes : new int[] { 1, 40, 100, 1 << 16 }) {
+                assertEquals(msg("parallel", "%d threads, tasks of %d",
+                                 threads, taskBytes),
+                             expected, run(config, input, threads,
+                                           taskBytes));
+            }
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSameAsSequential() throws Exception {
+        String config = navalConfig(5, 3).getPath();
+        checkSame(config, SEGMENTS);
+        checkSame(config, SEGMENTS + "\n");
+        checkSame(config, SEGMENTS + "\n\n\n");
+        checkSame(config, SEGMENTS.replace("\n", "\r\n"));
+    }
+
+    @Test
+    public void testErrorMidStream() throws Exception {
+        String config = navalConfig(5, 3).getPath();
+        String input = SEGMENTS + "* B Beta III IV AXLE\n" + SEGMENTS
+            + "\n";
+        String expected = run(config, input, 0, 0);
+        assertTrue(expected, expected.contains("Error: "));
+        assertTrue(expected.startsWith(run(config, SEGMENTS, 0, 0)));
+        checkSame(config, input);
+        checkSame(config, SEGMENTS + "HELLO\n* B Beta I II III AAAA\n"
+                  + "1NOT A LETTER\nHELLO\n\n");
+    }
+}
@@ -1,11 +1,10 @@
 package enigma;
 
-import java.util.ArrayList;
-
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
- *  to the characters of an alphabet.
+ *  to the characters of an alphabet.  The permutation and its inverse are
+ *  kept as arrays of indices.
  *  @author Avik Samanta
  */
 class Permutation {
@@ -17,67 +16,55 @@ class Permutation {
      *  Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        _perm = new ArrayList<ArrayList<Character>>();
+        _map = new int[alphabet.size()];
+        _inverse = new int[alphabet.size()];
+        for (int i = 0; i < _map.length; i += 1) {
+            _map[i] = _inverse[i] = i;
+        }
+        _cycle = new int[Math.max(1, alphabet.size())];
+        _used = new boolean[alphabet.size()];
         this.addCycle(cycles);
-        _currPerm = _perm.get(0);
     }
 
-    /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
-    public void addCycle(String cycle) {
-        if (cycle.equals("")) {
-            looseEnds(cycle);
-            return;
-        }
-        ArrayList<Character> currArr = new ArrayList<Character>();
-        for (int i = 0; i < cycle.length(); i++) {
-            char temp = cycle.charAt(i);
-            if ((temp != '(') && (temp != ')') && (temp != ' ')) {
-                currArr.add(temp);
-            }
-            if (temp == ')') {
-                _perm.add(currArr);
-                currArr = new ArrayList<Character>();
-            }
-        }
-    }
-    /** Insterts a permutation.
-     * @param currPerm
-     * */
-    private void insertPerm(String currPerm) {
-        ArrayList<Character> currArr = new ArrayList<Character>();
-        for (int j = 0; j < currPerm.length(); j++) {
-            currArr.add(currPerm.charAt(j));
-        }
-        _perm.add(currArr);
-    }
-    /** Creates a perm in the cycle for letters not in cycle.
-     * @param cycle
-     * */
-    private void looseEnds(String cycle) {
-        String words = _alphabet.getLetters();
-        for (int i = 0; i < words.length(); i++) {
-            if (cycle.indexOf(words.charAt(i)) == -1) {
-                ArrayList<Character> temp = new ArrayList<Character>();
-                temp.add(words.charAt(i));
-                _perm.add(temp);
-            }
-        }
+    /** A permutation of the indices of ALPHABET whose mapping is supplied
+     *  by a subclass, which must override permute(int), invert(int),
+     *  addCycle, and derangement. */
+    protected Permutation(Alphabet alphabet) {
+        _alphabet = alphabet;
     }
-    /** Finds the current perm for a letter.
-     * @param a
-     * */
-    private void findCurrCycle(char a) {
-        for (int i = 0; i < _perm.size(); i++) {
-            ArrayList<Character> curr = _perm.get(i);
-            if (curr.contains(a)) {
-                _currPerm = curr;
-                return;
+
+    /** Add the cycles in CYCLE, which has the same form as the CYCLES
+     *  argument to the constructor, to the permutation.  Each added cycle
+     *  c0->c1->...->cm->c0 is written (c0c1...cm).  No letter may appear
+     *  twice, whether in one cycle or in different ones, including
+     *  cycles added earlier. */
+    public void addCycle(String cycle) {
+        int len = 0;
+        for (int i = 0; i < cycle.length(); ) {
+            int c = cycle.codePointAt(i);
+            i += Character.charCount(c);
+            if (c == ')') {
+                for (int j = 0; j < len; j += 1) {
+                    int next = _cycle[(j + 1) % len];
+                    _map[_cycle[j]] = next;
+                    _inverse[next] = _cycle[j];
+                }
+                len = 0;
+            } else if (c != '(' && !Character.isWhitespace(c)) {
+                int index = _alphabet.toIndex(c);
+                if (index < 0) {
+                    throw error("character %s in cycle not in alphabet",
+                                new String(Character.toChars(c)));
+                }
+                if (_used[index]) {
+                    throw error("letter %s repeated in cycles",
+                                new String(Character.toChars(c)));
+                }
+                _used[index] = true;
+                _cycle[len] = index;
+                len += 1;
             }
         }
-        _currPerm = new ArrayList<Character>();
-        _currPerm.add(a);
-
     }
 
     /** Return the value of P modulo the size of this permutation.*/
@@ -88,18 +75,6 @@ class Permutation {
         }
         return r;
     }
-    /** Wraps the current permutation.
-     * @param p
-     * @return Wraps Current Permutation.
-     * */
-    final int currPermWrap(int p) {
-        int r = p % _currPerm.size();
-        if (r < 0) {
-            r += _currPerm.size();
-        }
-        return r;
-
-    }
 
     /** Returns the size of the alphabet I permute. */
     int size() {
@@ -111,7 +86,7 @@ class Permutation {
      *  @param p
      *  */
     int permute(int p) {
-        return wrap(p);
+        return _map[wrap(p)];
     }
     /** My real permutation method haha.
      * @param p
@@ -126,7 +101,7 @@ class Permutation {
      *  @param c
      *  */
     int invert(int c) {
-        return wrap(c);
+        return _inverse[wrap(c)];
     }
     /** My real invert method haha.
      * @param c
@@ -137,22 +112,24 @@ class Permutation {
     }
 
     /** Return the result of applying this permutation to the index of P
-     *  in ALPHABET, and converting the result to a character of ALPHABET. */
+     *  in ALPHABET, and converting the result to a character of ALPHABET.
+     *  Characters outside ALPHABET map to themselves. */
     char permute(char p) {
-        this.findCurrCycle(p);
-        int translate = _currPerm.indexOf(p);
-        translate = currPermWrap(translate + 1);
-        char result = _currPerm.get(translate);
-        return result;
+        int index = _alphabet.toInt(p);
+        if (index < 0) {
+            return p;
+        }
+        return _alphabet.toChar(permute(index));
     }
 
-    /** Return the result of applying the inverse of this permutation to C. */
+    /** Return the result of applying the inverse of this permutation to C.
+     *  Characters outside ALPHABET map to themselves. */
     char invert(char c) {
-        this.findCurrCycle(c);
-        int translate = _currPerm.indexOf(c);
-        translate = currPermWrap(translate - 1);
-        char result = _currPerm.get(translate);
-        return result;
+        int index = _alphabet.toInt(c);
+        if (index < 0) {
+            return c;
+        }
+        return _alphabet.toChar(invert(index));
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -163,16 +140,22 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        if (_currPerm.size() > 1) {
-            return true;
+        for (int i = 0; i < _map.length; i += 1) {
+            if (_map[i] == i) {
+                return false;
+            }
         }
-        return false;
+        return true;
     }
 
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
-    /** Array list of Permutations. */
-    private ArrayList<ArrayList<Character>> _perm;
-    /** Sub Permutation within _Perm. */
-    private ArrayList<Character> _currPerm;
+    /** Index of the image of each index under this permutation. */
+    private int[] _map;
+    /** Index of the image of each index under the inverse. */
+    private int[] _inverse;
+    /** Scratch space for the cycle being read by addCycle. */
+    private int[] _cycle;
+    /** True for the indices that have appeared in a cycle. */
+    private boolean[] _used;
 }
@@ -119,6 +119,49 @@ public class PermutationTest {
         assertEquals('J', q.invert('J'));
     }
 
+    @Test
+    public void testSupplementaryCharacters() {
+        String smiles = "\ud83d\ude00\ud83d\ude01\ud83d\ude02";
+        Alphabet a = new Alphabet("AB" + smiles);
+        assertEquals(5, a.size());
+        assertEquals(0x1F601, a.toCodePoint(3));
+        assertEquals(4, a.toIndex(0x1F602));
+        assertEquals(-1, a.toIndex(0x1F603));
+        Permutation p = new Permutation("(A" + smiles.substring(2, 4)
+                                        + ") (B" + smiles.substring(4)
+                                        + smiles.substring(0, 2) + ")", a);
+        assertEquals(3, p.permute(0));
+        assertEquals(0, p.permute(3));
+        assertEquals(4, p.permute(1));
+        assertEquals(2, p.permute(4));
+        assertEquals(1, p.invert(4));
+        assertTrue(p.derangement());
+    }
 
-
+    @Test
+    public void testRepeatedLetters() {
+        Alphabet a = new Alphabet("ABCD");
+        String[] bad = { "(ABA)", "(AA)", "(AB) (CA)", "(A) (A)",
+                         "(ABCDA)" };
+        for (String cycles : bad) {
+            try {
+                new Permutation(cycles, a);
+                fail("accepted " + cycles);
+            } catch (EnigmaException excp) {
+                assertEquals("letter A repeated in cycles",
+                             excp.getMessage());
+            }
+        }
+        Permutation p = new Permutation("(AB)", a);
+        try {
+            p.addCycle("(CB)");
+            fail("accepted B in a second cycle");
+        } catch (EnigmaException excp) {
+            assertEquals("letter B repeated in cycles", excp.getMessage());
+        }
+        p = new Permutation("(AB)", a);
+        p.addCycle("(CD)");
+        assertEquals(3, p.permute(2));
+        assertEquals(1, p.permute(0));
+    }
 }
@@ -13,6 +13,11 @@ class Reflector extends FixedRotor {
         super(name, perm);
         _isReflector = true;
     }
+    @Override
+    Rotor copy() {
+        return shareTables(new Reflector(name(), _permutation));
+    }
+
     @Override
     boolean reflecting() {
         return true;
@@ -0,0 +1,274 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/** A cache of converted message lines, for input that repeats the same
+ *  messages under the same settings.  An entry is keyed by the
+ *  normalized settings line, the positions of the rotors at the start of
+ *  the message, and the message's bytes, and holds the grouped output
+ *  and the positions of the rotors at its end.  A hit sets the machine's
+ *  rotors to those positions, which is exactly the state converting the
+ *  message would have left them in, and returns the output without
+ *  converting.
+ *
+ *  The cache is a segmented LRU bounded by the estimated bytes its
+ *  entries occupy.  New entries go into a probationary segment of a
+ *  fifth of the capacity; an entry found there is moved to the
+ *  protected segment, whose least recently used entries fall back into
+ *  probation when it is full, and the least recently used entries of
+ *  probation are evicted.  So a run of messages that are seen only once
+ *  cannot push out those that recur.  Entries larger than the
+ *  probationary segment are not kept.
+ *
+ *  Most messages are never repeated, and copying each into the cache
+ *  would cost more than the hits save.  So, as in TinyLFU, a message is
+ *  admitted only when a "doorkeeper", a bit set indexed by the keys'
+ *  hash codes that is cleared from time to time, shows that it has
+ *  probably been seen before.
+ *  @author Avik Samanta
+ */
+class ResultCache {
+
+    /** An empty cache holding entries of at most CAPACITY bytes in
+     *  all. */
+    ResultCache(long capacity) {
+        _probationCapacity = capacity / 5;
+        _protectedCapacity = capacity - _probationCapacity;
+    }
+
+    /** Return the output stored for the message whose UTF-8 encoding is
+     *  MSG[0 .. LEN-1] when converted by MACH, set up by the normalized
+     *  settings line SETTINGS and with its rotors as they are now, or
+     *  null if there is none.  When there is one, MACH's rotors are left
+     *  where converting the message would have left them. */
+    String get(String settings, Machine mach, byte[] msg, int len) {
+        Key probe = new Key(settings, mach.positions(), msg, len);
+        Entry entry = _protected.get(probe);
+        if (entry == null) {
+            entry = _probation.remove(probe);
+            if (entry == null) {
+                _misses += 1;
+                _missed = probe;
+                return null;
+            }
+            _probationBytes -= entry._size;
+            _protected.put(entry._key, entry);
+            _protectedBytes += entry._size;
+            while (_protectedBytes > _protectedCapacity) {
+                Entry demoted = removeEldest(_protected);
+                _protectedBytes -= demoted._size;
+                _probation.put(demoted._key, demoted);
+                _probationBytes += demoted._size;
+            }
+            trimProbation();
+        }
+        _hits += 1;
+        mach.setPositions(entry._end);
+        return entry._output;
+    }
+
+    /** Record that OUTPUT is the conversion of the message of the last
+     *  call to get, which found nothing, and that MACH has just converted
+     *  it.  The message's bytes must not have changed since then. */
+    void put(CharSequence output, Machine mach) {
+        Key missed = _missed;
+        _missed = null;
+        if (missed == null || !admit(missed._hash)) {
+            return;
+        }
+        Key key = new Key(missed, Arrays.copyOf(missed._msg, missed._len));
+        Entry entry = new Entry(key, output.toString(), mach.positions());
+        if (entry._size > _probationCapacity) {
+            _rejected += 1;
+            return;
+        }
+        Entry old = _probation.put(key, entry);
+        if (old != null) {
+            _probationBytes -= old._size;
+        }
+        _probationBytes += entry._size;
+        trimProbation();
+    }
+
+    /** Return true iff a key with hash code HASH has probably been seen
+     *  before, and record that it has now been seen. */
+    private boolean admit(int hash) {
+        int bit = (hash ^ (hash >>> 16)) & (DOORKEEPER_BITS - 1);
+        long mask = 1L << bit;
+        if ((_doorkeeper[bit >>> 6] & mask) != 0) {
+            return true;
+        }
+        _doorkeeper[bit >>> 6] |= mask;
+        _doorkeeperAdds += 1;
+        if (_doorkeeperAdds >= DOORKEEPER_BITS / 4) {
+            Arrays.fill(_doorkeeper, 0);
+            _doorkeeperAdds = 0;
+        }
+        return false;
+    }
+
+    /** Evict the least recently used entries on probation until it fits
+     *  its capacity. */
+    private void trimProbation() {
+        while (_probationBytes > _probationCapacity) {
+            _probationBytes -= removeEldest(_probation)._size;
+            _evictions += 1;
+        }
+    }
+
+    /** Remove and return the least recently used entry of SEGMENT. */
+    private static Entry removeEldest(LinkedHashMap<Key, Entry> segment) {
+        Iterator<Entry> eldest = segment.values().iterator();
+        Entry result = eldest.next();
+        eldest.remove();
+        return result;
+    }
+
+    /** Return the number of successful lookups so far. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the number of failed lookups so far. */
+    long misses() {
+        return _misses;
+    }
+
+    /** Return the number of entries evicted so far. */
+    long evictions() {
+        return _evictions;
+    }
+
+    /** Return the number of entries refused as too large so far. */
+    long rejected() {
+        return _rejected;
+    }
+
+    /** Return the number of entries. */
+    int size() {
+        return _probation.size() + _protected.size();
+    }
+
+    /** Return the estimated size of my entries, in bytes. */
+    long bytes() {
+        return _probationBytes + _protectedBytes;
+    }
+
+    /** Return a one-line summary of my use. */
+    String summary() {
+        long lookups = _hits + _misses;
+        return String.format("result cache: %d hits, %d misses (%.1f%% "
+                             + "hits), %d entries, %d bytes, %d evicted, "
+                             + "%d too large", _hits, _misses,
+                             lookups == 0 ? 0.0 : 100.0 * _hits / lookups,
+                             size(), bytes(), _evictions, _rejected);
+    }
+
+    /** The identity of a message: its settings line, starting rotor
+     *  positions, and bytes. */
+    private static final class Key {
+
+        /** The key for the message MSG[0 .. LEN-1] under the settings
+         *  line SETTINGS from rotor positions START. */
+        Key(String settings, int[] start, byte[] msg, int len) {
+            _settings = settings;
+            _start = start;
+            _msg = msg;
+            _len = len;
+            int hash = settings.hashCode() * 31 + Arrays.hashCode(start);
+            for (int i = 0; i < len; i += 1) {
+                hash = hash * 31 + msg[i];
+            }
+            _hash = hash;
+        }
+
+        /** A key like KEY, but whose message is MSG. */
+        Key(Key key, byte[] msg) {
+            _settings = key._settings;
+            _start = key._start;
+            _msg = msg;
+            _len = key._len;
+            _hash = key._hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return _hash == other._hash && _len == other._len
+                && Arrays.equals(_msg, 0, _len, other._msg, 0, _len)
+                && Arrays.equals(_start, other._start)
+                && _settings.equals(other._settings);
+        }
+
+        /** Normalized settings line. */
+        private final String _settings;
+        /** Rotor positions at the start of the message. */
+        private final int[] _start;
+        /** The message is _msg[0 .. _len-1]. */
+        private final byte[] _msg;
+        /** Length of the message. */
+        private final int _len;
+        /** My hash code. */
+        private final int _hash;
+    }
+
+    /** A cached conversion. */
+    private static final class Entry {
+
+        /** The conversion OUTPUT of the message KEY, which left the
+         *  rotors at END. */
+        Entry(Key key, String output, int[] end) {
+            _key = key;
+            _output = output;
+            _end = end;
+            _size = ENTRY_OVERHEAD + key._len + 2L * output.length()
+                + 8L * end.length;
+        }
+
+        /** The message converted. */
+        private final Key _key;
+        /** Its conversion. */
+        private final String _output;
+        /** Rotor positions at its end. */
+        private final int[] _end;
+        /** Estimated bytes occupied by me, my key, and their parts. */
+        private final long _size;
+    }
+
+    /** Estimated bytes of object headers, references, and map nodes in
+     *  an entry, beyond its message, output, and positions. */
+    private static final long ENTRY_OVERHEAD = 200;
+
+    /** Number of bits in the doorkeeper, a power of two. */
+    private static final int DOORKEEPER_BITS = 1 << 20;
+
+    /** Capacities of the probationary and protected segments, in
+     *  bytes. */
+    private final long _probationCapacity, _protectedCapacity;
+    /** Estimated bytes in the probationary and protected segments. */
+    private long _probationBytes, _protectedBytes;
+    /** The probationary and protected segments, least recently used
+     *  first. */
+    private final LinkedHashMap<Key, Entry>
+        _probation = new LinkedHashMap<>(16, 0.75f, true),
+        _protected = new LinkedHashMap<>(16, 0.75f, true);
+    /** Bits set for the hash codes of keys seen since it was last
+     *  cleared. */
+    private final long[] _doorkeeper = new long[DOORKEEPER_BITS / 64];
+    /** Number of bits set in _doorkeeper. */
+    private int _doorkeeperAdds;
+    /** The key of the last failed lookup, if not yet put. */
+    private Key _missed;
+    /** Counts of hits, misses, evictions, and entries refused. */
+    private long _hits, _misses, _evictions, _rejected;
+}
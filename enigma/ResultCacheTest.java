@@ -0,0 +1,97 @@
+package enigma;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ResultCache class.
+ *  @author Avik Samanta
+ */
+public class ResultCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    /** Settings line used in these tests. */
+    private static final String SETTINGS = "* B Beta I II III AAZV (AQ)";
+
+    /** Return a machine with the naval rotors B, Beta, I, II, and III,
+     *  set up by SETTINGS. */
+    private Machine machine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new FixedRotor("Beta",
+                                  new Permutation(NAVALA.get("Beta"),
+                                                  UPPER)));
+        rotors.add(new MovingRotor("I", new Permutation(NAVALA.get("I"),
+                                                        UPPER), "Q"));
+        rotors.add(new MovingRotor("II", new Permutation(NAVALA.get("II"),
+                                                         UPPER), "E"));
+        rotors.add(new MovingRotor("III",
+                                   new Permutation(NAVALA.get("III"),
+                                                   UPPER), "V"));
+        Machine mach = new Machine(UPPER, 5, 3, rotors);
+        mach.insertRotors(new String[] { "B", "Beta", "I", "II", "III" });
+        mach.setRotors("AAZV");
+        mach.setPlugboard(new Permutation("(AQ)", UPPER));
+        return mach;
+    }
+
+    /** Return the output for MSG from CACHE with MACH and LEXER, converting
+     *  it and offering the result to CACHE if it is not there. */
+    private String convert(ResultCache cache, Machine mach,
+                           MessageLexer lexer, String msg) {
+        byte[] bytes = msg.getBytes(StandardCharsets.UTF_8);
+        String result = cache.get(SETTINGS, mach, bytes, bytes.length);
+        if (result == null) {
+            CharSequence converted = lexer.convert(bytes, bytes.length, mach);
+            cache.put(converted, mach);
+            result = converted.toString();
+        }
+        return result;
+    }
+
+    @Test
+    public void testHitMatchesConversion() {
+        String msg = "STATUS REPORT NOTHING TO REPORT";
+        Machine plain = machine();
+        MessageLexer lexer = new MessageLexer(UPPER);
+        String expected = lexer.convert(msg, plain).toString();
+        String next = lexer.convert(msg, plain).toString();
+        ResultCache cache = new ResultCache(1 << 20);
+        for (int k = 0; k < 3; k += 1) {
+            Machine mach = machine();
+            assertEquals(expected, convert(cache, mach, lexer, msg));
+            assertEquals(next, convert(cache, mach, lexer, msg));
+            assertEquals(plain.returnSettings(), mach.returnSettings());
+        }
+        assertEquals(4, cache.misses());
+        assertEquals(2, cache.hits());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testBounded() {
+        ResultCache cache = new ResultCache(20000);
+        MessageLexer lexer = new MessageLexer(UPPER);
+        for (int rounds = 0; rounds < 2; rounds += 1) {
+            for (int k = 0; k < 500; k += 1) {
+                Machine mach = machine();
+                convert(cache, mach, lexer, "MESSAGE " + (char) ('A' + k % 26)
+                        + (char) ('A' + k / 26));
+            }
+        }
+        assertTrue(cache.bytes() <= 20000);
+        assertTrue(cache.size() > 0);
+        assertTrue(cache.evictions() > 0);
+    }
+}
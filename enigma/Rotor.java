@@ -65,12 +65,16 @@ class Rotor {
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
+        if (!_compiled) {
+            compile();
+        }
+        if (_forward != null && !Main.verbose()) {
+            return _forward[_setting * _size + p];
+        }
         int result = (p + _setting) % _alphabet.size();
-        char convert = _alphabet.toChar(result);
-        convert = _permutation.permute(convert);
-        result = _alphabet.toInt(convert);
+        result = _permutation.permute(result);
         if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
+            System.err.printf("%c -> ", alphabet().toCodePoint(result));
         }
         result = (result - _setting);
         if (result < 0) {
@@ -83,12 +87,16 @@ class Rotor {
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
+        if (!_compiled) {
+            compile();
+        }
+        if (_backward != null && !Main.verbose()) {
+            return _backward[_setting * _size + e];
+        }
         int result = (e + _setting) % _alphabet.size();
-        char convert = _alphabet.toChar(result);
-        convert = _permutation.invert(convert);
-        result = _alphabet.toInt(convert);
+        result = _permutation.invert(result);
         if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
+            System.err.printf("%c -> ", alphabet().toCodePoint(result));
         }
         result = (result - _setting);
         if (result < 0) {
@@ -98,6 +106,37 @@ class Rotor {
         return result;
     }
 
+    /** Fill in _forward and _backward, if my alphabet is small enough and
+     *  they are not filled in already: for each setting S and input P,
+     *  entry S * size() + P holds the result of convertForward(P) or
+     *  convertBackward(P) at setting S.  Done on first conversion, or
+     *  ahead of time so that copies can share the tables. */
+    void compile() {
+        if (_compiled) {
+            return;
+        }
+        _compiled = true;
+        _size = size();
+        if (_size > TABLE_LIMIT) {
+            return;
+        }
+        byte[] forward = new byte[_size * _size];
+        byte[] backward = new byte[_size * _size];
+        for (int s = 0; s < _size; s += 1) {
+            for (int p = 0; p < _size; p += 1) {
+                int contact = (p + s) % _size;
+                forward[s * _size + p] =
+                    (byte) _permutation.wrap(_permutation.permute(contact)
+                                             - s);
+                backward[s * _size + p] =
+                    (byte) _permutation.wrap(_permutation.invert(contact)
+                                             - s);
+            }
+        }
+        _forward = forward;
+        _backward = backward;
+    }
+
     /** Returns the positions of the notches, as a string giving the letters
      *  on the ring at which they occur. */
     String notches() {
@@ -107,17 +146,61 @@ class Rotor {
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
-        for (int i = 0; i < _notches.length(); i++) {
-            if (_setting == _alphabet.toInt(_notches.charAt(i))) {
+        for (int i = 0; i < _notches.length(); ) {
+            int c = _notches.codePointAt(i);
+            if (_setting == _alphabet.toIndex(c)) {
                 return true;
             }
+            i += Character.charCount(c);
         }
         return false;
     }
 
+    /** Return the number of times I must advance (as a moving rotor,
+     *  one position at a time) before atNotch() is true, which is 0 if it
+     *  is true now, or -1 if I have no notches. */
+    int stepsToNotch() {
+        int result = -1;
+        int size = _alphabet.size();
+        for (int i = 0; i < _notches.length(); ) {
+            int c = _notches.codePointAt(i);
+            int notch = _alphabet.toIndex(c);
+            if (notch >= 0) {
+                int steps = Math.floorMod(notch - _setting, size);
+                if (result < 0 || steps < result) {
+                    result = steps;
+                }
+            }
+            i += Character.charCount(c);
+        }
+        return result;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
+    /** Return a new rotor like me at setting 0.  The new rotor shares my
+     *  permutation, which must not be modified afterwards, and my
+     *  conversion tables, if I have compiled them. */
+    Rotor copy() {
+        Rotor result = new Rotor(_name, _permutation);
+        result._notches = _notches;
+        return shareTables(result);
+    }
+
+    /** Give COPY, a new rotor with my permutation, my conversion tables
+     *  if I have compiled them, and return it.  The tables depend only on
+     *  the permutation. */
+    protected Rotor shareTables(Rotor copy) {
+        if (_compiled) {
+            copy._compiled = true;
+            copy._size = _size;
+            copy._forward = _forward;
+            copy._backward = _backward;
+        }
+        return copy;
+    }
+
     /** Returns the rotor's name. */
     @Override
     public String toString() {
@@ -152,5 +235,19 @@ class Rotor {
     /** The Notches. */
     protected String _notches;
 
+    /** Largest alphabet for which rotors convert by table lookup.  The
+     *  tables for one rotor take 2 * size() * size() bytes, so beyond
+     *  this they would crowd the processor's caches, and rotors fall back
+     *  to arithmetic on their permutations. */
+    static final int TABLE_LIMIT = 128;
+
+    /** True once compile has been called. */
+    private boolean _compiled;
+    /** Size of my alphabet, once compiled. */
+    private int _size;
+    /** Results of convertForward and convertBackward for each setting and
+     *  input, or null if my alphabet is too large. */
+    private byte[] _forward, _backward;
+
 
 }
@@ -0,0 +1,328 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** A sparse index into an output file of Main, from which any range of
+ *  it can be decrypted without decrypting everything before it.  Main
+ *  writes one with --index=K.  The index records the full state of the
+ *  machine (its settings line, which names the rotors and plugboard, and
+ *  the positions of its rotors) and the output byte offset and letter
+ *  number where that state applies, every K letters and at every
+ *  settings line.  To decrypt a range, the machine is restored from the
+ *  last record at or before its start and run forward from there,
+ *  restoring again at each later record it passes.
+ *
+ *  The index is a UTF-8 text file.  Its first line is MAGIC followed by
+ *  K.  Each distinct settings line appears once, as "S ID LINE", before
+ *  the first record to use it, and each record is a line
+ *  "E OFFSET LETTER ID POSITIONS", with POSITIONS as given by
+ *  Machine.returnSettings.  Usage:
+ *
+ *      java enigma.SeekIndex [--letters] CONFIG CIPHERTEXT FROM TO
+ *
+ *  prints the decryption of bytes FROM up to TO of CIPHERTEXT (or, with
+ *  --letters, of its letters FROM up to TO), using CIPHERTEXT.idx.
+ *  @author Avik Samanta
+ */
+class SeekIndex {
+
+    /** First word of an index file. */
+    static final String MAGIC = "enigma-index 1";
+
+    /** Decrypt the range of a ciphertext described by ARGS. */
+    public static void main(String... args) {
+        try {
+            boolean letters = args.length > 0 && args[0].equals("--letters");
+            int k = letters ? 1 : 0;
+            if (args.length - k != 4) {
+                throw error("Usage: java enigma.SeekIndex [--letters] "
+                            + "CONFIG CIPHERTEXT FROM TO");
+            }
+            Machine mach = Main.loadConfig(args[k]);
+            File ciphertext = new File(args[k + 1]);
+            SeekIndex index =
+                read(new File(args[k + 1] + Main.INDEX_SUFFIX));
+            long from = Long.parseLong(args[k + 2]),
+                to = Long.parseLong(args[k + 3]);
+            System.out.print(letters
+                             ? index.decryptLetters(mach, ciphertext, from,
+                                                    to)
+                             : index.decrypt(mach, ciphertext, from, to));
+            System.out.flush();
+            return;
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad range%n");
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the index in FILE. */
+    static SeekIndex read(File file) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+        if (lines.isEmpty() || !lines.get(0).startsWith(MAGIC + " ")) {
+            throw error("%s is not an index file", file);
+        }
+        ArrayList<String> settings = new ArrayList<>();
+        int n = 0;
+        for (String line : lines) {
+            n += line.startsWith("E ") ? 1 : 0;
+        }
+        SeekIndex result = new SeekIndex(n);
+        n = 0;
+        try {
+            for (String line : lines.subList(1, lines.size())) {
+                String[] fields = line.split(" ", 5);
+                if (fields[0].equals("S")) {
+                    if (Integer.parseInt(fields[1]) != settings.size()) {
+                        throw error("%s is corrupt", file);
+                    }
+                    settings.add(line.substring(line.indexOf(' ', 2) + 1));
+                } else if (fields[0].equals("E") && fields.length == 5) {
+                    result._offsets[n] = Long.parseLong(fields[1]);
+                    result._letters[n] = Long.parseLong(fields[2]);
+                    result._settings[n] =
+                        settings.get(Integer.parseInt(fields[3]));
+                    result._positions[n] = fields[4];
+                    n += 1;
+                } else {
+                    throw error("%s is corrupt", file);
+                }
+            }
+        } catch (NumberFormatException | IndexOutOfBoundsException excp) {
+            throw error("%s is corrupt", file);
+        }
+        if (n == 0) {
+            throw error("%s is empty", file);
+        }
+        return result;
+    }
+
+    /** An index with room for N records. */
+    private SeekIndex(int n) {
+        _offsets = new long[n];
+        _letters = new long[n];
+        _settings = new String[n];
+        _positions = new String[n];
+    }
+
+    /** Return the number of records in me. */
+    int size() {
+        return _offsets.length;
+    }
+
+    /** Return the decryption with MACH of bytes FROM up to TO of
+     *  CIPHERTEXT, the output file I index.  Blanks and line breaks are
+     *  kept, and a character only partly in the range is left out. */
+    String decrypt(Machine mach, File ciphertext, long from, long to) {
+        return scan(mach, ciphertext, last(_offsets, from), from, to, false);
+    }
+
+    /** Return the decryption with MACH of letters FROM up to TO of
+     *  CIPHERTEXT, the output file I index, with no blanks or line
+     *  breaks. */
+    String decryptLetters(Machine mach, File ciphertext, long from,
+                          long to) {
+        return scan(mach, ciphertext, last(_letters, from), from, to, true);
+    }
+
+    /** Return the index of the last element of the non-decreasing array
+     *  A that is at most X, or 0 if there is none. */
+    private static int last(long[] a, long x) {
+        int lo = 0, hi = a.length;
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] <= x) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Return the decryption with MACH of CIPHERTEXT from record START
+     *  on, keeping only the part from FROM up to TO, measured in letters
+     *  if LETTERS and otherwise in bytes. */
+    private String scan(Machine mach, File ciphertext, int start, long from,
+                        long to, boolean letters) {
+        Main parser = new Main(mach, null, null);
+        Alphabet alpha = mach.alphabet();
+        StringBuilder result = new StringBuilder();
+        try (RandomAccessFile file = new RandomAccessFile(ciphertext, "r")) {
+            long offset = _offsets[start], letter = _letters[start];
+            file.seek(offset);
+            InputStream in =
+                new BufferedInputStream(Channels.newInputStream(
+                                            file.getChannel()),
+                                        Main.OUTPUT_BUFFER);
+            int next = start;
+            byte[] bytes = new byte[Utf8.MAX_WIDTH];
+            while (true) {
+                while (next < _offsets.length && _offsets[next] <= offset) {
+                    restore(parser, mach, next);
+                    next += 1;
+                }
+                if ((letters ? letter : offset) >= to) {
+                    break;
+                }
+                int lead = in.read();
+                if (lead < 0) {
+                    break;
+                }
+                bytes[0] = (byte) lead;
+                int n = 1 + in.readNBytes(bytes, 1,
+                                          Math.max(1, Utf8.length(lead)) - 1);
+                int c = Utf8.decode(bytes, 0, n);
+                if (c < 0) {
+                    throw error("malformed UTF-8 in %s", ciphertext);
+                }
+                boolean keep = !letters && offset >= from && offset + n <= to;
+                offset += n;
+                int index = alpha.toIndex(c);
+                if (index >= 0) {
+                    int p = alpha.toCodePoint(mach.convert(index));
+                    if (keep || letters && letter >= from) {
+                        result.appendCodePoint(p);
+                    }
+                    letter += 1;
+                } else if (keep) {
+                    result.appendCodePoint(c);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", ciphertext);
+        }
+        return result.toString();
+    }
+
+    /** Put MACH in the state of record K, parsing its settings with
+     *  PARSER. */
+    private void restore(Main parser, Machine mach, int k) {
+        parser.setUp(mach, _settings[k]);
+        String positions = _positions[k];
+        mach.setRotors(positions.substring(positions.offsetByCodePoints(0,
+                                                                        1)));
+    }
+
+    /** Writes an index while Main produces the output it indexes.  Main
+     *  reports every settings line it applies and every byte it prints,
+     *  and MessageLexer reports each letter just before converting it. */
+    static class IndexWriter {
+
+        /** A writer of an index to FILE, with records every INTERVAL
+         *  letters. */
+        IndexWriter(File file, long interval) {
+            try {
+                _out = Files.newBufferedWriter(file.toPath(),
+                                               StandardCharsets.UTF_8);
+                _out.write(MAGIC + " " + interval + "\n");
+            } catch (IOException excp) {
+                throw error("could not open %s", file);
+            }
+            _file = file;
+            _interval = interval;
+            _untilRecord = interval;
+        }
+
+        /** Record that MACH has just been set from the normalized
+         *  settings line LINE. */
+        void settings(String line, Machine mach) {
+            Integer id = _ids.get(line);
+            if (id == null) {
+                id = _ids.size();
+                _ids.put(line, id);
+                write("S " + id + " " + line + "\n");
+            }
+            _settingsId = id;
+            record(_offset, mach);
+            _untilRecord = _interval;
+        }
+
+        /** Note that MACH is about to convert a letter whose output will
+         *  start LINEBYTES bytes into the current line. */
+        void letter(int lineBytes, Machine mach) {
+            _untilRecord -= 1;
+            if (_untilRecord == 0) {
+                record(_offset + lineBytes, mach);
+                _untilRecord = _interval;
+            }
+            _letters += 1;
+        }
+
+        /** Note that BYTES more bytes have been printed. */
+        void advance(long bytes) {
+            _offset += bytes;
+        }
+
+        /** Finish the index. */
+        void close() {
+            try {
+                _out.close();
+            } catch (IOException excp) {
+                throw error("could not write %s", _file);
+            }
+        }
+
+        /** Write a record of MACH's state at output byte OFFSET. */
+        private void record(long offset, Machine mach) {
+            write("E " + offset + " " + _letters + " " + _settingsId + " "
+                  + mach.returnSettings() + "\n");
+        }
+
+        /** Write TEXT to the index. */
+        private void write(String text) {
+            try {
+                _out.write(text);
+            } catch (IOException excp) {
+                throw error("could not write %s", _file);
+            }
+        }
+
+        /** The index file. */
+        private final File _file;
+        /** Its contents. */
+        private final Writer _out;
+        /** Letters between records. */
+        private final long _interval;
+        /** Letters to go before the next record. */
+        private long _untilRecord;
+        /** Output bytes printed before the current line. */
+        private long _offset;
+        /** Letters converted so far. */
+        private long _letters;
+        /** Identifiers of the settings lines written so far. */
+        private final HashMap<String, Integer> _ids = new HashMap<>();
+        /** Identifier of the settings line in effect. */
+        private int _settingsId;
+    }
+
+    /** Output byte offsets of my records. */
+    private final long[] _offsets;
+    /** Numbers of the letters at those offsets. */
+    private final long[] _letters;
+    /** The settings lines in effect at my records. */
+    private final String[] _settings;
+    /** The rotor positions at my records. */
+    private final String[] _positions;
+}
@@ -0,0 +1,155 @@
+package enigma;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SeekIndex class.
+ *  @author Avik Samanta
+ */
+public class SeekIndexTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings lines of the segments of the input. */
+    private static final String[] SETTINGS = {
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        "* C Gamma IV V VI ZZZZ (AB)",
+        "* B Beta I II III AAAA",
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+    };
+
+    /** Lines of plaintext from which the segments are drawn. */
+    private static final String[] TEXT = {
+        "FROM HIS SHOULDER HIAWATHA",
+        "TOOK THE CAMERA OF ROSEWOOD",
+        "",
+        "MADE OF SLIDING FOLDING ROSEWOOD",
+        "NEATLY PUT IT ALL TOGETHER",
+        "IN ITS CASE IT LAY COMPACTLY",
+    };
+
+    /** Number of letters between index records. */
+    private static final int INTERVAL = 7;
+
+    /** Return an input for Main with the segments of SETTINGS, using
+     *  RANDOM to choose their lines from TEXT. */
+    private static String input(Random random) {
+        StringBuilder result = new StringBuilder();
+        for (String settings : SETTINGS) {
+            result.append(settings).append('\n');
+            for (int n = 2 + random.nextInt(6); n > 0; n -= 1) {
+                result.append(TEXT[random.nextInt(TEXT.length)]).append('\n');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the letters of the messages in INPUT, in order. */
+    private static String letters(String input) {
+        StringBuilder result = new StringBuilder();
+        for (String line : input.split("\n")) {
+            if (!line.startsWith("*")) {
+                result.append(line.replace(" ", ""));
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return OUTPUT with its letters replaced in order by PLAIN, which
+     *  is what decrypting all of it gives. */
+    private static String decryption(String output, String plain) {
+        StringBuilder result = new StringBuilder(output);
+        for (int i = 0, k = 0; i < result.length(); i += 1) {
+            if (UPPER.contains(result.charAt(i))) {
+                result.setCharAt(i, plain.charAt(k));
+                k += 1;
+            }
+        }
+        return result.toString();
+    }
+
+    /** Run Main with --index=INTERVAL in a separate process on the
+     *  files CONFIG, INPUT, and OUTPUT, so that the option does not stay
+     *  in effect for other tests. */
+    private static void runIndexed(File config, File input, File output)
+        throws Exception {
+        String java = new File(new File(System.getProperty("java.home"),
+                                        "bin"), "java").getPath();
+        ProcessBuilder builder =
+            new ProcessBuilder(java, "-cp",
+                               System.getProperty("java.class.path"),
+                               Main.class.getName(), "--index=" + INTERVAL,
+                               config.getPath(), input.getPath(),
+                               output.getPath());
+        builder.inheritIO();
+        assertEquals(0, builder.start().waitFor());
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRandomSlices() throws Exception {
+        Random random = new Random(61);
+        File config = navalConfig(5, 3);
+        File input = File.createTempFile("seek", ".in");
+        File output = File.createTempFile("seek", ".out");
+        File indexFile = new File(output.getPath() + Main.INDEX_SUFFIX);
+        try {
+            String text = input(random);
+            Files.write(input.toPath(),
+                        text.getBytes(StandardCharsets.UTF_8));
+            runIndexed(config, input, output);
+            String cipher = new String(Files.readAllBytes(output.toPath()),
+                                       StandardCharsets.UTF_8);
+            String plain = letters(text);
+            String full = decryption(cipher, plain);
+            SeekIndex index = SeekIndex.read(indexFile);
+            assertTrue(index.size() > plain.length() / INTERVAL);
+
+            Machine mach = Main.loadConfig(config.getPath());
+            assertEquals(full, index.decrypt(mach, output, 0,
+                                             cipher.length()));
+            assertEquals(plain, index.decryptLetters(mach, output, 0,
+                                                     plain.length()));
+            for (int k = 0; k < 200; k += 1) {
+                int from = random.nextInt(cipher.length() + 1),
+                    to = from + random.nextInt(cipher.length() + 1 - from);
+                assertEquals(msg("bytes", "%d to %d", from, to),
+                             full.substring(from, to),
+                             index.decrypt(mach, output, from, to));
+                from = random.nextInt(plain.length() + 1);
+                to = from + random.nextInt(plain.length() + 1 - from);
+                assertEquals(msg("letters", "%d to %d", from, to),
+                             plain.substring(from, to),
+                             index.decryptLetters(mach, output, from, to));
+            }
+
+            byte[] damaged = cipher.getBytes(StandardCharsets.UTF_8);
+            damaged[damaged.length / 2] = (byte) 0xf8;
+            Files.write(output.toPath(), damaged);
+            try {
+                index.decrypt(mach, output, 0, damaged.length);
+                fail("decrypted malformed UTF-8");
+            } catch (EnigmaException excp) {
+                assertEquals("malformed UTF-8 in " + output,
+                             excp.getMessage());
+            }
+        } finally {
+            input.delete();
+            output.delete();
+            indexFile.delete();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package enigma;
+
+/** A snapshot of the part of a machine's state that a settings line
+ *  determines: which rotor occupies each slot, where each rotor starts,
+ *  and the plugboard.  Applying a snapshot to a machine only copies
+ *  arrays, so parsing a settings line once is enough.
+ *  @author Avik Samanta
+ */
+class Settings {
+
+    /** A snapshot for the settings line LINE placing SLOTS[k] in slot k
+     *  at setting POSITIONS[k], with plugboard PLUGBOARD.  The arrays are
+     *  copied. */
+    Settings(String line, Rotor[] slots, int[] positions,
+             FixedRotor plugboard) {
+        _line = line;
+        _slots = slots.clone();
+        _positions = positions.clone();
+        _plugboard = plugboard;
+    }
+
+    /** Return the (normalized) settings line I was made from. */
+    String line() {
+        return _line;
+    }
+
+    /** Return the number of slots I describe. */
+    int numRotors() {
+        return _slots.length;
+    }
+
+    /** Return the rotor in slot K. */
+    Rotor rotor(int k) {
+        return _slots[k];
+    }
+
+    /** Return the initial setting of the rotor in slot K. */
+    int position(int k) {
+        return _positions[k];
+    }
+
+    /** Return the plugboard. */
+    FixedRotor plugboard() {
+        return _plugboard;
+    }
+
+    /** The settings line. */
+    private final String _line;
+    /** Rotors in slot order, reflector first. */
+    private final Rotor[] _slots;
+    /** Initial settings of the rotors in _slots. */
+    private final int[] _positions;
+    /** The plugboard. */
+    private final FixedRotor _plugboard;
+}
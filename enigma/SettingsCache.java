@@ -0,0 +1,90 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded cache of parsed settings lines, discarding the least
+ *  recently used entry when full.  Keys are settings lines in the
+ *  normalized form produced by normalize.
+ *  @author Avik Samanta
+ */
+class SettingsCache {
+
+    /** Default number of entries. */
+    static final int DEFAULT_CAPACITY = 64;
+
+    /** An empty cache holding at most CAPACITY entries. */
+    SettingsCache(int capacity) {
+        _capacity = capacity;
+        _entries = new LinkedHashMap<String, Settings>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,
+                                                Settings> eldest) {
+                return size() > _capacity;
+            }
+        };
+    }
+
+    /** An empty cache with DEFAULT_CAPACITY entries. */
+    SettingsCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /** Return LINE with leading and trailing whitespace removed and every
+     *  other run of whitespace replaced by a single blank. */
+    static String normalize(String line) {
+        StringBuilder result = new StringBuilder(line.length());
+        boolean blank = false;
+        for (int i = 0; i < line.length(); i += 1) {
+            char ch = line.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                blank = result.length() > 0;
+            } else {
+                if (blank) {
+                    result.append(' ');
+                    blank = false;
+                }
+                result.append(ch);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the snapshot stored under KEY, or null if there is none. */
+    Settings get(String key) {
+        Settings result = _entries.get(key);
+        if (result == null) {
+            _misses += 1;
+        } else {
+            _hits += 1;
+        }
+        return result;
+    }
+
+    /** Store SETTINGS under its line. */
+    void put(Settings settings) {
+        _entries.put(settings.line(), settings);
+    }
+
+    /** Return the number of entries. */
+    int size() {
+        return _entries.size();
+    }
+
+    /** Return the number of successful lookups so far. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the number of failed lookups so far. */
+    long misses() {
+        return _misses;
+    }
+
+    /** Maximum number of entries. */
+    private final int _capacity;
+    /** Entries in access order, least recently used first. */
+    private final LinkedHashMap<String, Settings> _entries;
+    /** Lookup counts. */
+    private long _hits, _misses;
+}
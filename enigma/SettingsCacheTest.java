@@ -0,0 +1,95 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the SettingsCache class.
+ *  @author Avik Samanta
+ */
+public class SettingsCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a snapshot labeled with LINE.  The cache looks only at
+     *  the line, so the snapshot describes no slots. */
+    private static Settings settings(String line) {
+        return new Settings(line, new Rotor[0], new int[0], null);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testEviction() {
+        SettingsCache cache = new SettingsCache(3);
+        cache.put(settings("* B I AA"));
+        cache.put(settings("* B I AB"));
+        cache.put(settings("* B I AC"));
+        assertEquals(3, cache.size());
+        cache.put(settings("* B I AD"));
+        assertEquals(3, cache.size());
+        assertNull(cache.get("* B I AA"));
+        assertNotNull(cache.get("* B I AB"));
+        assertNotNull(cache.get("* B I AD"));
+
+        Settings again = settings("* B I AD");
+        cache.put(again);
+        assertEquals(3, cache.size());
+        assertSame(again, cache.get("* B I AD"));
+    }
+
+    @Test
+    public void testRefreshOnHit() {
+        SettingsCache cache = new SettingsCache(3);
+        Settings a = settings("* B I AA");
+        cache.put(a);
+        cache.put(settings("* B I AB"));
+        cache.put(settings("* B I AC"));
+        assertSame(a, cache.get("* B I AA"));
+        cache.put(settings("* B I AD"));
+        assertSame(a, cache.get("* B I AA"));
+        assertNull(cache.get("* B I AB"));
+        assertNotNull(cache.get("* B I AC"));
+        cache.put(settings("* B I AE"));
+        assertNull(cache.get("* B I AD"));
+        assertSame(a, cache.get("* B I AA"));
+    }
+
+    @Test
+    public void testCounters() {
+        SettingsCache cache = new SettingsCache();
+        assertEquals(0, cache.hits());
+        assertEquals(0, cache.misses());
+        assertNull(cache.get("* B I AA"));
+        cache.put(settings("* B I AA"));
+        cache.get("* B I AA");
+        cache.get("* B I AA");
+        cache.get("* B I AB");
+        assertEquals(2, cache.hits());
+        assertEquals(2, cache.misses());
+        for (int i = 0; i <= SettingsCache.DEFAULT_CAPACITY; i += 1) {
+            cache.put(settings("* B I " + i));
+        }
+        assertEquals(SettingsCache.DEFAULT_CAPACITY, cache.size());
+        assertNull(cache.get("* B I AA"));
+        assertEquals(3, cache.misses());
+    }
+
+    @Test
+    public void testNormalize() {
+        assertEquals("* B Beta III IV I AXLE (HQ) (EX)",
+                     SettingsCache.normalize(
+                         "  *  B Beta\tIII   IV I AXLE (HQ)\t \t(EX) \r"));
+        assertEquals("* B Beta III IV I AXLE",
+                     SettingsCache.normalize("* B Beta III IV I AXLE"));
+        assertEquals("", SettingsCache.normalize(""));
+        assertEquals("", SettingsCache.normalize(" \t "));
+        assertEquals("*", SettingsCache.normalize("*\n"));
+        assertEquals("(AB)(CD)", SettingsCache.normalize("(AB)(CD)"));
+    }
+}
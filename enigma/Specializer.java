@@ -0,0 +1,187 @@
+package enigma;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** Builds, for each choice of rotors, a method handle that passes one
+ *  letter through the rotors, the reflector, and back, without stepping
+ *  (the plugboard, which typically changes with every settings line, is
+ *  left to the caller).  Its type is (int, Rotor[])int: given a
+ *  letter index and the machine's slots, from which it reads only the
+ *  rotors' current settings, it returns the converted index.
+ *
+ *  The handle is a chain of one stage per rotor pass, unrolled, each
+ *  bound to a lookup table of that rotor's wiring at every setting, so
+ *  the generic path's loops over the slots, virtual calls, and checks of
+ *  Main.verbose all disappear.  Handles depend only on the rotors'
+ *  permutations, which machine copies share, so they are cached and
+ *  reused by every machine with the same configuration.  Alphabets larger
+ *  than Rotor.TABLE_LIMIT are not specialized; Machine then uses its
+ *  generic path.
+ *
+ *  Building a handle takes hundreds of microseconds, and the passes are
+ *  bound by the latency of their dependent table loads either way, so
+ *  specialization pays only for long runs over few rotor orders, and is
+ *  off unless enabled.
+ *  @author Avik Samanta
+ */
+class Specializer {
+
+    /** Most configurations whose handles are cached. */
+    static final int CAPACITY = 64;
+
+    /** Return the handle for a machine whose slots hold SLOTS, or null if
+     *  there is none (because specialization is disabled or the alphabet
+     *  is too large). */
+    static MethodHandle kernel(Rotor[] slots) {
+        if (!_enabled || slots[0].size() > Rotor.TABLE_LIMIT) {
+            return null;
+        }
+        Permutation[] perms = new Permutation[slots.length];
+        for (int i = 0; i < slots.length; i += 1) {
+            perms[i] = slots[i].permutation();
+        }
+        List<Permutation> key = Arrays.asList(perms);
+        synchronized (CACHE) {
+            MethodHandle result = CACHE.get(key);
+            if (result != null) {
+                _hits += 1;
+                return result;
+            }
+        }
+        MethodHandle result = build(perms);
+        synchronized (CACHE) {
+            _misses += 1;
+            CACHE.put(key, result);
+        }
+        return result;
+    }
+
+    /** Enable specialization iff ENABLED.  It is disabled by default
+     *  (see Main's --specialize); this affects machines set up
+     *  afterwards. */
+    static void setEnabled(boolean enabled) {
+        _enabled = enabled;
+    }
+
+    /** Return the number of configurations found in the cache. */
+    static long hits() {
+        synchronized (CACHE) {
+            return _hits;
+        }
+    }
+
+    /** Return the number of configurations built. */
+    static long misses() {
+        synchronized (CACHE) {
+            return _misses;
+        }
+    }
+
+    /** Return the handle for the rotors whose permutations are PERMS,
+     *  from the reflector to the fast rotor. */
+    private static MethodHandle build(Permutation[] perms) {
+        int slots = perms.length;
+        MethodHandle result = moving(perms[slots - 1], slots - 1, true);
+        for (int i = slots - 2; i > 0; i -= 1) {
+            result = then(result, moving(perms[i], i, true));
+        }
+        result = then(result, fixed(perms[0]));
+        for (int i = 1; i < slots; i += 1) {
+            result = then(result, moving(perms[i], i, false));
+        }
+        return result;
+    }
+
+    /** Return a stage converting through PERM, forward iff FORWARD, at the
+     *  setting of the rotor in slot SLOT. */
+    private static MethodHandle moving(Permutation perm, int slot,
+                                       boolean forward) {
+        int size = perm.size();
+        byte[] table = new byte[size * size];
+        for (int s = 0; s < size; s += 1) {
+            for (int p = 0; p < size; p += 1) {
+                int contact = (p + s) % size;
+                int out = forward ? perm.permute(contact)
+                    : perm.invert(contact);
+                table[s * size + p] = (byte) perm.wrap(out - s);
+            }
+        }
+        return MethodHandles.insertArguments(ROTOR, 0, table, size, slot);
+    }
+
+    /** Return a stage converting through the reflector PERM. */
+    private static MethodHandle fixed(Permutation perm) {
+        byte[] table = new byte[perm.size()];
+        for (int p = 0; p < table.length; p += 1) {
+            table[p] = (byte) perm.permute(p);
+        }
+        return MethodHandles.insertArguments(FIXED, 0, table);
+    }
+
+    /** Return the handle applying FIRST and then NEXT, both of type
+     *  (int, Rotor[])int, to the same slots. */
+    private static MethodHandle then(MethodHandle first, MethodHandle next) {
+        return MethodHandles.permuteArguments(
+            MethodHandles.collectArguments(next, 0, first), KERNEL_TYPE,
+            0, 1, 1);
+    }
+
+    /** Return TABLE[S * SIZE + C], where S is the setting of SLOTS[SLOT]. */
+    private static int rotor(byte[] table, int size, int slot, int c,
+                             Rotor[] slots) {
+        return table[slots[slot]._setting * size + c];
+    }
+
+    /** Return TABLE[C]. */
+    private static int fixed(byte[] table, int c, Rotor[] slots) {
+        return table[c];
+    }
+
+    /** The type of the handles that kernel returns. */
+    static final MethodType KERNEL_TYPE =
+        MethodType.methodType(int.class, int.class, Rotor[].class);
+
+    /** Handles for rotor and fixed. */
+    private static final MethodHandle ROTOR, FIXED;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            ROTOR = lookup.findStatic(Specializer.class, "rotor",
+                                      MethodType.methodType(
+                                          int.class, byte[].class,
+                                          int.class, int.class, int.class,
+                                          Rotor[].class));
+            FIXED = lookup.findStatic(Specializer.class, "fixed",
+                                      MethodType.methodType(
+                                          int.class, byte[].class,
+                                          int.class, Rotor[].class));
+        } catch (ReflectiveOperationException excp) {
+            throw error("cannot find specialization stages: %s", excp);
+        }
+    }
+
+    /** Cached handles, indexed by the permutations of the slots, least
+     *  recently used first. */
+    private static final LinkedHashMap<List<Permutation>, MethodHandle>
+        CACHE = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                    Map.Entry<List<Permutation>, MethodHandle> eldest) {
+                    return size() > CAPACITY;
+                }
+            };
+
+    /** True iff specialization is enabled. */
+    private static volatile boolean _enabled;
+    /** Numbers of cache hits and misses. */
+    private static long _hits, _misses;
+}
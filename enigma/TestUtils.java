@@ -1,5 +1,8 @@
 package enigma;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -126,4 +129,61 @@ class TestUtils {
         NAVALZ_MAP.put("Gamma", "EGTPLBOVFSINCUJZDXMRQAYWHK");
     }
 
+    /** The notches (after the type letter) of the naval rotors. */
+    static final HashMap<String, String> NAVAL_TYPES = new HashMap<>();
+    static {
+        NAVAL_TYPES.put("I", "MQ");
+        NAVAL_TYPES.put("II", "ME");
+        NAVAL_TYPES.put("III", "MV");
+        NAVAL_TYPES.put("IV", "MJ");
+        NAVAL_TYPES.put("V", "MZ");
+        NAVAL_TYPES.put("VI", "MZM");
+        NAVAL_TYPES.put("VII", "MZM");
+        NAVAL_TYPES.put("VIII", "MZM");
+        NAVAL_TYPES.put("Beta", "N");
+        NAVAL_TYPES.put("Gamma", "N");
+        NAVAL_TYPES.put("B", "R");
+        NAVAL_TYPES.put("C", "R");
+    }
+
+    /** Write to FILE a configuration with the upper-case alphabet,
+     *  NUMROTORS slots, PAWLS pawls, and the naval rotors NAMES (all of
+     *  them if none are given).  Return FILE. */
+    static File writeNaval(File file, int numRotors, int pawls,
+                           String... names) throws IOException {
+        if (names.length == 0) {
+            names = new String[] { "I", "II", "III", "IV", "V", "VI", "VII",
+                                   "VIII", "Beta", "Gamma", "B", "C" };
+        }
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.println(UPPER_STRING);
+            out.printf(" %d %d%n", numRotors, pawls);
+            for (String name : names) {
+                out.printf(" %s %s %s%n", name, NAVAL_TYPES.get(name),
+                           NAVALA.get(name));
+            }
+        }
+        return file;
+    }
+
+    /** Return a new temporary configuration file written by writeNaval
+     *  with NUMROTORS, PAWLS, and NAMES, which is deleted on exit. */
+    static File navalConfig(int numRotors, int pawls, String... names)
+        throws IOException {
+        File file = File.createTempFile("naval", ".conf");
+        file.deleteOnExit();
+        return writeNaval(file, numRotors, pawls, names);
+    }
+
+    /** Delete FILE and, if it is a directory, everything in it. */
+    static void deleteAll(File file) {
+        File[] contents = file.listFiles();
+        if (contents != null) {
+            for (File f : contents) {
+                deleteAll(f);
+            }
+        }
+        file.delete();
+    }
+
 }
@@ -16,7 +16,28 @@ public class UnitTest {
         }
         System.exit(textui.runClasses(PermutationTest.class,
                 MovingRotorTest.class,
-                MachineTest.class));
+                MachineTest.class,
+                MessageLexerTest.class,
+                EncryptionProcessorTest.class,
+                EnigmaCipherTest.class,
+                CribScannerTest.class,
+                CycleCatalogueTest.class,
+                ResultCacheTest.class,
+                KeySearchTest.class,
+                KeySheetTest.class,
+                ParallelRunTest.class,
+                LineReaderTest.class,
+                CheckpointTest.class,
+                BatchTest.class,
+                CorpusStatsTest.class,
+                InventoryFileTest.class,
+                NgramScorerTest.class,
+                Utf8Test.class,
+                SeekIndexTest.class,
+                ConfigWatcherTest.class,
+                AsyncChannelOutputTest.class,
+                SettingsCacheTest.class,
+                InteractiveSessionTest.class));
     }
 
 }
@@ -0,0 +1,192 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+
+/** Decoding and encoding of UTF-8, shared by everything that reads or
+ *  writes message text as bytes.  Decoding is strict: lead bytes 0x80
+ *  to 0xC1 and 0xF5 to 0xFF, overlong encodings, surrogates, and values
+ *  above 0x10FFFF are all malformed, so every code point returned is
+ *  valid and its encoding is exactly width(c) bytes long.
+ *  @author Avik Samanta
+ */
+final class Utf8 {
+
+    /** Returned by the decoders for bytes that are not UTF-8. */
+    static final int MALFORMED = -1;
+    /** Returned by the decoders for the valid start of a character that
+     *  continues past the bytes available. */
+    static final int TRUNCATED = -2;
+
+    /** Largest number of bytes in the encoding of a code point. */
+    static final int MAX_WIDTH = 4;
+
+    /** Not instantiable. */
+    private Utf8() {
+    }
+
+    /** Return the length of the sequence whose first byte is B (0 to
+     *  255), or 0 if B cannot start one. */
+    static int length(int b) {
+        return b < 0x80 ? 1 : b < 0xc2 ? 0 : b < 0xe0 ? 2 : b < 0xf0 ? 3
+            : b < 0xf5 ? 4 : 0;
+    }
+
+    /** Return true iff B (0 to 255) may follow K bytes (K >= 1) of a
+     *  sequence beginning with LEAD.  The second byte is restricted
+     *  after some leads to exclude overlongs, surrogates, and values
+     *  above 0x10FFFF. */
+    static boolean continues(int lead, int k, int b) {
+        if (k > 1) {
+            return (b & 0xc0) == 0x80;
+        }
+        switch (lead) {
+        case 0xe0:
+            return b >= 0xa0 && b <= 0xbf;
+        case 0xed:
+            return b >= 0x80 && b <= 0x9f;
+        case 0xf0:
+            return b >= 0x90 && b <= 0xbf;
+        case 0xf4:
+            return b >= 0x80 && b <= 0x8f;
+        default:
+            return (b & 0xc0) == 0x80;
+        }
+    }
+
+    /** Return the code point encoded at BYTES[I], reading nothing at or
+     *  after BYTES[LIMIT], or MALFORMED or TRUNCATED. */
+    static int decode(byte[] bytes, int i, int limit) {
+        int lead = bytes[i] & 0xff;
+        if (lead < 0x80) {
+            return lead;
+        }
+        int n = length(lead);
+        if (n == 0) {
+            return MALFORMED;
+        }
+        int c = lead & (0x7f >> n);
+        for (int k = 1; k < n; k += 1) {
+            if (i + k >= limit) {
+                return TRUNCATED;
+            }
+            int b = bytes[i + k] & 0xff;
+            if (!continues(lead, k, b)) {
+                return MALFORMED;
+            }
+            c = (c << 6) | (b & 0x3f);
+        }
+        return c;
+    }
+
+    /** Return the code point encoded at absolute position I of BYTES,
+     *  reading nothing at or after position LIMIT, or MALFORMED or
+     *  TRUNCATED.  BYTES's position is unchanged. */
+    static int decode(ByteBuffer bytes, int i, int limit) {
+        int lead = bytes.get(i) & 0xff;
+        if (lead < 0x80) {
+            return lead;
+        }
+        int n = length(lead);
+        if (n == 0) {
+            return MALFORMED;
+        }
+        int c = lead & (0x7f >> n);
+        for (int k = 1; k < n; k += 1) {
+            if (i + k >= limit) {
+                return TRUNCATED;
+            }
+            int b = bytes.get(i + k) & 0xff;
+            if (!continues(lead, k, b)) {
+                return MALFORMED;
+            }
+            c = (c << 6) | (b & 0x3f);
+        }
+        return c;
+    }
+
+    /** Return the length of the UTF-8 encoding of code point C. */
+    static int width(int c) {
+        return c < 0x80 ? 1 : c < 0x800 ? 2 : c < 0x10000 ? 3 : 4;
+    }
+
+    /** Store the UTF-8 encoding of code point C in BUF starting at OFF,
+     *  and return its length. */
+    static int encode(int c, byte[] buf, int off) {
+        int n = width(c);
+        if (n == 1) {
+            buf[off] = (byte) c;
+        } else {
+            buf[off] = (byte) ((0xf00 >> n) | c >> (6 * (n - 1)));
+            for (int k = 1; k < n; k += 1) {
+                buf[off + k] = (byte) (0x80 | c >> (6 * (n - 1 - k)) & 0x3f);
+            }
+        }
+        return n;
+    }
+
+    /** Put the UTF-8 encoding of code point C into OUT, which has room
+     *  for it. */
+    static void put(int c, ByteBuffer out) {
+        int n = width(c);
+        if (n == 1) {
+            out.put((byte) c);
+        } else {
+            out.put((byte) ((0xf00 >> n) | c >> (6 * (n - 1))));
+            for (int k = n - 2; k >= 0; k -= 1) {
+                out.put((byte) (0x80 | c >> (6 * k) & 0x3f));
+            }
+        }
+    }
+
+    /** A decoder for UTF-8 arriving one byte at a time. */
+    static final class Decoder {
+
+        /** Return the code point completed by the byte B (0 to 255),
+         *  TRUNCATED if B begins or continues a character that is not
+         *  yet complete, or MALFORMED if B cannot start or continue one.
+         *  After MALFORMED, I start afresh; B itself is dropped. */
+        int next(int b) {
+            if (_pending == 0) {
+                if (b < 0x80) {
+                    return b;
+                }
+                int n = length(b);
+                if (n == 0) {
+                    return MALFORMED;
+                }
+                _lead = b;
+                _code = b & (0x7f >> n);
+                _seen = 1;
+                _pending = n - 1;
+                return TRUNCATED;
+            }
+            if (!continues(_lead, _seen, b)) {
+                _pending = 0;
+                return MALFORMED;
+            }
+            _code = (_code << 6) | (b & 0x3f);
+            _seen += 1;
+            _pending -= 1;
+            return _pending == 0 ? _code : TRUNCATED;
+        }
+
+        /** Return true iff I am in the middle of a character. */
+        boolean partial() {
+            return _pending > 0;
+        }
+
+        /** Abandon any character in progress. */
+        void reset() {
+            _pending = 0;
+        }
+
+        /** First byte of the character in progress. */
+        private int _lead;
+        /** Bits of the character in progress. */
+        private int _code;
+        /** Bytes of it seen so far. */
+        private int _seen;
+        /** Bytes of it still to come. */
+        private int _pending;
+    }
+}
@@ -0,0 +1,130 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Utf8 class.
+ *  @author Avik Samanta
+ */
+public class Utf8Test {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the single code point that the JDK's strict decoder makes
+     *  of BYTES, or MALFORMED if it rejects them or they hold more than
+     *  one character. */
+    private static int expected(byte[] bytes) {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+        try {
+            CharBuffer chars = decoder.decode(ByteBuffer.wrap(bytes));
+            int c = Character.codePointAt(chars, 0);
+            return Character.charCount(c) == chars.length()
+                ? c : Utf8.MALFORMED;
+        } catch (CharacterCodingException excp) {
+            return Utf8.MALFORMED;
+        }
+    }
+
+    /** Bytes near the boundaries of the UTF-8 ranges. */
+    private static final int[] EDGES = {
+        0x00, 0x41, 0x7f, 0x80, 0x8f, 0x90, 0x9f, 0xa0, 0xbf, 0xc0, 0xc1,
+        0xc2, 0xdf, 0xe0, 0xe1, 0xec, 0xed, 0xee, 0xef, 0xf0, 0xf1, 0xf3,
+        0xf4, 0xf5, 0xf7, 0xf8, 0xff,
+    };
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testAgainstJdk() {
+        Random random = new Random(43);
+        byte[] bytes = new byte[4];
+        for (int trial = 0; trial < 200000; trial += 1) {
+            int n = 1 + random.nextInt(4);
+            for (int k = 0; k < n; k += 1) {
+                bytes[k] = (byte) (random.nextInt(3) == 0
+                                   ? random.nextInt(256)
+                                   : EDGES[random.nextInt(EDGES.length)]);
+            }
+            byte[] seq = Arrays.copyOf(bytes, n);
+            int c = Utf8.decode(seq, 0, n);
+            int want = expected(seq);
+            if (c == Utf8.TRUNCATED) {
+                assertEquals(Utf8.MALFORMED, want);
+                assertTrue(n < Utf8.length(seq[0] & 0xff));
+                continue;
+            }
+            if (c >= 0 && Utf8.width(c) < n) {
+                continue;
+            }
+            assertEquals(String.format("%02x %d", seq[0], n), want, c);
+            assertEquals(c, Utf8.decode(ByteBuffer.wrap(seq), 0, n));
+        }
+    }
+
+    @Test
+    public void testRejects() {
+        int[][] bad = {
+            { 0xf7, 0xbf, 0xbf, 0xbf }, { 0xf4, 0x90, 0x80, 0x80 },
+            { 0xc0, 0x80 }, { 0xc1, 0xbf }, { 0xe0, 0x9f, 0xbf },
+            { 0xf0, 0x8f, 0xbf, 0xbf }, { 0xed, 0xa0, 0x80 },
+            { 0xed, 0xbf, 0xbf }, { 0xf8, 0x88, 0x80, 0x80 }, { 0xbf },
+        };
+        for (int[] seq : bad) {
+            byte[] bytes = new byte[seq.length];
+            Utf8.Decoder decoder = new Utf8.Decoder();
+            int last = Utf8.TRUNCATED;
+            for (int k = 0; k < seq.length; k += 1) {
+                bytes[k] = (byte) seq[k];
+                if (last == Utf8.TRUNCATED) {
+                    last = decoder.next(seq[k]);
+                }
+            }
+            assertEquals(Utf8.MALFORMED, Utf8.decode(bytes, 0, bytes.length));
+            assertEquals(Utf8.MALFORMED, last);
+        }
+    }
+
+    @Test
+    public void testRoundTrip() {
+        byte[] buf = new byte[Utf8.MAX_WIDTH];
+        Utf8.Decoder decoder = new Utf8.Decoder();
+        for (int c = 0; c <= Character.MAX_CODE_POINT; c += 1) {
+            if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                continue;
+            }
+            int n = Utf8.encode(c, buf, 0);
+            assertEquals(Utf8.width(c), n);
+            assertEquals(c, Utf8.decode(buf, 0, n));
+            if (n > 1) {
+                assertEquals(Utf8.TRUNCATED, Utf8.decode(buf, 0, n - 1));
+            }
+            for (int k = 0; k < n - 1; k += 1) {
+                assertEquals(Utf8.TRUNCATED, decoder.next(buf[k] & 0xff));
+                assertTrue(decoder.partial());
+            }
+            assertEquals(c, decoder.next(buf[n - 1] & 0xff));
+            assertFalse(decoder.partial());
+        }
+        String text = "A\u00e9\u20ac\ud83d\ude00";
+        byte[] jdk = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer out = ByteBuffer.allocate(jdk.length);
+        text.codePoints().forEach(c -> Utf8.put(c, out));
+        assertArrayEquals(jdk, out.array());
+    }
+}
@@ -0,0 +1,277 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** Generates synthetic workloads for WorkloadRunner: a random machine
+ *  configuration and an input for Main that uses it.  Usage:
+ *
+ *      java enigma.WorkloadGenerator [--size=MB] [--length=L]
+ *          [--churn=N] [--distinct=D] [--plugs=P] [--alphabet=K]
+ *          [--slots=S] [--pawls=W] [--seed=X] NAME
+ *
+ *  writes NAME.conf, with an alphabet of K letters (default 26, which
+ *  must be even), S rotor slots (default 5), and W pawls (default 3),
+ *  and NAME.in, of about MB megabytes (default 16).  Each message line of
+ *  NAME.in holds a number of letters drawn from an exponential
+ *  distribution with mean L (default 60), in words of one to ten letters.
+ *  A settings line with P plugboard pairs (default 10) starts the input
+ *  and follows every N letters (default 5000).  With D > 0, the settings
+ *  lines are drawn from a pool of D lines, so that they repeat as they
+ *  would when many messages share a day's key; otherwise every one is
+ *  new.  The same seed (default 61) gives the same workload.
+ *  @author Avik Samanta
+ */
+class WorkloadGenerator {
+
+    /** Generate a workload as directed by ARGS. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--size=(\\d+) --length=(\\d+) "
+                                + "--churn=(\\d+) --distinct=(\\d+) "
+                                + "--plugs=(\\d+) --alphabet=(\\d+) "
+                                + "--slots=(\\d+) --pawls=(\\d+) "
+                                + "--seed=(-?\\d+) --=(.+)", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.WorkloadGenerator "
+                            + "[--size=MB] [--length=L] [--churn=N] "
+                            + "[--distinct=D] [--plugs=P] [--alphabet=K] "
+                            + "[--slots=S] [--pawls=W] [--seed=X] NAME");
+            }
+            WorkloadGenerator gen =
+                new WorkloadGenerator(option(options, "--alphabet", 26),
+                                      option(options, "--slots", 5),
+                                      option(options, "--pawls", 3),
+                                      option(options, "--seed", 61));
+            String name = options.getFirst("--");
+            gen.writeConfig(name + ".conf");
+            gen.writeInput(name + ".in",
+                           (long) option(options, "--size", 16) << 20,
+                           option(options, "--length", 60),
+                           option(options, "--churn", 5000),
+                           option(options, "--distinct", 0),
+                           option(options, "--plugs", 10));
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the value of option NAME in OPTIONS, or DEFLT if it is
+     *  absent. */
+    private static int option(CommandArgs options, String name, int deflt) {
+        return options.contains(name)
+            ? Integer.parseInt(options.getFirst(name)) : deflt;
+    }
+
+    /** A generator of workloads with an alphabet of SIZE letters, SLOTS
+     *  rotor slots, and PAWLS pawls, using random seed SEED. */
+    WorkloadGenerator(int size, int slots, int pawls, long seed) {
+        if (size < 2 || size % 2 != 0) {
+            throw error("alphabet size must be even and at least 2");
+        }
+        if (slots < 2 || pawls < 0 || pawls >= slots) {
+            throw error("need 1 < SLOTS and 0 <= PAWLS < SLOTS");
+        }
+        _random = new Random(seed);
+        _slots = slots;
+        _pawls = pawls;
+        _letters = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            _letters[i] = i < BASE_LETTERS.length()
+                ? BASE_LETTERS.charAt(i)
+                : EXTRA_LETTERS + i - BASE_LETTERS.length();
+        }
+        _reflectors = names("R", 2);
+        _fixed = names("N", slots - 1 - pawls + 1);
+        _moving = names("M", pawls + 2);
+    }
+
+    /** Write my configuration to the file named NAME. */
+    void writeConfig(String name) {
+        try (PrintWriter out = open(name)) {
+            StringBuilder alpha = new StringBuilder();
+            for (int c : _letters) {
+                alpha.appendCodePoint(c);
+            }
+            out.println(alpha);
+            out.printf(" %d %d%n", _slots, _pawls);
+            for (String r : _reflectors) {
+                out.printf(" %s R %s%n", r, cycles(true));
+            }
+            for (String r : _fixed) {
+                out.printf(" %s N %s%n", r, cycles(false));
+            }
+            for (String r : _moving) {
+                StringBuilder notches = new StringBuilder();
+                for (int k = 1 + _random.nextInt(2); k > 0; k -= 1) {
+                    notches.appendCodePoint(letter());
+                }
+                out.printf(" %s M%s %s%n", r, notches, cycles(false));
+            }
+        }
+    }
+
+    /** Write an input of about SIZE bytes to the file named NAME, with
+     *  message lines of LENGTH letters on average, a settings line every
+     *  CHURN letters drawn from a pool of DISTINCT lines (all different
+     *  if DISTINCT is 0), and PLUGS plugboard pairs. */
+    void writeInput(String name, long size, int length, int churn,
+                    int distinct, int plugs) {
+        if (plugs > _letters.length / 2) {
+            throw error("too many plugboard pairs");
+        }
+        List<String> pool = new ArrayList<>();
+        for (int i = 0; i < distinct; i += 1) {
+            pool.add(settings(plugs));
+        }
+        try (PrintWriter out = open(name)) {
+            long bytes = 0;
+            int sinceSettings = churn;
+            StringBuilder line = new StringBuilder();
+            while (bytes < size) {
+                if (sinceSettings >= churn) {
+                    String s = pool.isEmpty() ? settings(plugs)
+                        : pool.get(_random.nextInt(pool.size()));
+                    out.println(s);
+                    bytes += s.length() + 1;
+                    sinceSettings = 0;
+                }
+                int n = 1 + (int) (-Math.log(1 - _random.nextDouble())
+                                   * length);
+                line.setLength(0);
+                for (int k = 0; k < n; k += 1) {
+                    if (k > 0 && _random.nextInt(WORD_LENGTH) == 0) {
+                        line.append(' ');
+                    }
+                    line.appendCodePoint(letter());
+                }
+                out.println(line);
+                bytes += line.toString().getBytes(StandardCharsets.UTF_8)
+                    .length + 1;
+                sinceSettings += n;
+            }
+        }
+    }
+
+    /** Return a random settings line with PLUGS plugboard pairs. */
+    private String settings(int plugs) {
+        StringBuilder result = new StringBuilder("*");
+        result.append(' ').append(pick(_reflectors, 1).get(0));
+        for (String r : pick(_fixed, _slots - 1 - _pawls)) {
+            result.append(' ').append(r);
+        }
+        for (String r : pick(_moving, _pawls)) {
+            result.append(' ').append(r);
+        }
+        result.append(' ');
+        for (int i = 1; i < _slots; i += 1) {
+            result.appendCodePoint(letter());
+        }
+        int[] order = shuffled();
+        for (int k = 0; k < plugs; k += 1) {
+            result.append(" (").appendCodePoint(_letters[order[2 * k]])
+                .appendCodePoint(_letters[order[2 * k + 1]]).append(')');
+        }
+        return result.toString();
+    }
+
+    /** Return a random permutation of my alphabet in cycle notation,
+     *  made only of 2-cycles iff PAIRS. */
+    private String cycles(boolean pairs) {
+        int[] order = shuffled();
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < order.length; ) {
+            int len = pairs ? 2
+                : Math.min(order.length - i,
+                           1 + _random.nextInt(order.length));
+            result.append(i == 0 ? "(" : " (");
+            for (int k = 0; k < len; k += 1) {
+                result.appendCodePoint(_letters[order[i + k]]);
+            }
+            result.append(')');
+            i += len;
+        }
+        return result.toString();
+    }
+
+    /** Return N distinct names from NAMES in random order. */
+    private List<String> pick(List<String> names, int n) {
+        List<String> copy = new ArrayList<>(names);
+        List<String> result = new ArrayList<>();
+        for (int k = 0; k < n; k += 1) {
+            result.add(copy.remove(_random.nextInt(copy.size())));
+        }
+        return result;
+    }
+
+    /** Return the indices of my alphabet in random order. */
+    private int[] shuffled() {
+        int[] result = new int[_letters.length];
+        for (int i = 0; i < result.length; i += 1) {
+            int j = _random.nextInt(i + 1);
+            result[i] = result[j];
+            result[j] = i;
+        }
+        return result;
+    }
+
+    /** Return a random letter of my alphabet. */
+    private int letter() {
+        return _letters[_random.nextInt(_letters.length)];
+    }
+
+    /** Return N rotor names beginning with PREFIX. */
+    private static List<String> names(String prefix, int n) {
+        List<String> result = new ArrayList<>();
+        for (int i = 1; i <= n; i += 1) {
+            result.add(prefix + i);
+        }
+        return result;
+    }
+
+    /** Return a writer of the UTF-8 file named NAME. */
+    private static PrintWriter open(String name) {
+        try {
+            return new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(name),
+                                       StandardCharsets.UTF_8),
+                Main.OUTPUT_BUFFER));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** The first letters of generated alphabets. */
+    private static final String BASE_LETTERS =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+    /** The code point of the first letter after BASE_LETTERS, which
+     *  starts a run of letters (the CJK unified ideographs) long enough
+     *  for any alphabet. */
+    private static final int EXTRA_LETTERS = 0x4e00;
+    /** Average number of letters per word in message lines. */
+    private static final int WORD_LENGTH = 5;
+
+    /** Source of randomness. */
+    private final Random _random;
+    /** Number of rotor slots and pawls. */
+    private final int _slots, _pawls;
+    /** The code points of my alphabet. */
+    private final int[] _letters;
+    /** Names of the reflectors, non-moving rotors, and moving rotors. */
+    private final List<String> _reflectors, _fixed, _moving;
+}
@@ -0,0 +1,293 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Scanner;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** Runs workloads made by WorkloadGenerator and reports how each way of
+ *  converting them performs.  Usage:
+ *
+ *      java enigma.WorkloadRunner [--label=L] [--repeat=R] [--warmup=W]
+ *          [--report=FILE] NAME...
+ *
+ *  converts each workload NAME (the files NAME.conf and NAME.in) W times
+ *  (default 1) unmeasured and then R times (default 3) measured, in each
+ *  of these ways:
+ *
+ *    main    Main.process, from NAME.in to a temporary file.
+ *    lexer   the per-line loop of Main.process, with Main.setUp and a
+ *            MessageLexer, in memory.
+ *    cipher  EnigmaKey and EnigmaCipher, one key per distinct settings
+ *            line, in memory.
+ *
+ *  Each measured run prints a line of CSV: the label L, the workload,
+ *  the way, the run number, the megabytes of input, seconds, throughput
+ *  in MB/s, the number of message lines, the median and 99th percentile
+ *  time to convert a message line in microseconds (empty for main, whose
+ *  lines cannot be timed separately), the number of garbage collections
+ *  and their total milliseconds, and the rate of allocation in MB/s on
+ *  the converting thread.  With --report, the lines are also appended to
+ *  FILE, so that runs of different versions can be compared.
+ *  @author Avik Samanta
+ */
+class WorkloadRunner {
+
+    /** Header line of reports. */
+    static final String HEADER = "label,workload,way,run,mb,seconds,"
+        + "mbPerSecond,messages,p50us,p99us,gcCount,gcMillis,"
+        + "allocMBPerSecond";
+
+    /** Run workloads as directed by ARGS. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--label=(.+) --repeat=(\\d+) "
+                                + "--warmup=(\\d+) --report=(.+) "
+                                + "--=(.+){1,}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.WorkloadRunner [--label=L] "
+                            + "[--repeat=R] [--warmup=W] [--report=FILE] "
+                            + "NAME...");
+            }
+            String label = options.contains("--label")
+                ? options.getFirst("--label") : "";
+            int repeat = options.contains("--repeat")
+                ? Integer.parseInt(options.getFirst("--repeat")) : 3;
+            int warmup = options.contains("--warmup")
+                ? Integer.parseInt(options.getFirst("--warmup")) : 1;
+            PrintStream report = null;
+            if (options.contains("--report")) {
+                File file = new File(options.getFirst("--report"));
+                boolean fresh = file.length() == 0;
+                try {
+                    report = new PrintStream(new FileOutputStream(file,
+                                                                  true));
+                } catch (IOException excp) {
+                    throw error("could not open %s", file);
+                }
+                if (fresh) {
+                    report.println(HEADER);
+                }
+            }
+            System.out.println(HEADER);
+            for (String name : options.get("--")) {
+                WorkloadRunner runner = new WorkloadRunner(name);
+                for (String way : WAYS) {
+                    for (int run = -warmup; run < repeat; run += 1) {
+                        String row = runner.run(way);
+                        if (run >= 0) {
+                            row = String.format("%s,%s,%s,%d,%s", label,
+                                                new File(name).getName(),
+                                                way, run, row);
+                            System.out.println(row);
+                            if (report != null) {
+                                report.println(row);
+                            }
+                        }
+                    }
+                }
+            }
+            if (report != null) {
+                report.close();
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** The ways of converting that I measure. */
+    static final List<String> WAYS = List.of("main", "lexer", "cipher");
+
+    /** A runner of the workload NAME. */
+    WorkloadRunner(String name) {
+        _configName = name + ".conf";
+        _inputName = name + ".in";
+        try {
+            _config = new String(Files.readAllBytes(
+                                     new File(_configName).toPath()),
+                                 StandardCharsets.UTF_8);
+            _input = Files.readAllBytes(new File(_inputName).toPath());
+        } catch (IOException excp) {
+            throw error("could not read workload %s", name);
+        }
+    }
+
+    /** Convert my workload in the way WAY, and return the measurements
+     *  after the run number as CSV. */
+    String run(String way) {
+        _latencies = new long[1 << 12];
+        _messages = 0;
+        long gcCount = 0, gcMillis = 0;
+        for (GarbageCollectorMXBean gc
+                 : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount -= gc.getCollectionCount();
+            gcMillis -= gc.getCollectionTime();
+        }
+        long allocated = -allocated();
+        long start = System.nanoTime();
+        switch (way) {
+        case "main":
+            runMain();
+            break;
+        case "lexer":
+            runLexer();
+            break;
+        case "cipher":
+            runCipher();
+            break;
+        default:
+            throw error("unknown way: %s", way);
+        }
+        double secs = (System.nanoTime() - start) * 1e-9;
+        allocated += allocated();
+        for (GarbageCollectorMXBean gc
+                 : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += gc.getCollectionCount();
+            gcMillis += gc.getCollectionTime();
+        }
+        double mb = _input.length / (double) (1 << 20);
+        String p50 = "", p99 = "";
+        if (_messages > 0) {
+            long[] sorted = Arrays.copyOf(_latencies, _messages);
+            Arrays.sort(sorted);
+            p50 = String.format("%.2f", sorted[_messages / 2] * 1e-3);
+            p99 = String.format("%.2f",
+                                sorted[(int) (_messages * 0.99)] * 1e-3);
+        }
+        return String.format("%.2f,%.3f,%.2f,%d,%s,%s,%d,%d,%s", mb, secs,
+                             mb / secs, _messages, p50, p99, gcCount,
+                             gcMillis,
+                             allocated < 0 ? ""
+                             : String.format("%.1f", allocated / secs
+                                             / (1 << 20)));
+    }
+
+    /** Run Main.process on my input, writing to a temporary file. */
+    private void runMain() {
+        File out;
+        try {
+            out = File.createTempFile("workload", ".out");
+        } catch (IOException excp) {
+            throw error("could not create output file");
+        }
+        try {
+            new Main(List.of(_configName, _inputName, out.getPath()))
+                .process();
+        } finally {
+            out.delete();
+        }
+    }
+
+    /** Convert my input as Main.process does, timing each message
+     *  line. */
+    private void runLexer() {
+        Machine mach = Main.readConfig(new Scanner(_config));
+        Main parser = new Main(mach, null, null);
+        MessageLexer lexer = new MessageLexer(mach.alphabet());
+        PrintStream sink = new PrintStream(OutputStream.nullOutputStream(),
+                                           false, StandardCharsets.UTF_8);
+        LineReader lines = reader();
+        for (int line = 1; lines.hasNextLine(); line += 1) {
+            int len = lines.nextLineBytes();
+            byte[] curr = lines.lineBytes();
+            if (line == 1 || len > 0 && curr[0] == '*') {
+                parser.setUp(mach, lines.lineString());
+            } else if (len > 0) {
+                long start = System.nanoTime();
+                sink.append(lexer.convert(curr, len, mach));
+                sink.println();
+                record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /** Convert my input with EnigmaCipher, timing each message line. */
+    private void runCipher() {
+        HashMap<String, EnigmaKey> keys = new HashMap<>();
+        ByteBuffer out = ByteBuffer.allocate(1 << 16);
+        EnigmaCipher cipher = null;
+        LineReader lines = reader();
+        for (int line = 1; lines.hasNextLine(); line += 1) {
+            int len = lines.nextLineBytes();
+            byte[] curr = lines.lineBytes();
+            if (line == 1 || len > 0 && curr[0] == '*') {
+                String settings = lines.lineString();
+                EnigmaKey key = keys.get(settings);
+                if (key == null) {
+                    try {
+                        key = EnigmaKey.parse(_config, settings);
+                    } catch (IllegalArgumentException excp) {
+                        throw error("%s", excp.getMessage());
+                    }
+                    keys.put(settings, key);
+                }
+                cipher = key.newCipher();
+            } else if (len > 0) {
+                long start = System.nanoTime();
+                if (out.capacity() < 4 * len) {
+                    out = ByteBuffer.allocate(4 * len);
+                }
+                out.clear();
+                cipher.update(ByteBuffer.wrap(curr, 0, len), out);
+                record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /** Return a LineReader of my input. */
+    private LineReader reader() {
+        return new LineReader(new ByteArrayInputStream(_input));
+    }
+
+    /** Record NANOS as the time taken by a message line. */
+    private void record(long nanos) {
+        if (_messages == _latencies.length) {
+            _latencies = Arrays.copyOf(_latencies, 2 * _messages);
+        }
+        _latencies[_messages] = nanos;
+        _messages += 1;
+    }
+
+    /** Return the number of bytes allocated by this thread so far, or
+     *  a negative number if that is unknown. */
+    private static long allocated() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                .getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    /** Names of my configuration and input files. */
+    private final String _configName, _inputName;
+    /** Contents of my configuration file. */
+    private final String _config;
+    /** Contents of my input file. */
+    private final byte[] _input;
+    /** The time taken by each message line of the current run, in
+     *  _latencies[0 .. _messages-1]. */
+    private long[] _latencies;
+    /** Number of message lines timed in the current run. */
+    private int _messages;
+}